@@ -0,0 +1,67 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.ContainerTrie;
+import edu.kit.aifb.solid.wac.query.WacQuery;
+import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
+
+/**
+ * Finding the authoritative {@code .acl} of a resource {@code depth}
+ * containers below the only {@code .acl}: probing the resource map on every
+ * level vs. a walk of the container trie. Measured through
+ * {@link WacQueryBuilder#build()} with a single indexed query, so that
+ * building the query itself is negligible.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AclResolutionBenchmark {
+
+    @Param({"0", "5", "20"})
+    public int depth;
+
+    private Fixtures.Pod pod;
+    private ContainerTrie containerTrie;
+    private final AclIndexCache indexCache = new AclIndexCache();
+
+    @Setup
+    public void setUp() {
+        this.pod = Fixtures.pod(10, 1, this.depth);
+        this.containerTrie = new ContainerTrie(this.pod.resourceMap, this.pod.resourceAclMap);
+    }
+
+    @Benchmark
+    public WacQuery[] recursion() {
+        return this.builder().build();
+    }
+
+    @Benchmark
+    public WacQuery[] containerTrie() {
+        return this.builder().usingContainerTrie(this.containerTrie).build();
+    }
+
+    private WacQueryBuilder builder() {
+        return WacQueryBuilder.newBuilder(this.pod.resourceMap, this.pod.resourceAclMap)
+                .usingIndex(this.indexCache)
+                .usingSinglePass()
+                .forRequest(this.pod.resource, "GET", "")
+                .byAgent(Fixtures.WEBID);
+    }
+}
@@ -0,0 +1,58 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.example.App;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+
+/**
+ * End-to-end {@link App#checkAccessControl}, where only the agent group rule
+ * grants access, i.e. all queries are executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckAccessControlBenchmark {
+
+    @Param({"10", "1000"})
+    public int aclSize;
+
+    @Param({"1", "100"})
+    public int groups;
+
+    @Param({"1", "10"})
+    public int depth;
+
+    private Fixtures.Pod pod;
+    private final AclIndexCache indexCache = new AclIndexCache();
+
+    @Setup
+    public void setUp() {
+        this.pod = Fixtures.pod(this.aclSize, this.groups, this.depth);
+    }
+
+    @Benchmark
+    public String sparql() {
+        return App.checkAccessControl(this.pod.resource, "GET", "", Fixtures.WEBID, this.pod.resourceMap, this.pod.resourceAclMap);
+    }
+
+    @Benchmark
+    public String index() {
+        return App.checkAccessControl(this.pod.resource, "GET", "", Fixtures.WEBID, this.pod.resourceMap, this.pod.resourceAclMap, this.indexCache);
+    }
+}
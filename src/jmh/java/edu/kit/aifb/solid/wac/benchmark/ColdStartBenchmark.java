@@ -0,0 +1,115 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.index.AclIndex;
+import edu.kit.aifb.solid.wac.index.AclRules;
+import edu.kit.aifb.solid.wac.index.AclSnapshot;
+import edu.kit.aifb.solid.wac.store.FileSystemAclStore;
+
+/**
+ * Time until the rules of {@code documents} {@code .acl}s are evaluated once:
+ * parsing and compiling the Turtle files vs. mapping a snapshot, each followed
+ * by a first pass of lookups over all documents. Mapping a file is lazy, its
+ * pages are only faulted in by the lookups. The snapshot was just written, so
+ * its pages are in the page cache: a snapshot read from disk is slower.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ColdStartBenchmark {
+
+    private static final String READ = Namespaces.ACL + "Read";
+
+    @Param({"100", "1000"})
+    public int documents;
+
+    private Path directory;
+    private Path snapshotFile;
+    private Set<String> uris;
+
+    @Setup
+    public void setUp() throws IOException {
+        Fixtures.Pod pod = Fixtures.pod(100, 10, 1);
+        this.directory = Files.createTempDirectory("acls");
+        for (int i = 0; i < this.documents; i++) {
+            Path file = this.directory.resolve("container" + i).resolve(".acl");
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(file)) {
+                RDFDataMgr.write(out, pod.resourceMap.get(pod.acl).getDefaultModel(), Lang.TURTLE);
+            }
+        }
+        this.snapshotFile = Files.createTempFile("acl", ".snapshot");
+        FileSystemAclStore store = new FileSystemAclStore(this.directory, Fixtures.ROOT);
+        this.uris = store.uris();
+        AclSnapshot.write(store, this.snapshotFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(this.snapshotFile);
+    }
+
+    /**
+     * Evaluate the rules of a document for its container: the public,
+     * authenticated and agent rules do not grant {@code acl:Read}, the group
+     * rule probes all groups.
+     */
+    private static boolean evaluate(AclRules rules, String uri) {
+        String container = uri.substring(0, uri.length() - ".acl".length());
+        return rules.findRule(container, true, READ, Fixtures.WEBID, group -> rules.hasMember(group, Fixtures.WEBID)) != null;
+    }
+
+    @Benchmark
+    public int parse() {
+        FileSystemAclStore store = new FileSystemAclStore(this.directory, Fixtures.ROOT);
+        int granted = 0;
+        for (String uri : store.uris()) {
+            if (evaluate(AclIndex.compile(store.load(uri)), uri)) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        AclSnapshot snapshot = AclSnapshot.open(this.snapshotFile);
+        int granted = 0;
+        for (String uri : this.uris) {
+            if (evaluate(snapshot.get(uri), uri)) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+}
@@ -0,0 +1,147 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+import edu.kit.aifb.solid.wac.WacMapping;
+
+/**
+ * Generated inputs for the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * An N3 patch with the given number of triples in each formula.
+     *
+     * @param triples
+     * @param deleting if the patch has a {@code solid:deletes} formula
+     * @return the patch
+     */
+    static String patch(int triples, boolean deleting) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("@prefix solid: <http://www.w3.org/ns/solid/terms#>.\n");
+        sb.append("@prefix ex: <http://www.example.org/terms#>.\n");
+        sb.append("_:patch a solid:InsertDeletePatch;\n");
+        sb.append("  solid:where { ").append(formula(triples, "where")).append(" };\n");
+        sb.append("  solid:inserts { ").append(formula(triples, "inserts")).append(" }");
+        if (deleting) {
+            sb.append(";\n  solid:deletes { ").append(formula(triples, "deletes")).append(" }");
+        }
+        sb.append(".\n");
+        return sb.toString();
+    }
+
+    private static String formula(int triples, String name) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < triples; i++) {
+            sb.append("?person ex:").append(name).append(i).append(" \"value ").append(i).append("\". ");
+        }
+        return sb.toString();
+    }
+
+    static final String ROOT = "http://example.org/";
+    static final String WEBID = ROOT + "profile#me";
+    static final String GROUPS = ROOT + "groups";
+
+    /**
+     * The resource map of a pod: the root container has the only
+     * {@code .acl}, the target resource lies {@code depth} containers below
+     * it.
+     */
+    static final class Pod {
+
+        final Map<String, Dataset> resourceMap = new HashMap<>();
+        final WacMapping resourceAclMap = new SuffixMapping();
+        final String resource;
+        final String acl = ROOT + ".acl";
+
+        private Pod(String resource) {
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * A pod with
+     * <ul>
+     * <li>{@code aclSize} authorizations of other agents on other resources,
+     * and rules for the public, authenticated agents, the agent and its groups
+     * on the container which do not grant the requested mode, except for
+     * the group rule</li>
+     * <li>{@code groups} agent groups, the agent is member of the last one</li>
+     * </ul>
+     *
+     * @param aclSize
+     * @param groups
+     * @param depth
+     * @return the pod
+     */
+    static Pod pod(int aclSize, int groups, int depth) {
+        StringBuilder resource = new StringBuilder(ROOT);
+        for (int i = 0; i < depth; i++) {
+            resource.append("container").append(i).append("/");
+        }
+        resource.append("resource");
+        Pod pod = new Pod(resource.toString());
+        StringBuilder acl = new StringBuilder();
+        acl.append("@prefix acl: <http://www.w3.org/ns/auth/acl#>.\n");
+        acl.append("@prefix foaf: <http://xmlns.com/foaf/0.1/>.\n");
+        for (int i = 0; i < aclSize; i++) {
+            acl.append("<#other").append(i).append("> a acl:Authorization; acl:agent <agent").append(i)
+                    .append("#me>; acl:accessTo <resource").append(i).append(">; acl:default <container").append(i)
+                    .append("/>; acl:mode acl:Read, acl:Write.\n");
+        }
+        acl.append("<#public> a acl:Authorization; acl:agentClass foaf:Agent; acl:default <./>; acl:mode acl:Append.\n");
+        acl.append("<#authenticated> a acl:Authorization; acl:agentClass acl:AuthenticatedAgent; acl:default <./>; acl:mode acl:Append.\n");
+        acl.append("<#agent> a acl:Authorization; acl:agent <").append(WEBID).append(">; acl:default <./>; acl:mode acl:Control.\n");
+        acl.append("<#group> a acl:Authorization; acl:default <./>; acl:mode acl:Read, acl:Write");
+        for (int i = 0; i < groups; i++) {
+            acl.append("; acl:agentGroup <").append(GROUPS).append("#group").append(i).append(">");
+        }
+        acl.append(".\n");
+        pod.resourceMap.put(pod.acl, dataset(pod.acl, acl.toString()));
+        StringBuilder members = new StringBuilder();
+        members.append("@prefix vcard: <http://www.w3.org/2006/vcard/ns#>.\n");
+        for (int i = 0; i < groups; i++) {
+            members.append("<#group").append(i).append("> vcard:hasMember <agent").append(i).append("#me>.\n");
+        }
+        members.append("<#group").append(groups - 1).append("> vcard:hasMember <").append(WEBID).append(">.\n");
+        pod.resourceMap.put(GROUPS, dataset(GROUPS, members.toString()));
+        return pod;
+    }
+
+    private static Dataset dataset(String base, String ttl) {
+        Dataset dataset = DatasetFactory.create();
+        RDFDataMgr.read(dataset.getDefaultModel(), new ByteArrayInputStream(ttl.getBytes(StandardCharsets.UTF_8)), base, Lang.TTL);
+        return dataset;
+    }
+
+    /**
+     * {@code .acl} by suffix, like the example.
+     */
+    private static final class SuffixMapping implements WacMapping {
+
+        static final String ACL_SUFFIX = ".acl";
+
+        @Override
+        public String getAcl(String resource) {
+            String res = resource.split("#")[0];
+            return (res.endsWith(ACL_SUFFIX)) ? res : res + ACL_SUFFIX;
+        }
+
+        @Override
+        public String getResource(String acl) {
+            String res = acl.split("#")[0];
+            return res.substring(0, res.length() - ACL_SUFFIX.length());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.patch.N3PatchClassifier;
+
+/**
+ * Streaming classification of N3 patches vs. parsing them into a model and
+ * asking for {@code solid:deletes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatchClassificationBenchmark {
+
+    /**
+     * number of triples in each of the where, inserts and deletes formulas
+     */
+    @Param({"1", "100", "10000"})
+    public int triples;
+
+    @Param({"true", "false"})
+    public boolean deleting;
+
+    private String body;
+    private final N3PatchClassifier classifier = new N3PatchClassifier();
+
+    @Setup
+    public void setUp() {
+        this.body = Fixtures.patch(this.triples, this.deleting);
+    }
+
+    @Benchmark
+    public boolean streaming() {
+        return this.classifier.isNonDeleting(this.body);
+    }
+
+    @Benchmark
+    public boolean parsing() {
+        return N3PatchClassifier.isNonDeletingByParsing(this.body);
+    }
+}
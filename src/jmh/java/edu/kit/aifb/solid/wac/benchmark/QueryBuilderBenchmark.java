@@ -0,0 +1,62 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.query.WacQuery;
+import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
+
+/**
+ * {@link WacQueryBuilder#forRequest(String, String, String)} and
+ * {@link WacQueryBuilder#build()}, without executing the queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuilderBenchmark {
+
+    @Param({"sparql", "precompiled", "singlePass", "index"})
+    public String evaluation;
+
+    @Param({"1", "10"})
+    public int depth;
+
+    private Fixtures.Pod pod;
+    private final AclIndexCache indexCache = new AclIndexCache();
+
+    @Setup
+    public void setUp() {
+        this.pod = Fixtures.pod(10, 1, this.depth);
+    }
+
+    @Benchmark
+    public WacQuery[] build() {
+        WacQueryBuilder queryBuilder = WacQueryBuilder.newBuilder(this.pod.resourceMap, this.pod.resourceAclMap);
+        switch (this.evaluation) {
+            case "precompiled" -> queryBuilder.usingPrecompiledQueries();
+            case "singlePass" -> queryBuilder.usingSinglePass();
+            case "index" -> queryBuilder.usingIndex(this.indexCache);
+            default -> {
+            }
+        }
+        return queryBuilder
+                .forRequest(this.pod.resource, "GET", "")
+                .byAgent(Fixtures.WEBID)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package edu.kit.aifb.solid.wac.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.query.WacQuery;
+import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
+import edu.kit.aifb.solid.wac.query.WacQueryType;
+
+/**
+ * {@link WacQuery#exec()} of each kind of query, built once. Only the agent
+ * group rule grants the requested mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryExecBenchmark {
+
+    @Param({"sparql", "precompiled", "index"})
+    public String evaluation;
+
+    @Param({"PUBLIC", "AUTHENTICATED", "AGENT", "AGENT_GROUP"})
+    public WacQueryType type;
+
+    /**
+     * number of authorizations for other agents and resources in the
+     * {@code .acl}
+     */
+    @Param({"10", "1000"})
+    public int aclSize;
+
+    /**
+     * number of agent groups in the group rule
+     */
+    @Param({"1", "100"})
+    public int groups;
+
+    private WacQuery query;
+    private WacQuery singlePassQuery;
+
+    @Setup
+    public void setUp() {
+        Fixtures.Pod pod = Fixtures.pod(this.aclSize, this.groups, 1);
+        this.query = this.builder(pod).build()[this.type.ordinal()];
+        this.singlePassQuery = this.builder(pod).usingSinglePass().build()[0];
+    }
+
+    private WacQueryBuilder builder(Fixtures.Pod pod) {
+        WacQueryBuilder queryBuilder = WacQueryBuilder.newBuilder(pod.resourceMap, pod.resourceAclMap);
+        switch (this.evaluation) {
+            case "precompiled" -> queryBuilder.usingPrecompiledQueries();
+            case "index" -> queryBuilder.usingIndex(new AclIndexCache());
+            default -> {
+            }
+        }
+        return queryBuilder
+                .forRequest(pod.resource, "GET", "")
+                .byAgent(Fixtures.WEBID);
+    }
+
+    @Benchmark
+    public String exec() {
+        return this.query.exec();
+    }
+
+    /**
+     * independent of {@link #type}
+     */
+    @Benchmark
+    public String execSinglePass() {
+        return this.singlePassQuery.exec();
+    }
+}
@@ -0,0 +1,315 @@
+package edu.kit.aifb.solid.wac.cache;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.kit.aifb.solid.wac.query.WacQuery;
+import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
+
+/**
+ * A bounded, concurrent cache of access control decisions keyed by
+ * (resource, access mode, webid).
+ *
+ * Concurrent misses for the same key are evaluated only once, all callers
+ * receive the same decision. Decisions expire after a time to live and can be
+ * invalidated per {@code .acl} URI. If the cache is full, the oldest decisions
+ * are evicted first.
+ */
+public class DecisionCache {
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+    private final ConcurrentHashMap<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    // decisions loaded while an invalidation happened must not be cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * A decision as made by the queries.
+     */
+    public static final class Decision {
+
+        private final String rule;
+        private final String authoritativeACLUri;
+
+        /**
+         *
+         * @param rule the URI string of the matching access control rule or
+         * {@code null} if none matches
+         * @param authoritativeACLUri the URI string of the {@code .acl} the
+         * rule was looked up in, may be {@code null}
+         */
+        public Decision(String rule, String authoritativeACLUri) {
+            this.rule = rule;
+            this.authoritativeACLUri = authoritativeACLUri;
+        }
+
+        public String getRule() {
+            return this.rule;
+        }
+
+        public String getAuthoritativeACLUri() {
+            return this.authoritativeACLUri;
+        }
+    }
+
+    /**
+     * Evaluates a decision on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        Decision load();
+    }
+
+    /**
+     *
+     * @param maximumSize the maximum number of cached decisions
+     * @param timeToLive how long a decision is valid after it has been made
+     * @param unit the unit of {@code timeToLive}
+     */
+    public DecisionCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * Check the rules for the request in the builder, using the cached
+     * decision if available.
+     *
+     * @param queryBuilder a builder after
+     * {@link WacQueryBuilder#forRequest(String, String, String)} and
+     * {@link WacQueryBuilder#byAgent(String)}
+     * @return the URI String of the matching access control rule or
+     * {@code null} if none matches
+     */
+    public String check(WacQueryBuilder queryBuilder) {
+        return this.get(queryBuilder.getResource(), queryBuilder.getAccessMode(), queryBuilder.getWebId(), () -> {
+            for (WacQuery query : queryBuilder.build()) {
+                String ruleMatch = query.exec();
+                if (ruleMatch != null) {
+                    return new Decision(ruleMatch, queryBuilder.getAuthoritativeACLUri());
+                }
+            }
+            return new Decision(null, queryBuilder.getAuthoritativeACLUri());
+        }).getRule();
+    }
+
+    /**
+     * Get the cached decision or load it.
+     *
+     * @param resource the target of the request
+     * @param accessMode the access mode URI string required by the request
+     * @param webid the accessing agent, may be {@code null}
+     * @param loader evaluates the decision on a miss
+     * @return the decision
+     */
+    public Decision get(String resource, String accessMode, String webid, Loader loader) {
+        Key key = new Key(resource, accessMode, webid);
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt - System.nanoTime() > 0) {
+                this.hits.increment();
+                return entry.decision;
+            }
+            if (this.entries.remove(key, entry)) {
+                this.expirations.increment();
+            }
+        }
+        this.misses.increment();
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> inFlight = this.loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return join(inFlight).decision; // someone else is already loading
+        }
+        try {
+            long invalidationsBefore = this.invalidations.get();
+            Entry loaded = new Entry(key, loader.load(), System.nanoTime() + this.timeToLiveNanos);
+            if (invalidationsBefore == this.invalidations.get()) {
+                this.put(key, loaded);
+                // an invalidation between the check and the put may have missed the entry
+                if (invalidationsBefore != this.invalidations.get()) {
+                    this.entries.remove(key, loaded);
+                }
+            }
+            future.complete(loaded);
+            return loaded.decision;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loading.remove(key, future);
+        }
+    }
+
+    private static Entry join(CompletableFuture<Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void put(Key key, Entry entry) {
+        this.entries.put(key, entry);
+        this.insertionOrder.offer(entry);
+        int queued = this.insertionOrderSize.incrementAndGet();
+        while (this.entries.size() > this.maximumSize) {
+            Entry oldest = this.insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued = this.insertionOrderSize.decrementAndGet();
+            if (this.entries.remove(oldest.key, oldest)) {
+                this.evictions.increment();
+            }
+        }
+        if (queued > 2 * this.maximumSize) {
+            // drop the queued entries that were replaced, expired or invalidated
+            this.insertionOrder.removeIf(queuedEntry -> {
+                if (this.entries.get(queuedEntry.key) == queuedEntry) {
+                    return false;
+                }
+                this.insertionOrderSize.decrementAndGet();
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Drop all decisions that were made using the rules of an {@code .acl},
+     * e.g. after it was modified or deleted.
+     *
+     * @param aclUri the URI string of the {@code .acl}
+     */
+    public void invalidate(String aclUri) {
+        this.invalidations.incrementAndGet();
+        this.entries.values().removeIf(entry -> Objects.equals(aclUri, entry.decision.authoritativeACLUri));
+    }
+
+    /**
+     * Drop all decisions on resources starting with the prefix, e.g. on
+     * creation of an {@code .acl} for a container that previously inherited
+     * its rules.
+     *
+     * @param resourcePrefix e.g. the URI string of a container
+     */
+    public void invalidateResources(String resourcePrefix) {
+        this.invalidations.incrementAndGet();
+        this.entries.keySet().removeIf(key -> key.resource.startsWith(resourcePrefix));
+    }
+
+    /**
+     * Drop all decisions.
+     */
+    public void invalidateAll() {
+        this.invalidations.incrementAndGet();
+        this.entries.clear();
+    }
+
+    /**
+     * @return the number of currently cached decisions
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of requests that had to be evaluated (or waited for
+     * a concurrent evaluation)
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return the number of decisions dropped because the cache was full
+     */
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return the number of decisions dropped because their time to live
+     * passed
+     */
+    public long getExpirationCount() {
+        return this.expirations.sum();
+    }
+
+    private static final class Key {
+
+        final String resource;
+        final String accessMode;
+        final String webid;
+        final int hash;
+
+        Key(String resource, String accessMode, String webid) {
+            this.resource = resource;
+            this.accessMode = accessMode;
+            this.webid = webid;
+            this.hash = Objects.hash(resource, accessMode, webid);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.hash == other.hash
+                    && this.resource.equals(other.resource)
+                    && this.accessMode.equals(other.accessMode)
+                    && Objects.equals(this.webid, other.webid);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static final class Entry {
+
+        final Key key;
+        final Decision decision;
+        final long expiresAt;
+
+        Entry(Key key, Decision decision, long expiresAt) {
+            this.key = key;
+            this.decision = decision;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 
 import edu.kit.aifb.solid.wac.WacMapping;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
 import edu.kit.aifb.solid.wac.query.WacQuery;
 import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
 
@@ -40,9 +41,32 @@ public class App {
      *
      */
     public static String checkAccessControl(String resource, String method, String body, String webid, Map<String, Dataset> envResourceMap, WacMapping envResourceAclMap) {
+        return checkAccessControl(resource, method, body, webid, envResourceMap, envResourceAclMap, null);
+    }
+
+    /**
+     * Check the rules using compiled ACLs instead of SPARQL queries. Same
+     * result as
+     * {@link #checkAccessControl(String, String, String, String, Map, WacMapping)}.
+     *
+     * @param resource the target of the HTTP request of an agent
+     * @param method the HTTP action to be executed on the target resource
+     * @param body MUST not be null, for PATCH the body should always be
+     * provided, otherwise shouldnt
+     * @param webid if != null, it is assumed to be authenticated
+     * @param envResourceMap appplication environment resource map
+     * @param envResourceAclMap application environement resource to
+     * corresponding aclRDF map
+     * @param envAclIndexCache application environment cache of compiled ACLs,
+     * if {@code null} the SPARQL queries are used
+     * @return the URI String of the matching access control rule or
+     * {@code null} if none matches
+     */
+    public static String checkAccessControl(String resource, String method, String body, String webid, Map<String, Dataset> envResourceMap, WacMapping envResourceAclMap, AclIndexCache envAclIndexCache) {
         // get the query builder for the resource (may look for inherited rules)
         WacQueryBuilder queryBuilder = WacQueryBuilder
                 .newBuilder(envResourceMap, envResourceAclMap)
+                .usingIndex(envAclIndexCache)
                 .forRequest(resource, method, body)
                 .byAgent(webid);
         WacQuery[] queries = queryBuilder.build();
@@ -0,0 +1,107 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+
+/**
+ * The triples deleted from and inserted into the default graph of one
+ * {@code .acl} or agent group document, e.g. by a PUT or PATCH. Deletions are
+ * applied before insertions.
+ *
+ * See {@link AclIndexCache#apply(AclDelta)} and
+ * {@link GroupMembershipIndex#apply(AclDelta)}.
+ */
+public final class AclDelta {
+
+    private final String document;
+    private final List<Triple> deletions;
+    private final List<Triple> insertions;
+
+    /**
+     * @param document the URI string of the document
+     * @param deletions the deleted triples
+     * @param insertions the inserted triples
+     */
+    public AclDelta(String document, Collection<Triple> deletions, Collection<Triple> insertions) {
+        if (document == null) {
+            throw new IllegalArgumentException("The document must not be null.");
+        }
+        this.document = document;
+        this.deletions = (deletions == null) ? Collections.emptyList() : List.copyOf(deletions);
+        this.insertions = (insertions == null) ? Collections.emptyList() : List.copyOf(insertions);
+    }
+
+    /**
+     * The changes from one version of a document to another, e.g. for a PUT.
+     *
+     * @param document the URI string of the document
+     * @param before may be {@code null} if the document was created
+     * @param after may be {@code null} if the document was deleted
+     * @return the delta
+     */
+    public static AclDelta diff(String document, Dataset before, Dataset after) {
+        Graph old = (before == null) ? null : before.asDatasetGraph().getDefaultGraph();
+        Graph updated = (after == null) ? null : after.asDatasetGraph().getDefaultGraph();
+        List<Triple> deletions = new ArrayList<>();
+        List<Triple> insertions = new ArrayList<>();
+        if (old != null) {
+            old.find().forEachRemaining(triple -> {
+                if (updated == null || !updated.contains(triple)) {
+                    deletions.add(triple);
+                }
+            });
+        }
+        if (updated != null) {
+            updated.find().forEachRemaining(triple -> {
+                if (old == null || !old.contains(triple)) {
+                    insertions.add(triple);
+                }
+            });
+        }
+        return new AclDelta(document, deletions, insertions);
+    }
+
+    /**
+     * Apply the changes to the default graph of a dataset, e.g. the dataset
+     * of the document in the resource map.
+     *
+     * @param dataset
+     */
+    public void applyTo(Dataset dataset) {
+        Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+        this.deletions.forEach(graph::delete);
+        this.insertions.forEach(graph::add);
+    }
+
+    /**
+     * @return the URI string of the document
+     */
+    public String getDocument() {
+        return this.document;
+    }
+
+    /**
+     * @return the deleted triples
+     */
+    public List<Triple> getDeletions() {
+        return this.deletions;
+    }
+
+    /**
+     * @return the inserted triples
+     */
+    public List<Triple> getInsertions() {
+        return this.insertions;
+    }
+
+    @Override
+    public String toString() {
+        return "AclDelta(" + this.document + ", -" + this.deletions.size() + ", +" + this.insertions.size() + ")";
+    }
+}
@@ -0,0 +1,540 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+
+/**
+ * A compiled view on the access control rules (and agent group memberships)
+ * of an RDF dataset.
+ *
+ * Rules are keyed by (accessTo/default target, mode, agent / agentClass /
+ * agentGroup), s.t. checking access is a few hash lookups instead of a SPARQL
+ * query. Just as the {@link edu.kit.aifb.solid.wac.query.WacQuery}, the index
+ * only considers the triples in the default graph. If several rules match,
+ * the one with the smallest URI is found.
+ *
+ * The index is only modified by {@link #apply(AclDelta)}, where each (target,
+ * mode) is replaced atomically.
+ */
+public final class AclIndex implements AclRules {
+
+    static final String AUTHORIZATION = Namespaces.ACL + "Authorization";
+    static final String ACCESS_TO = Namespaces.ACL + "accessTo";
+    static final String DEFAULT = Namespaces.ACL + "default";
+    static final String MODE = Namespaces.ACL + "mode";
+    static final String AGENT = Namespaces.ACL + "agent";
+    static final String AGENT_CLASS = Namespaces.ACL + "agentClass";
+    static final String AGENT_GROUP = Namespaces.ACL + "agentGroup";
+    static final String AUTHENTICATED_AGENT = Namespaces.ACL + "AuthenticatedAgent";
+    static final String PUBLIC_AGENT = Namespaces.FOAF + "Agent";
+    static final String HAS_MEMBER = Namespaces.VCARD + "hasMember";
+    static final String APPEND = Namespaces.ACL + "Append";
+    static final String WRITE = Namespaces.ACL + "Write";
+
+    // the predicates describing an authorization, besides rdf:type
+    static final List<String> RULE_PREDICATES = List.of(ACCESS_TO, DEFAULT, MODE, AGENT, AGENT_CLASS, AGENT_GROUP);
+
+    /**
+     * An index without any rules or memberships, e.g. for a missing
+     * {@code .acl}.
+     */
+    public static final AclIndex EMPTY = new AclIndex(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    // target -> mode -> rules
+    final Map<String, Map<String, Rules>> accessTo;
+    final Map<String, Map<String, Rules>> inherited;
+    // group -> members, the sets are never modified once published
+    final Map<String, Set<String>> members;
+    // subject -> what the document states about it, also if it is not (yet) an acl:Authorization
+    private final Map<String, Rule> descriptions;
+
+    private AclIndex(Map<String, Map<String, Rules>> accessTo, Map<String, Map<String, Rules>> inherited, Map<String, Set<String>> members, Map<String, Rule> descriptions) {
+        this.accessTo = accessTo;
+        this.inherited = inherited;
+        this.members = members;
+        this.descriptions = descriptions;
+    }
+
+    /**
+     * Compile the default graph of a dataset.
+     *
+     * @param dataset may be {@code null}
+     * @return the compiled index
+     */
+    public static AclIndex compile(Dataset dataset) {
+        if (dataset == null) {
+            return EMPTY;
+        }
+        return compile(dataset.getDefaultModel());
+    }
+
+    /**
+     * Compile the access control rules and {@code vcard:hasMember} statements
+     * of a model.
+     *
+     * @param model
+     * @return the compiled index
+     */
+    public static AclIndex compile(Model model) {
+        // only the statements the sink keeps are listed
+        AclSink sink = new AclSink();
+        send(model.listStatements(null, RDF.type, model.createResource(AUTHORIZATION)), sink);
+        for (String predicate : RULE_PREDICATES) {
+            send(model.listStatements(null, property(predicate), (RDFNode) null), sink);
+        }
+        send(model.listStatements(null, property(HAS_MEMBER), (RDFNode) null), sink);
+        return sink.build();
+    }
+
+    private static void send(StmtIterator it, AclSink sink) {
+        try {
+            while (it.hasNext()) {
+                sink.triple(it.next().asTriple());
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * @param builders what the document states about each subject
+     * @param members group -> members
+     * @return the compiled index
+     */
+    static AclIndex of(Collection<Rule.Builder> builders, Map<String, Set<String>> members) {
+        AclIndex index = new AclIndex(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new HashMap<>());
+        Map<Key, List<Rule>> byKey = new HashMap<>();
+        for (Rule.Builder builder : builders) {
+            Rule rule = builder.build();
+            index.descriptions.put(rule.uri, rule);
+            for (Key key : rule.keys()) {
+                byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(rule);
+            }
+        }
+        for (Map.Entry<Key, List<Rule>> entry : byKey.entrySet()) {
+            index.put(entry.getKey(), Rules.of(entry.getValue()));
+        }
+
+        members.forEach((group, groupMembers) -> index.members.put(group, Collections.unmodifiableSet(groupMembers)));
+        return index;
+    }
+
+    private static Property property(String uri) {
+        return ResourceFactory.createProperty(uri);
+    }
+
+    /**
+     * Apply the changes of the document to the index: only the authorizations
+     * and groups the changed triples are about are compiled again.
+     *
+     * @param delta the changes of the document of this index
+     */
+    synchronized void apply(AclDelta delta) {
+        if (this == EMPTY) {
+            throw new IllegalStateException("The empty index cannot be changed.");
+        }
+        Map<String, Rule.Builder> changed = new HashMap<>();
+        for (Triple triple : delta.getDeletions()) {
+            this.change(changed, triple, false);
+        }
+        for (Triple triple : delta.getInsertions()) {
+            this.change(changed, triple, true);
+        }
+        Set<Key> affected = new LinkedHashSet<>();
+        for (Rule.Builder builder : changed.values()) {
+            Rule old = this.descriptions.get(builder.uri);
+            Rule rule = builder.build();
+            if (old != null) {
+                affected.addAll(old.keys());
+            }
+            affected.addAll(rule.keys());
+            if (rule.isEmpty()) {
+                this.descriptions.remove(rule.uri);
+            } else {
+                this.descriptions.put(rule.uri, rule);
+            }
+        }
+        for (Key key : affected) {
+            Rules rules = this.get(key);
+            List<Rule> remaining = new ArrayList<>();
+            if (rules != null) {
+                for (Rule rule : rules.rules) {
+                    if (!changed.containsKey(rule.uri)) {
+                        remaining.add(rule);
+                    }
+                }
+            }
+            for (String uri : changed.keySet()) {
+                Rule rule = this.descriptions.get(uri);
+                if (rule != null && rule.keys().contains(key)) {
+                    remaining.add(rule);
+                }
+            }
+            this.put(key, remaining.isEmpty() ? null : Rules.of(remaining));
+        }
+    }
+
+    private void change(Map<String, Rule.Builder> changed, Triple triple, boolean isInserted) {
+        Node s = triple.getSubject();
+        Node p = triple.getPredicate();
+        Node o = triple.getObject();
+        if (!s.isURI() || !p.isURI()) {
+            return;
+        }
+        String predicate = p.getURI();
+        if (HAS_MEMBER.equals(predicate)) {
+            if (o.isURI()) {
+                this.changeMember(s.getURI(), o.getURI(), isInserted);
+            }
+            return;
+        }
+        boolean isType = RDF.type.getURI().equals(predicate) && o.isURI() && AUTHORIZATION.equals(o.getURI());
+        if (!isType && !(RULE_PREDICATES.contains(predicate) && o.isURI())) {
+            return;
+        }
+        Rule.Builder builder = changed.computeIfAbsent(s.getURI(), uri -> {
+            Rule old = this.descriptions.get(uri);
+            return (old == null) ? new Rule.Builder(uri) : new Rule.Builder(old);
+        });
+        if (isType) {
+            builder.isAuthorization = isInserted;
+        } else if (isInserted) {
+            builder.add(predicate, o.getURI());
+        } else {
+            builder.remove(predicate, o.getURI());
+        }
+    }
+
+    private void changeMember(String group, String webid, boolean isInserted) {
+        this.members.compute(group, (g, groupMembers) -> {
+            Set<String> changed = (groupMembers == null) ? new HashSet<>() : new HashSet<>(groupMembers);
+            if (isInserted) {
+                changed.add(webid);
+            } else {
+                changed.remove(webid);
+            }
+            return changed.isEmpty() ? null : Collections.unmodifiableSet(changed);
+        });
+    }
+
+    private Rules get(Key key) {
+        return this.rules(key.target, key.isInherited, key.mode);
+    }
+
+    private void put(Key key, Rules rules) {
+        Map<String, Map<String, Rules>> index = key.isInherited ? this.inherited : this.accessTo;
+        if (rules == null) {
+            index.computeIfPresent(key.target, (t, byMode) -> {
+                byMode.remove(key.mode);
+                return byMode.isEmpty() ? null : byMode;
+            });
+        } else {
+            index.computeIfAbsent(key.target, t -> new ConcurrentHashMap<>()).put(key.mode, rules);
+        }
+    }
+
+    private Rules rules(String target, boolean isLookingForInheritedRule, String mode) {
+        Map<String, Rules> byMode = (isLookingForInheritedRule ? this.inherited : this.accessTo).get(target);
+        if (byMode == null) {
+            return null;
+        }
+        return byMode.get(mode);
+    }
+
+    /**
+     * if acl:Append is ok, then acl:Write is also acceptable
+     */
+    private Rules writeRules(String target, boolean isLookingForInheritedRule, String mode) {
+        if (!APPEND.equals(mode)) {
+            return null;
+        }
+        return this.rules(target, isLookingForInheritedRule, WRITE);
+    }
+
+    @Override
+    public String findPublicRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+        Rules rules = this.rules(onResource, isLookingForInheritedRule, forMode);
+        if (rules != null && rules.publicRule != null) {
+            return rules.publicRule;
+        }
+        rules = this.writeRules(onResource, isLookingForInheritedRule, forMode);
+        return (rules == null) ? null : rules.publicRule;
+    }
+
+    @Override
+    public String findAuthenticatedRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+        Rules rules = this.rules(onResource, isLookingForInheritedRule, forMode);
+        if (rules != null && rules.authenticatedRule != null) {
+            return rules.authenticatedRule;
+        }
+        rules = this.writeRules(onResource, isLookingForInheritedRule, forMode);
+        return (rules == null) ? null : rules.authenticatedRule;
+    }
+
+    @Override
+    public String findAgentRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId) {
+        Rules rules = this.rules(onResource, isLookingForInheritedRule, forMode);
+        String rule = (rules == null) ? null : rules.agentRules.get(forAgentWebId);
+        if (rule != null) {
+            return rule;
+        }
+        rules = this.writeRules(onResource, isLookingForInheritedRule, forMode);
+        return (rules == null) ? null : rules.agentRules.get(forAgentWebId);
+    }
+
+    @Override
+    public String findGroupRule(String onResource, boolean isLookingForInheritedRule, String forMode, Predicate<String> isMemberOf) {
+        Rules rules = this.rules(onResource, isLookingForInheritedRule, forMode);
+        String rule = (rules == null) ? null : rules.findGroupRule(isMemberOf);
+        if (rule != null) {
+            return rule;
+        }
+        rules = this.writeRules(onResource, isLookingForInheritedRule, forMode);
+        return (rules == null) ? null : rules.findGroupRule(isMemberOf);
+    }
+
+    @Override
+    public String findRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, Predicate<String> isMemberOf) {
+        Rules rules = this.rules(onResource, isLookingForInheritedRule, forMode);
+        Rules write = this.writeRules(onResource, isLookingForInheritedRule, forMode);
+        if (rules == null && write == null) {
+            return null;
+        }
+        if (rules != null && rules.publicRule != null) {
+            return rules.publicRule;
+        }
+        if (write != null && write.publicRule != null) {
+            return write.publicRule;
+        }
+        if (forAgentWebId == null) {
+            return null;
+        }
+        if (rules != null && rules.authenticatedRule != null) {
+            return rules.authenticatedRule;
+        }
+        if (write != null && write.authenticatedRule != null) {
+            return write.authenticatedRule;
+        }
+        String rule = (rules == null) ? null : rules.agentRules.get(forAgentWebId);
+        if (rule == null && write != null) {
+            rule = write.agentRules.get(forAgentWebId);
+        }
+        if (rule == null && rules != null) {
+            rule = rules.findGroupRule(isMemberOf);
+        }
+        if (rule == null && write != null) {
+            rule = write.findGroupRule(isMemberOf);
+        }
+        return rule;
+    }
+
+    @Override
+    public boolean hasMember(String group, String webid) {
+        Set<String> groupMembers = this.members.get(group);
+        return groupMembers != null && groupMembers.contains(webid);
+    }
+
+
+    /**
+     * Where a rule is registered: (accessTo or default target, mode).
+     */
+    private static final class Key {
+
+        final String target;
+        final boolean isInherited;
+        final String mode;
+
+        Key(String target, boolean isInherited, String mode) {
+            this.target = target;
+            this.isInherited = isInherited;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.isInherited == other.isInherited && this.target.equals(other.target) && this.mode.equals(other.mode);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * this.target.hashCode() + this.mode.hashCode()) * 2 + (this.isInherited ? 1 : 0);
+        }
+    }
+
+    /**
+     * What the document states about a subject: a single authorization, if it
+     * is an {@code acl:Authorization}.
+     */
+    static final class Rule {
+
+        final String uri;
+        final boolean isAuthorization;
+        final List<String> accessTo;
+        final List<String> defaults;
+        final List<String> modes;
+        final List<String> agents;
+        final List<String> agentClasses;
+        final List<String> agentGroups;
+
+        private Rule(Builder builder) {
+            this.uri = builder.uri;
+            this.isAuthorization = builder.isAuthorization;
+            this.accessTo = List.copyOf(builder.values.get(ACCESS_TO));
+            this.defaults = List.copyOf(builder.values.get(DEFAULT));
+            this.modes = List.copyOf(builder.values.get(MODE));
+            this.agents = sorted(builder.values.get(AGENT));
+            this.agentClasses = List.copyOf(builder.values.get(AGENT_CLASS));
+            this.agentGroups = sorted(builder.values.get(AGENT_GROUP));
+        }
+
+        private static List<String> sorted(Set<String> values) {
+            List<String> result = new ArrayList<>(values);
+            Collections.sort(result);
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * @return where the rule is registered, none if it is not an
+         * {@code acl:Authorization}
+         */
+        List<Key> keys() {
+            if (!this.isAuthorization) {
+                return Collections.emptyList();
+            }
+            List<Key> keys = new ArrayList<>((this.accessTo.size() + this.defaults.size()) * this.modes.size());
+            for (String mode : this.modes) {
+                for (String target : this.accessTo) {
+                    keys.add(new Key(target, false, mode));
+                }
+                for (String target : this.defaults) {
+                    keys.add(new Key(target, true, mode));
+                }
+            }
+            return keys;
+        }
+
+        boolean isEmpty() {
+            return !this.isAuthorization && this.accessTo.isEmpty() && this.defaults.isEmpty() && this.modes.isEmpty()
+                    && this.agents.isEmpty() && this.agentClasses.isEmpty() && this.agentGroups.isEmpty();
+        }
+
+        static final class Builder {
+
+            final String uri;
+            boolean isAuthorization = false;
+            final Map<String, Set<String>> values = new HashMap<>();
+
+            Builder(String uri) {
+                this.uri = uri;
+                for (String predicate : RULE_PREDICATES) {
+                    this.values.put(predicate, new LinkedHashSet<>());
+                }
+            }
+
+            Builder(Rule rule) {
+                this(rule.uri);
+                this.isAuthorization = rule.isAuthorization;
+                this.values.get(ACCESS_TO).addAll(rule.accessTo);
+                this.values.get(DEFAULT).addAll(rule.defaults);
+                this.values.get(MODE).addAll(rule.modes);
+                this.values.get(AGENT).addAll(rule.agents);
+                this.values.get(AGENT_CLASS).addAll(rule.agentClasses);
+                this.values.get(AGENT_GROUP).addAll(rule.agentGroups);
+            }
+
+            void add(String predicate, String object) {
+                this.values.get(predicate).add(object);
+            }
+
+            void remove(String predicate, String object) {
+                this.values.get(predicate).remove(object);
+            }
+
+            Rule build() {
+                return new Rule(this);
+            }
+        }
+    }
+
+    /**
+     * All rules for one (target, mode), grouped by how the agent is
+     * specified. The rules are considered in the order of their URIs, s.t.
+     * the result does not depend on the order of compilation.
+     */
+    static final class Rules {
+
+        final List<Rule> rules;
+        String publicRule;
+        String authenticatedRule;
+        final Map<String, String> agentRules = new HashMap<>();
+        final List<String> groups = new ArrayList<>();
+        final List<String> groupRules = new ArrayList<>();
+
+        private Rules(List<Rule> rules) {
+            this.rules = rules;
+        }
+
+        static Rules of(List<Rule> rules) {
+            List<Rule> sorted = new ArrayList<>(rules);
+            sorted.sort(Comparator.comparing(rule -> rule.uri));
+            Rules result = new Rules(Collections.unmodifiableList(sorted));
+            for (Rule rule : sorted) {
+                result.add(rule);
+            }
+            return result;
+        }
+
+        private void add(Rule rule) {
+            for (String agentClass : rule.agentClasses) {
+                if (PUBLIC_AGENT.equals(agentClass) && this.publicRule == null) {
+                    this.publicRule = rule.uri;
+                }
+                if (AUTHENTICATED_AGENT.equals(agentClass) && this.authenticatedRule == null) {
+                    this.authenticatedRule = rule.uri;
+                }
+            }
+            for (String agent : rule.agents) {
+                this.agentRules.putIfAbsent(agent, rule.uri);
+            }
+            for (String group : rule.agentGroups) {
+                this.groups.add(group);
+                this.groupRules.add(rule.uri);
+            }
+        }
+
+        String findGroupRule(Predicate<String> isMemberOf) {
+            for (int i = 0; i < this.groups.size(); i++) {
+                if (isMemberOf.test(this.groups.get(i))) {
+                    return this.groupRules.get(i);
+                }
+            }
+            return null;
+        }
+    }
+}
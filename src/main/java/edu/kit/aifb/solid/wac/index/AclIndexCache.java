@@ -0,0 +1,83 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.query.Dataset;
+
+/**
+ * Keeps the compiled {@link AclIndex} per document URI ({@code .acl} or agent
+ * group) s.t. a document is only compiled once.
+ *
+ * If the dataset of a URI is replaced, the index is compiled again. If a
+ * dataset is modified in place, call {@link #apply(AclDelta)} with the changes
+ * or {@link #invalidate(String)}.
+ */
+public class AclIndexCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Get the compiled index of a document.
+     *
+     * @param uri the URI string of the document
+     * @param dataset the RDF dataset of the document, may be {@code null}
+     * @return the compiled index, {@link AclIndex#EMPTY} if there is no
+     * dataset
+     */
+    public AclIndex get(String uri, Dataset dataset) {
+        if (uri == null || dataset == null) {
+            return AclIndex.EMPTY;
+        }
+        Entry entry = this.entries.get(uri);
+        if (entry != null && entry.source == dataset) {
+            return entry.index;
+        }
+        entry = new Entry(dataset, AclIndex.compile(dataset));
+        this.entries.put(uri, entry);
+        return entry.index;
+    }
+
+    /**
+     * Drop the compiled index of a document, e.g. after the {@code .acl} was
+     * modified.
+     *
+     * @param uri the URI string of the document
+     */
+    public void invalidate(String uri) {
+        this.entries.remove(uri);
+    }
+
+    /**
+     * Update the compiled index of a document in place, instead of compiling
+     * it again, e.g. after a PUT or PATCH of an {@code .acl}. The dataset of
+     * the document must be changed, too (see {@link AclDelta#applyTo}), s.t.
+     * it stays the source of the index. If the document is not compiled yet,
+     * nothing happens.
+     *
+     * @param delta the changes of the document
+     */
+    public void apply(AclDelta delta) {
+        Entry entry = this.entries.get(delta.getDocument());
+        if (entry != null) {
+            entry.index.apply(delta);
+        }
+    }
+
+    /**
+     * Drop all compiled indexes.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    private static final class Entry {
+
+        final Dataset source;
+        final AclIndex index;
+
+        Entry(Dataset source, AclIndex index) {
+            this.source = source;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.function.Predicate;
+
+/**
+ * The compiled access control rules (and agent group memberships) of a
+ * document, e.g. an {@link AclIndex} on the heap or a document of a
+ * memory-mapped {@link AclSnapshot}.
+ *
+ * If {@code acl:Append} is requested, rules granting {@code acl:Write} match
+ * as well.
+ */
+public interface AclRules {
+
+    /**
+     * Look up a rule granting {@code foaf:Agent} access.
+     *
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @return the rule URI or {@code null}
+     */
+    String findPublicRule(String onResource, boolean isLookingForInheritedRule, String forMode);
+
+    /**
+     * Look up a rule granting {@code acl:AuthenticatedAgent} access.
+     *
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @return the rule URI or {@code null}
+     */
+    String findAuthenticatedRule(String onResource, boolean isLookingForInheritedRule, String forMode);
+
+    /**
+     * Look up a rule granting access to the agent via {@code acl:agent}.
+     *
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId
+     * @return the rule URI or {@code null}
+     */
+    String findAgentRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId);
+
+    /**
+     * Look up a rule granting access via {@code acl:agentGroup}.
+     *
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param isMemberOf decides if the requesting agent is member of a group
+     * @return the first rule URI with a group the agent is member of or
+     * {@code null}
+     */
+    String findGroupRule(String onResource, boolean isLookingForInheritedRule, String forMode, Predicate<String> isMemberOf);
+
+    /**
+     * Look up a rule granting access to the agent in one probe. The rules are
+     * considered in the order of {@link
+     * edu.kit.aifb.solid.wac.query.WacQueryType}: public, authenticated, agent,
+     * agent group.
+     *
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId if {@code null}, only public rules are considered
+     * @param isMemberOf decides if the requesting agent is member of a group
+     * @return the rule URI or {@code null}
+     */
+    default String findRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, Predicate<String> isMemberOf) {
+        String rule = this.findPublicRule(onResource, isLookingForInheritedRule, forMode);
+        if (rule != null || forAgentWebId == null) {
+            return rule;
+        }
+        rule = this.findAuthenticatedRule(onResource, isLookingForInheritedRule, forMode);
+        if (rule == null) {
+            rule = this.findAgentRule(onResource, isLookingForInheritedRule, forMode, forAgentWebId);
+        }
+        if (rule == null) {
+            rule = this.findGroupRule(onResource, isLookingForInheritedRule, forMode, isMemberOf);
+        }
+        return rule;
+    }
+
+    /**
+     * Check {@code <group> vcard:hasMember <webid>}.
+     *
+     * @param group the group URI
+     * @param webid the agent
+     * @return isMember
+     */
+    boolean hasMember(String group, String webid);
+}
@@ -0,0 +1,93 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Compiles a document from the triples a parser emits, without a
+ * {@link org.apache.jena.rdf.model.Model}: only the statements the rules are
+ * made of ({@code rdf:type acl:Authorization}, {@code acl:accessTo},
+ * {@code acl:default}, {@code acl:mode}, {@code acl:agent},
+ * {@code acl:agentClass}, {@code acl:agentGroup}) and {@code vcard:hasMember}
+ * are kept, all other triples are dropped as they arrive. Like
+ * {@link AclIndex#compile(org.apache.jena.query.Dataset)}, only the default
+ * graph counts.
+ *
+ * <pre>
+ * AclSink sink = new AclSink();
+ * RDFParser.source(file).lang(Lang.TURTLE).base(uri).parse(sink);
+ * AclIndex index = sink.build();
+ * </pre>
+ *
+ * A sink compiles one document and is not thread-safe.
+ */
+public final class AclSink extends StreamRDFBase {
+
+    private final Map<String, AclIndex.Rule.Builder> builders = new HashMap<>();
+    private final Map<String, Set<String>> members = new HashMap<>();
+    private long triples = 0;
+    private long kept = 0;
+
+    @Override
+    public void triple(Triple triple) {
+        this.triples++;
+        Node s = triple.getSubject();
+        Node p = triple.getPredicate();
+        Node o = triple.getObject();
+        // the query would not retrieve a rule URI either
+        if (!s.isURI() || !p.isURI() || !o.isURI()) {
+            return;
+        }
+        String predicate = p.getURI();
+        if (RDF.type.getURI().equals(predicate)) {
+            if (AclIndex.AUTHORIZATION.equals(o.getURI())) {
+                this.builders.computeIfAbsent(s.getURI(), AclIndex.Rule.Builder::new).isAuthorization = true;
+                this.kept++;
+            }
+        } else if (AclIndex.HAS_MEMBER.equals(predicate)) {
+            this.members.computeIfAbsent(s.getURI(), g -> new HashSet<>()).add(o.getURI());
+            this.kept++;
+        } else if (AclIndex.RULE_PREDICATES.contains(predicate)) {
+            this.builders.computeIfAbsent(s.getURI(), AclIndex.Rule.Builder::new).add(predicate, o.getURI());
+            this.kept++;
+        }
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        if (quad.isDefaultGraph()) {
+            this.triple(quad.asTriple());
+        }
+    }
+
+    /**
+     * @return the number of triples received
+     */
+    public long getTripleCount() {
+        return this.triples;
+    }
+
+    /**
+     * @return the number of triples kept for the rules and memberships
+     */
+    public long getKeptCount() {
+        return this.kept;
+    }
+
+    /**
+     * Compile the rules and memberships, once the parser is done.
+     *
+     * @return the compiled index
+     */
+    public AclIndex build() {
+        return AclIndex.of(this.builders.values(), this.members);
+    }
+}
@@ -0,0 +1,567 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import edu.kit.aifb.solid.wac.store.AclStore;
+
+/**
+ * The compiled rules and agent group memberships of many documents in one
+ * binary file, which is memory-mapped instead of parsed: opening a snapshot
+ * only reads the header, lookups probe hash tables and binary search sorted
+ * arrays in the mapped file. Only the URI strings of the results are copied to
+ * the heap.
+ *
+ * Layout (big-endian {@code int}s, positions are absolute):
+ * <ul>
+ * <li>header: magic, version, string count, positions of the string offsets,
+ * string bytes and string hash table, its capacity, position of the document
+ * hash table, its capacity, document count</li>
+ * <li>document table: slots of (document string id + 1, record position),
+ * {@code 0} marks an empty slot</li>
+ * <li>document record: position and capacity of its rule table, position and
+ * count of its memberships</li>
+ * <li>rule table: slots of (target id + 1, mode id * 2 + inherited, rules
+ * position)</li>
+ * <li>rules: public rule id, authenticated rule id ({@code -1} if none),
+ * (agent id, rule id) pairs sorted by agent, (group id, rule id) pairs in
+ * order of the document</li>
+ * <li>memberships: (group id, member id) pairs sorted</li>
+ * <li>strings: offsets into the UTF-8 bytes and a hash table of string id +
+ * 1</li>
+ * </ul>
+ *
+ * Immutable and thread-safe. Write a new snapshot when documents change.
+ */
+public final class AclSnapshot implements CompiledAcls {
+
+    private static final int MAGIC = 0x57414353; // WACS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 10 * Integer.BYTES;
+    private static final int NONE = -1;
+
+    private final ByteBuffer buffer;
+    private final int stringOffsets;
+    private final int stringBytes;
+    private final int stringTable;
+    private final int stringTableCapacity;
+    private final int documentTable;
+    private final int documentTableCapacity;
+    private final int documentCount;
+    private final int writeId;
+
+    private AclSnapshot(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an ACL snapshot.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported ACL snapshot version: " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.stringOffsets = buffer.getInt(12);
+        this.stringBytes = buffer.getInt(16);
+        this.stringTable = buffer.getInt(20);
+        this.stringTableCapacity = buffer.getInt(24);
+        this.documentTable = buffer.getInt(28);
+        this.documentTableCapacity = buffer.getInt(32);
+        this.documentCount = buffer.getInt(36);
+        this.writeId = this.idOf(AclIndex.WRITE);
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @param file written by {@link #write(AclStore, Path)}
+     * @return the snapshot
+     * @throws IOException
+     */
+    public static AclSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("ACL snapshots are limited to 2 GiB: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new AclSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Compile all documents of a store and write them to a snapshot file. The
+     * file is replaced atomically, s.t. a snapshot being opened concurrently
+     * is either the old or the new one.
+     *
+     * @param store the {@code .acl} and agent group documents, must be able to
+     * list its documents
+     * @param file
+     * @throws IOException
+     */
+    public static void write(AclStore store, Path file) throws IOException {
+        Map<String, AclIndex> documents = new HashMap<>();
+        for (String uri : store.uris()) {
+            AclSink sink = new AclSink();
+            documents.put(uri, store.stream(uri, sink) ? sink.build() : AclIndex.EMPTY);
+        }
+        Writer writer = new Writer();
+        writer.write(documents);
+        Path parent = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, writer.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.documentCount;
+    }
+
+    @Override
+    public boolean contains(String document) {
+        return this.recordOf(document) != NONE;
+    }
+
+    /**
+     * @return a view on the rules in the mapped file, {@link AclIndex#EMPTY}
+     * if the snapshot does not contain the document
+     */
+    @Override
+    public AclRules get(String document) {
+        int record = this.recordOf(document);
+        return (record == NONE) ? AclIndex.EMPTY : new Document(record);
+    }
+
+    @Override
+    public boolean hasMember(String group, String webid) {
+        return this.get(GroupMembershipIndex.documentOf(group)).hasMember(group, webid);
+    }
+
+    private int recordOf(String document) {
+        int id = this.idOf(document);
+        if (id == NONE || this.documentTableCapacity == 0) {
+            return NONE;
+        }
+        int mask = this.documentTableCapacity - 1;
+        for (int slot = mix(id) & mask;; slot = (slot + 1) & mask) {
+            int position = this.documentTable + slot * 2 * Integer.BYTES;
+            int key = this.buffer.getInt(position);
+            if (key == 0) {
+                return NONE;
+            }
+            if (key == id + 1) {
+                return this.buffer.getInt(position + Integer.BYTES);
+            }
+        }
+    }
+
+    // STRINGS
+    private int idOf(String s) {
+        if (s == null || this.stringTableCapacity == 0) {
+            return NONE;
+        }
+        byte[] bytes = null;
+        int mask = this.stringTableCapacity - 1;
+        for (int slot = mix(s.hashCode()) & mask;; slot = (slot + 1) & mask) {
+            int key = this.buffer.getInt(this.stringTable + slot * Integer.BYTES);
+            if (key == 0) {
+                return NONE;
+            }
+            if (bytes == null) {
+                bytes = s.getBytes(StandardCharsets.UTF_8);
+            }
+            if (this.equalsAt(key - 1, bytes)) {
+                return key - 1;
+            }
+        }
+    }
+
+    private boolean equalsAt(int id, byte[] bytes) {
+        int start = this.buffer.getInt(this.stringOffsets + id * Integer.BYTES);
+        int end = this.buffer.getInt(this.stringOffsets + (id + 1) * Integer.BYTES);
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (this.buffer.get(this.stringBytes + start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String stringOf(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        int start = this.buffer.getInt(this.stringOffsets + id * Integer.BYTES);
+        int end = this.buffer.getInt(this.stringOffsets + (id + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        this.buffer.get(this.stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A document in the mapped file.
+     */
+    private final class Document implements AclRules {
+
+        private final int record;
+
+        Document(int record) {
+            this.record = record;
+        }
+
+        /**
+         * @return the position of the rules, {@link #NONE} if there are none
+         */
+        private int rules(String onResource, boolean isLookingForInheritedRule, int modeId) {
+            ByteBuffer buffer = AclSnapshot.this.buffer;
+            int capacity = buffer.getInt(this.record + Integer.BYTES);
+            int targetId = AclSnapshot.this.idOf(onResource);
+            if (capacity == 0 || targetId == NONE || modeId == NONE) {
+                return NONE;
+            }
+            int table = buffer.getInt(this.record);
+            int key = modeId * 2 + (isLookingForInheritedRule ? 1 : 0);
+            int mask = capacity - 1;
+            for (int slot = mix(31 * targetId + key) & mask;; slot = (slot + 1) & mask) {
+                int position = table + slot * 3 * Integer.BYTES;
+                int target = buffer.getInt(position);
+                if (target == 0) {
+                    return NONE;
+                }
+                if (target == targetId + 1 && buffer.getInt(position + Integer.BYTES) == key) {
+                    return buffer.getInt(position + 2 * Integer.BYTES);
+                }
+            }
+        }
+
+        /**
+         * @return the positions of the rules for the mode and, if acl:Append
+         * is requested, for acl:Write
+         */
+        private int[] rulesFor(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            int modeId = AclSnapshot.this.idOf(forMode);
+            int rules = this.rules(onResource, isLookingForInheritedRule, modeId);
+            // if acl:Append is ok, then acl:Write is also acceptable
+            int write = AclIndex.APPEND.equals(forMode) ? this.rules(onResource, isLookingForInheritedRule, AclSnapshot.this.writeId) : NONE;
+            return new int[]{rules, write};
+        }
+
+        @Override
+        public String findPublicRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            for (int rules : this.rulesFor(onResource, isLookingForInheritedRule, forMode)) {
+                if (rules != NONE && AclSnapshot.this.buffer.getInt(rules) != NONE) {
+                    return AclSnapshot.this.stringOf(AclSnapshot.this.buffer.getInt(rules));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String findAuthenticatedRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            for (int rules : this.rulesFor(onResource, isLookingForInheritedRule, forMode)) {
+                if (rules != NONE && AclSnapshot.this.buffer.getInt(rules + Integer.BYTES) != NONE) {
+                    return AclSnapshot.this.stringOf(AclSnapshot.this.buffer.getInt(rules + Integer.BYTES));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String findAgentRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId) {
+            int agentId = AclSnapshot.this.idOf(forAgentWebId);
+            if (agentId == NONE) {
+                return null;
+            }
+            ByteBuffer buffer = AclSnapshot.this.buffer;
+            for (int rules : this.rulesFor(onResource, isLookingForInheritedRule, forMode)) {
+                if (rules == NONE) {
+                    continue;
+                }
+                int agents = rules + 3 * Integer.BYTES;
+                int low = 0;
+                int high = buffer.getInt(rules + 2 * Integer.BYTES) - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    int agent = buffer.getInt(agents + mid * 2 * Integer.BYTES);
+                    if (agent < agentId) {
+                        low = mid + 1;
+                    } else if (agent > agentId) {
+                        high = mid - 1;
+                    } else {
+                        return AclSnapshot.this.stringOf(buffer.getInt(agents + mid * 2 * Integer.BYTES + Integer.BYTES));
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String findGroupRule(String onResource, boolean isLookingForInheritedRule, String forMode, Predicate<String> isMemberOf) {
+            ByteBuffer buffer = AclSnapshot.this.buffer;
+            for (int rules : this.rulesFor(onResource, isLookingForInheritedRule, forMode)) {
+                if (rules == NONE) {
+                    continue;
+                }
+                int groupCountAt = rules + 3 * Integer.BYTES + buffer.getInt(rules + 2 * Integer.BYTES) * 2 * Integer.BYTES;
+                int groups = groupCountAt + Integer.BYTES;
+                for (int i = 0; i < buffer.getInt(groupCountAt); i++) {
+                    int position = groups + i * 2 * Integer.BYTES;
+                    if (isMemberOf.test(AclSnapshot.this.stringOf(buffer.getInt(position)))) {
+                        return AclSnapshot.this.stringOf(buffer.getInt(position + Integer.BYTES));
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasMember(String group, String webid) {
+            ByteBuffer buffer = AclSnapshot.this.buffer;
+            int count = buffer.getInt(this.record + 3 * Integer.BYTES);
+            if (count == 0) {
+                return false;
+            }
+            int groupId = AclSnapshot.this.idOf(group);
+            int memberId = AclSnapshot.this.idOf(webid);
+            if (groupId == NONE || memberId == NONE) {
+                return false;
+            }
+            int memberships = buffer.getInt(this.record + 2 * Integer.BYTES);
+            long key = pair(groupId, memberId);
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int position = memberships + mid * 2 * Integer.BYTES;
+                long probe = pair(buffer.getInt(position), buffer.getInt(position + Integer.BYTES));
+                if (probe < key) {
+                    low = mid + 1;
+                } else if (probe > key) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return a power of two with a load factor of at most one half
+     */
+    private static int capacityFor(int size) {
+        return (size == 0) ? 0 : Integer.highestOneBit(Math.max(1, size * 2 - 1)) << 1;
+    }
+
+    /**
+     * Lays out the snapshot in a growing heap buffer.
+     */
+    private static final class Writer {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private ByteBuffer out = ByteBuffer.allocate(1 << 16);
+
+        int id(String s) {
+            return this.ids.computeIfAbsent(s, k -> {
+                this.strings.add(k);
+                return this.strings.size() - 1;
+            });
+        }
+
+        void ensure(int bytes) {
+            if (this.out.remaining() < bytes) {
+                long capacity = Math.max((long) this.out.capacity() * 2, (long) this.out.position() + bytes);
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("ACL snapshots are limited to 2 GiB.");
+                }
+                ByteBuffer grown = ByteBuffer.allocate((int) capacity);
+                this.out.flip();
+                grown.put(this.out);
+                this.out = grown;
+            }
+        }
+
+        int position() {
+            return this.out.position();
+        }
+
+        void putInt(int value) {
+            this.ensure(Integer.BYTES);
+            this.out.putInt(value);
+        }
+
+        /**
+         * @return the position of the zeroed bytes
+         */
+        int reserve(int bytes) {
+            this.ensure(bytes);
+            int position = this.out.position();
+            this.out.position(position + bytes);
+            return position;
+        }
+
+        void write(Map<String, AclIndex> documents) {
+            int header = this.reserve(HEADER_SIZE);
+            // document ids first, s.t. the records can refer to them
+            List<String> uris = new ArrayList<>(new TreeSet<>(documents.keySet()));
+            int[] records = new int[uris.size()];
+            for (int i = 0; i < uris.size(); i++) {
+                this.id(uris.get(i));
+            }
+            for (int i = 0; i < uris.size(); i++) {
+                records[i] = this.writeDocument(documents.get(uris.get(i)));
+            }
+            int documentTableCapacity = capacityFor(uris.size());
+            int documentTable = this.reserve(documentTableCapacity * 2 * Integer.BYTES);
+            for (int i = 0; i < uris.size(); i++) {
+                int id = this.id(uris.get(i));
+                int slot = mix(id) & (documentTableCapacity - 1);
+                while (this.out.getInt(documentTable + slot * 2 * Integer.BYTES) != 0) {
+                    slot = (slot + 1) & (documentTableCapacity - 1);
+                }
+                this.out.putInt(documentTable + slot * 2 * Integer.BYTES, id + 1);
+                this.out.putInt(documentTable + slot * 2 * Integer.BYTES + Integer.BYTES, records[i]);
+            }
+            // strings last, all are known now
+            byte[][] encoded = new byte[this.strings.size()][];
+            int stringOffsets = this.position();
+            int offset = 0;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = this.strings.get(i).getBytes(StandardCharsets.UTF_8);
+                this.putInt(offset);
+                offset += encoded[i].length;
+            }
+            this.putInt(offset);
+            int stringBytes = this.position();
+            this.ensure(offset);
+            for (byte[] bytes : encoded) {
+                this.out.put(bytes);
+            }
+            int stringTableCapacity = capacityFor(encoded.length);
+            int stringTable = this.reserve(stringTableCapacity * Integer.BYTES);
+            for (int i = 0; i < encoded.length; i++) {
+                int slot = mix(this.strings.get(i).hashCode()) & (stringTableCapacity - 1);
+                while (this.out.getInt(stringTable + slot * Integer.BYTES) != 0) {
+                    slot = (slot + 1) & (stringTableCapacity - 1);
+                }
+                this.out.putInt(stringTable + slot * Integer.BYTES, i + 1);
+            }
+            int[] fields = {MAGIC, VERSION, encoded.length, stringOffsets, stringBytes, stringTable, stringTableCapacity, documentTable, documentTableCapacity, uris.size()};
+            for (int i = 0; i < fields.length; i++) {
+                this.out.putInt(header + i * Integer.BYTES, fields[i]);
+            }
+        }
+
+        /**
+         * @return the position of the document record
+         */
+        private int writeDocument(AclIndex index) {
+            // (target id, mode id * 2 + inherited) -> rules position
+            List<int[]> entries = new ArrayList<>();
+            this.writeRules(index.accessTo, false, entries);
+            this.writeRules(index.inherited, true, entries);
+            int ruleTableCapacity = capacityFor(entries.size());
+            int ruleTable = this.reserve(ruleTableCapacity * 3 * Integer.BYTES);
+            for (int[] entry : entries) {
+                int slot = mix(31 * entry[0] + entry[1]) & (ruleTableCapacity - 1);
+                while (this.out.getInt(ruleTable + slot * 3 * Integer.BYTES) != 0) {
+                    slot = (slot + 1) & (ruleTableCapacity - 1);
+                }
+                int position = ruleTable + slot * 3 * Integer.BYTES;
+                this.out.putInt(position, entry[0] + 1);
+                this.out.putInt(position + Integer.BYTES, entry[1]);
+                this.out.putInt(position + 2 * Integer.BYTES, entry[2]);
+            }
+            int count = 0;
+            for (Set<String> members : index.members.values()) {
+                count += members.size();
+            }
+            long[] memberships = new long[count];
+            int i = 0;
+            for (Map.Entry<String, Set<String>> group : index.members.entrySet()) {
+                int groupId = this.id(group.getKey());
+                for (String member : group.getValue()) {
+                    memberships[i++] = pair(groupId, this.id(member));
+                }
+            }
+            Arrays.sort(memberships);
+            int membersPosition = this.position();
+            for (long membership : memberships) {
+                this.putInt((int) (membership >>> 32));
+                this.putInt((int) membership);
+            }
+            int record = this.position();
+            this.putInt(ruleTable);
+            this.putInt(ruleTableCapacity);
+            this.putInt(membersPosition);
+            this.putInt(memberships.length);
+            return record;
+        }
+
+        private void writeRules(Map<String, Map<String, AclIndex.Rules>> byTarget, boolean isInherited, List<int[]> entries) {
+            for (Map.Entry<String, Map<String, AclIndex.Rules>> target : byTarget.entrySet()) {
+                int targetId = this.id(target.getKey());
+                for (Map.Entry<String, AclIndex.Rules> mode : target.getValue().entrySet()) {
+                    int position = this.writeRules(mode.getValue());
+                    entries.add(new int[]{targetId, this.id(mode.getKey()) * 2 + (isInherited ? 1 : 0), position});
+                }
+            }
+        }
+
+        private int writeRules(AclIndex.Rules rules) {
+            int position = this.position();
+            this.putInt((rules.publicRule == null) ? NONE : this.id(rules.publicRule));
+            this.putInt((rules.authenticatedRule == null) ? NONE : this.id(rules.authenticatedRule));
+            long[] agents = new long[rules.agentRules.size()];
+            int i = 0;
+            for (Map.Entry<String, String> agent : rules.agentRules.entrySet()) {
+                agents[i++] = pair(this.id(agent.getKey()), this.id(agent.getValue()));
+            }
+            Arrays.sort(agents);
+            this.putInt(agents.length);
+            for (long agent : agents) {
+                this.putInt((int) (agent >>> 32));
+                this.putInt((int) agent);
+            }
+            this.putInt(rules.groups.size());
+            for (int g = 0; g < rules.groups.size(); g++) {
+                this.putInt(this.id(rules.groups.get(g)));
+                this.putInt(this.id(rules.groupRules.get(g)));
+            }
+            return position;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.out.array(), this.out.position());
+        }
+    }
+}
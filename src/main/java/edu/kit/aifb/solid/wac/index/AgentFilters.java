@@ -0,0 +1,244 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Keeps a Bloom filter per document URI: of the agents an {@code .acl} grants
+ * access via {@code acl:agent}, and of the members a group document lists via
+ * {@code vcard:hasMember}. Most agents are not mentioned in an {@code .acl}
+ * at all, so the agent and agent group rules need not be looked up for them.
+ * A filter never misses an agent that is mentioned, it only lets some agents
+ * through that are not (at the configured false positive rate).
+ *
+ * Like the {@link AclIndexCache}, a filter is built again if the dataset of a
+ * URI is replaced. If a dataset is modified in place, call
+ * {@link #invalidate(String)}.
+ */
+public class AgentFilters {
+
+    private static final Node AGENT = NodeFactory.createURI(AclIndex.AGENT);
+    private static final Node AGENT_GROUP = NodeFactory.createURI(AclIndex.AGENT_GROUP);
+    private static final Node HAS_MEMBER = NodeFactory.createURI(AclIndex.HAS_MEMBER);
+
+    private final double falsePositiveRate;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder agentChecks = new LongAdder();
+    private final LongAdder agentSkips = new LongAdder();
+    private final LongAdder groupChecks = new LongAdder();
+    private final LongAdder groupSkips = new LongAdder();
+
+    /**
+     * Filters with a false positive rate of 1%.
+     */
+    public AgentFilters() {
+        this(0.01);
+    }
+
+    /**
+     * @param falsePositiveRate the probability that an agent which is not
+     * mentioned passes a filter, between {@code 0} and {@code 1} (exclusive):
+     * the lower, the larger the filters
+     */
+    public AgentFilters(double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * @return the configured false positive rate
+     */
+    public double getFalsePositiveRate() {
+        return this.falsePositiveRate;
+    }
+
+    /**
+     * Check if an {@code .acl} might grant the agent access via
+     * {@code acl:agent}.
+     *
+     * @param acl the URI string of the {@code .acl}
+     * @param dataset its RDF dataset
+     * @param webid the agent
+     * @return {@code false} if the {@code .acl} definitely does not mention
+     * the agent
+     */
+    public boolean mightGrantAgent(String acl, Dataset dataset, String webid) {
+        this.agentChecks.increment();
+        if (this.get(acl, dataset).agents.mightContain(webid)) {
+            return true;
+        }
+        this.agentSkips.increment();
+        return false;
+    }
+
+    /**
+     * Check if an {@code .acl} might grant the agent access via
+     * {@code acl:agentGroup}, i.e. if any group document it refers to might
+     * list the agent. A group document that cannot be loaded might list the
+     * agent.
+     *
+     * @param acl the URI string of the {@code .acl}
+     * @param dataset its RDF dataset
+     * @param webid the agent
+     * @param groupDocuments loads a group document by its URI string,
+     * {@code null} if it is unknown
+     * @return {@code false} if no group document of the {@code .acl}
+     * definitely lists the agent
+     */
+    public boolean mightGrantGroup(String acl, Dataset dataset, String webid, Function<String, Dataset> groupDocuments) {
+        this.groupChecks.increment();
+        for (String document : this.get(acl, dataset).groupDocuments) {
+            Dataset groupDocument = groupDocuments.apply(document);
+            if (groupDocument == null || this.get(document, groupDocument).members.mightContain(webid)) {
+                return true;
+            }
+        }
+        this.groupSkips.increment();
+        return false;
+    }
+
+    /**
+     * Build the filters of a document ahead of time, e.g. at startup, s.t.
+     * the first check does not.
+     *
+     * @param uri the URI string of the document
+     * @param dataset its RDF dataset
+     */
+    public void prepare(String uri, Dataset dataset) {
+        this.get(uri, dataset);
+    }
+
+    /**
+     * Drop the filters of a document, e.g. after it was modified.
+     *
+     * @param uri the URI string of the document
+     */
+    public void invalidate(String uri) {
+        this.entries.remove(uri);
+    }
+
+    /**
+     * Drop all filters.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * @return the number of agent rule checks
+     */
+    public long getAgentChecks() {
+        return this.agentChecks.sum();
+    }
+
+    /**
+     * @return the number of agent rule checks that were definite misses, s.t.
+     * the rules were not looked up
+     */
+    public long getAgentSkips() {
+        return this.agentSkips.sum();
+    }
+
+    /**
+     * @return the number of agent group rule checks
+     */
+    public long getGroupChecks() {
+        return this.groupChecks.sum();
+    }
+
+    /**
+     * @return the number of agent group rule checks that were definite misses,
+     * s.t. the rules were not looked up
+     */
+    public long getGroupSkips() {
+        return this.groupSkips.sum();
+    }
+
+    /**
+     * Reset the statistics.
+     */
+    public void resetStatistics() {
+        this.agentChecks.reset();
+        this.agentSkips.reset();
+        this.groupChecks.reset();
+        this.groupSkips.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("agent checks=%d skips=%d, group checks=%d skips=%d", this.getAgentChecks(), this.getAgentSkips(), this.getGroupChecks(), this.getGroupSkips());
+    }
+
+    private Entry get(String uri, Dataset dataset) {
+        Entry entry = this.entries.get(uri);
+        if (entry != null && entry.source == dataset) {
+            return entry;
+        }
+        entry = this.build(dataset);
+        this.entries.put(uri, entry);
+        return entry;
+    }
+
+    private Entry build(Dataset dataset) {
+        Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+        Set<String> agents = objectsOf(graph, AGENT);
+        Set<String> members = objectsOf(graph, HAS_MEMBER);
+        Set<String> groupDocuments = new HashSet<>();
+        for (String group : objectsOf(graph, AGENT_GROUP)) {
+            groupDocuments.add(GroupMembershipIndex.documentOf(group));
+        }
+        return new Entry(dataset, this.filterOf(agents), this.filterOf(members), Collections.unmodifiableSet(groupDocuments));
+    }
+
+    private BloomFilter filterOf(Set<String> values) {
+        BloomFilter filter = new BloomFilter(values.size(), this.falsePositiveRate);
+        for (String value : values) {
+            filter.put(value);
+        }
+        return filter;
+    }
+
+    private static Set<String> objectsOf(Graph graph, Node predicate) {
+        Set<String> objects = new HashSet<>();
+        ExtendedIterator<Triple> it = graph.find(Node.ANY, predicate, Node.ANY);
+        try {
+            while (it.hasNext()) {
+                Node object = it.next().getObject();
+                if (object.isURI()) {
+                    objects.add(object.getURI());
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return objects;
+    }
+
+    private static final class Entry {
+
+        final Dataset source;
+        final BloomFilter agents;
+        final BloomFilter members;
+        final Set<String> groupDocuments;
+
+        Entry(Dataset source, BloomFilter agents, BloomFilter members, Set<String> groupDocuments) {
+            this.source = source;
+            this.agents = agents;
+            this.members = members;
+            this.groupDocuments = groupDocuments;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package edu.kit.aifb.solid.wac.index;
+
+/**
+ * A Bloom filter of strings: {@link #mightContain(String)} is {@code false}
+ * only if the string was definitely not added, and {@code true} for strings
+ * that were not added with about the configured false positive rate.
+ *
+ * The bit positions are derived by double hashing from one 64-bit FNV-1a hash
+ * of the characters, s.t. probing does not allocate.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions
+     * @param falsePositiveRate between {@code 0} and {@code 1} (exclusive)
+     */
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        int n = Math.max(1, expectedInsertions);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bitCount = (int) Math.max(Long.SIZE, Math.min(m, Integer.MAX_VALUE - Long.SIZE));
+        this.bits = new long[(this.bitCount + Long.SIZE - 1) / Long.SIZE];
+        this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / n * ln2));
+    }
+
+    void put(String s) {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.bitCount;
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String s) {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.bitCount;
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // spread the low bits, FNV alone mixes the last characters poorly
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
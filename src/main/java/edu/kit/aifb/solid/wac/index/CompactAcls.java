@@ -0,0 +1,557 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import edu.kit.aifb.solid.wac.store.AclStore;
+
+/**
+ * The compiled rules and agent group memberships of many documents on the
+ * heap, with all IRIs interned into an {@link IriDictionary}: rules and
+ * memberships are stored as ids in one {@code int} array, in the layout of an
+ * {@link AclSnapshot}. There are no maps, entries or boxed values per rule,
+ * and looking up a rule compares {@code int}s instead of strings, after the
+ * IRIs of the request are looked up once in the dictionary.
+ *
+ * Layout (positions are indices into the array):
+ * <ul>
+ * <li>document record: position and capacity of its rule table, position and
+ * count of its memberships</li>
+ * <li>rule table: slots of (target id + 1, mode id * 2 + inherited, rules
+ * position)</li>
+ * <li>rules: public rule id, authenticated rule id ({@code -1} if none),
+ * count and (agent id, rule id) pairs sorted by agent, count and (group id,
+ * rule id) pairs in order of the document</li>
+ * <li>memberships: (group id, member id) pairs sorted</li>
+ * </ul>
+ *
+ * Immutable and thread-safe. Compile anew when documents change.
+ */
+public final class CompactAcls implements CompiledAcls {
+
+    private static final int NONE = IriDictionary.NONE;
+
+    private final IriDictionary dictionary;
+    private final int[] data;
+    // IRI id -> record position of the document, NONE if there is none
+    private final int[] records;
+    // IRI id of a group -> record position of its group document
+    private final int[] groupRecords;
+    private final int documentCount;
+    private final int appendId;
+    private final int writeId;
+
+    private CompactAcls(IriDictionary dictionary, int[] data, int[] records, int[] groupRecords, int documentCount) {
+        this.dictionary = dictionary;
+        this.data = data;
+        this.records = records;
+        this.groupRecords = groupRecords;
+        this.documentCount = documentCount;
+        this.appendId = dictionary.idOf(AclIndex.APPEND);
+        this.writeId = dictionary.idOf(AclIndex.WRITE);
+    }
+
+    /**
+     * Compile all documents of a store. The documents are streamed into the
+     * compiler (see {@link AclStore#stream}), s.t. the Turtle files of a
+     * {@link edu.kit.aifb.solid.wac.store.FileSystemAclStore} are compiled
+     * as they are parsed, without building a dataset.
+     *
+     * @param store the {@code .acl} and agent group documents, must be able to
+     * list its documents
+     * @return the compiled documents
+     */
+    public static CompactAcls compile(AclStore store) {
+        return store.read(() -> {
+            Writer writer = new Writer();
+            for (String uri : new TreeSet<>(store.uris())) {
+                AclSink sink = new AclSink();
+                writer.add(uri, store.stream(uri, sink) ? sink.build() : AclIndex.EMPTY);
+            }
+            return writer.build();
+        });
+    }
+
+    /**
+     * @return the ids of all IRIs, e.g. to look up the IRIs of a request once
+     * for {@link #findRule(int, int, boolean, int, int)}
+     */
+    public IriDictionary getDictionary() {
+        return this.dictionary;
+    }
+
+    /**
+     * @return the number of {@code int}s of the rules and memberships, not
+     * counting the dictionary
+     */
+    public int getDataLength() {
+        return this.data.length;
+    }
+
+    @Override
+    public int size() {
+        return this.documentCount;
+    }
+
+    @Override
+    public boolean contains(String document) {
+        return this.recordOf(this.dictionary.idOf(document)) != NONE;
+    }
+
+    /**
+     * @return a view on the compiled rules, {@link AclIndex#EMPTY} if the
+     * document is not contained
+     */
+    @Override
+    public AclRules get(String document) {
+        int record = this.recordOf(this.dictionary.idOf(document));
+        return (record == NONE) ? AclIndex.EMPTY : new Document(record);
+    }
+
+    @Override
+    public boolean hasMember(String group, String webid) {
+        return this.hasMember(this.dictionary.idOf(group), this.dictionary.idOf(webid));
+    }
+
+    /**
+     * Check {@code <group> vcard:hasMember <member>} in the group document.
+     *
+     * @param group the id of the group
+     * @param member the id of the agent
+     * @return isMember
+     */
+    public boolean hasMember(int group, int member) {
+        if (group == NONE || member == NONE) {
+            return false;
+        }
+        return this.hasMemberAt(this.groupRecords[group], group, member);
+    }
+
+    /**
+     * Look up the IRIs of a request once, s.t. it can be checked without
+     * allocating.
+     *
+     * @param acl the URI string of the authoritative {@code .acl}, may be
+     * {@code null} if there is none
+     * @param onResource the resource the rules are looked up for
+     * @param isLookingForInheritedRule
+     * @param forMode the access mode
+     * @param forAgentWebId if {@code null}, only public rules are considered
+     * @return the prepared request
+     */
+    public PreparedRequest prepare(String acl, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId) {
+        IriDictionary dictionary = this.dictionary;
+        return new PreparedRequest(this, dictionary.idOf(acl), dictionary.idOf(onResource), isLookingForInheritedRule, dictionary.idOf(forMode),
+                forAgentWebId != null, dictionary.idOf(forAgentWebId));
+    }
+
+    /**
+     * Check a prepared request without allocating: the rules are considered
+     * in the order of {@link AclRules#findRule}.
+     *
+     * @param request prepared by this instance
+     * @return the URI string of the matching rule or {@code null}
+     */
+    public String check(PreparedRequest request) {
+        if (request.acls != this) {
+            throw new IllegalArgumentException("The request was prepared for other compiled ACLs.");
+        }
+        int rule = request.isAuthenticated
+                ? this.findRule(request.document, request.onResource, request.isLookingForInheritedRule, request.forMode, request.forAgent)
+                : this.findPublicRule(request.document, request.onResource, request.isLookingForInheritedRule, request.forMode);
+        return this.dictionary.stringOf(rule);
+    }
+
+    /**
+     * Look up a rule granting {@code foaf:Agent} access.
+     *
+     * @param document the id of the {@code .acl}
+     * @param onResource the id of the resource
+     * @param isLookingForInheritedRule
+     * @param forMode the id of the mode
+     * @return the id of the rule or {@link IriDictionary#NONE}
+     */
+    public int findPublicRule(int document, int onResource, boolean isLookingForInheritedRule, int forMode) {
+        int record = this.recordOf(document);
+        if (record == NONE) {
+            return NONE;
+        }
+        int rules = this.rules(record, onResource, isLookingForInheritedRule, forMode);
+        int write = this.writeRules(record, onResource, isLookingForInheritedRule, forMode);
+        return this.publicRule(rules, write);
+    }
+
+    /**
+     * Look up a rule granting an authenticated agent access. The rules are
+     * considered in the order of {@link AclRules#findRule}: public,
+     * authenticated, agent, agent group.
+     *
+     * @param document the id of the {@code .acl}
+     * @param onResource the id of the resource
+     * @param isLookingForInheritedRule
+     * @param forMode the id of the mode
+     * @param forAgent the id of the agent, {@link IriDictionary#NONE} if no
+     * document mentions it
+     * @return the id of the rule or {@link IriDictionary#NONE}
+     */
+    public int findRule(int document, int onResource, boolean isLookingForInheritedRule, int forMode, int forAgent) {
+        int record = this.recordOf(document);
+        if (record == NONE) {
+            return NONE;
+        }
+        int rules = this.rules(record, onResource, isLookingForInheritedRule, forMode);
+        int write = this.writeRules(record, onResource, isLookingForInheritedRule, forMode);
+        int rule = this.publicRule(rules, write);
+        if (rule == NONE) {
+            rule = this.authenticatedRule(rules, write);
+        }
+        if (rule == NONE && forAgent != NONE) {
+            rule = this.agentRule(rules, forAgent);
+            if (rule == NONE) {
+                rule = this.agentRule(write, forAgent);
+            }
+            if (rule == NONE) {
+                rule = this.groupRule(rules, forAgent);
+            }
+            if (rule == NONE) {
+                rule = this.groupRule(write, forAgent);
+            }
+        }
+        return rule;
+    }
+
+    private int recordOf(int document) {
+        return (document == NONE) ? NONE : this.records[document];
+    }
+
+    /**
+     * @return the position of the rules, {@link #NONE} if there are none
+     */
+    private int rules(int record, int onResource, boolean isLookingForInheritedRule, int forMode) {
+        int[] data = this.data;
+        int capacity = data[record + 1];
+        if (capacity == 0 || onResource == NONE || forMode == NONE) {
+            return NONE;
+        }
+        int table = data[record];
+        int key = forMode * 2 + (isLookingForInheritedRule ? 1 : 0);
+        int mask = capacity - 1;
+        for (int slot = IriDictionary.mix(31 * onResource + key) & mask;; slot = (slot + 1) & mask) {
+            int position = table + slot * 3;
+            if (data[position] == 0) {
+                return NONE;
+            }
+            if (data[position] == onResource + 1 && data[position + 1] == key) {
+                return data[position + 2];
+            }
+        }
+    }
+
+    /**
+     * @return the position of the acl:Write rules if acl:Append is requested
+     */
+    private int writeRules(int record, int onResource, boolean isLookingForInheritedRule, int forMode) {
+        // if acl:Append is ok, then acl:Write is also acceptable
+        return (forMode != NONE && forMode == this.appendId) ? this.rules(record, onResource, isLookingForInheritedRule, this.writeId) : NONE;
+    }
+
+    private int publicRule(int rules, int write) {
+        if (rules != NONE && this.data[rules] != NONE) {
+            return this.data[rules];
+        }
+        return (write != NONE) ? this.data[write] : NONE;
+    }
+
+    private int authenticatedRule(int rules, int write) {
+        if (rules != NONE && this.data[rules + 1] != NONE) {
+            return this.data[rules + 1];
+        }
+        return (write != NONE) ? this.data[write + 1] : NONE;
+    }
+
+    private int agentRule(int rules, int agent) {
+        if (rules == NONE || agent == NONE) {
+            return NONE;
+        }
+        int[] data = this.data;
+        int agents = rules + 3;
+        int low = 0;
+        int high = data[rules + 2] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int probe = data[agents + mid * 2];
+            if (probe < agent) {
+                low = mid + 1;
+            } else if (probe > agent) {
+                high = mid - 1;
+            } else {
+                return data[agents + mid * 2 + 1];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the position of the group count of the rules
+     */
+    private int groupsOf(int rules) {
+        return rules + 3 + this.data[rules + 2] * 2;
+    }
+
+    private int groupRule(int rules, int agent) {
+        if (rules == NONE) {
+            return NONE;
+        }
+        int[] data = this.data;
+        int groups = this.groupsOf(rules);
+        for (int i = 0; i < data[groups]; i++) {
+            if (this.hasMember(data[groups + 1 + i * 2], agent)) {
+                return data[groups + 2 + i * 2];
+            }
+        }
+        return NONE;
+    }
+
+    private boolean hasMemberAt(int record, int group, int member) {
+        if (record == NONE) {
+            return false;
+        }
+        int[] data = this.data;
+        int memberships = data[record + 2];
+        int low = 0;
+        int high = data[record + 3] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = memberships + mid * 2;
+            int cmp = (data[position] != group) ? Integer.compare(data[position], group) : Integer.compare(data[position + 1], member);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A document as {@link AclRules}, looking up the IRIs of each call in the
+     * dictionary.
+     */
+    private final class Document implements AclRules {
+
+        private final int record;
+
+        Document(int record) {
+            this.record = record;
+        }
+
+        private int rules(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            IriDictionary dictionary = CompactAcls.this.dictionary;
+            return CompactAcls.this.rules(this.record, dictionary.idOf(onResource), isLookingForInheritedRule, dictionary.idOf(forMode));
+        }
+
+        private int writeRules(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            IriDictionary dictionary = CompactAcls.this.dictionary;
+            return CompactAcls.this.writeRules(this.record, dictionary.idOf(onResource), isLookingForInheritedRule, dictionary.idOf(forMode));
+        }
+
+        @Override
+        public String findPublicRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            int rule = CompactAcls.this.publicRule(this.rules(onResource, isLookingForInheritedRule, forMode), this.writeRules(onResource, isLookingForInheritedRule, forMode));
+            return CompactAcls.this.dictionary.stringOf(rule);
+        }
+
+        @Override
+        public String findAuthenticatedRule(String onResource, boolean isLookingForInheritedRule, String forMode) {
+            int rule = CompactAcls.this.authenticatedRule(this.rules(onResource, isLookingForInheritedRule, forMode), this.writeRules(onResource, isLookingForInheritedRule, forMode));
+            return CompactAcls.this.dictionary.stringOf(rule);
+        }
+
+        @Override
+        public String findAgentRule(String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId) {
+            int agent = CompactAcls.this.dictionary.idOf(forAgentWebId);
+            int rule = CompactAcls.this.agentRule(this.rules(onResource, isLookingForInheritedRule, forMode), agent);
+            if (rule == NONE) {
+                rule = CompactAcls.this.agentRule(this.writeRules(onResource, isLookingForInheritedRule, forMode), agent);
+            }
+            return CompactAcls.this.dictionary.stringOf(rule);
+        }
+
+        @Override
+        public String findGroupRule(String onResource, boolean isLookingForInheritedRule, String forMode, Predicate<String> isMemberOf) {
+            int[] data = CompactAcls.this.data;
+            IriDictionary dictionary = CompactAcls.this.dictionary;
+            for (int rules : new int[]{this.rules(onResource, isLookingForInheritedRule, forMode), this.writeRules(onResource, isLookingForInheritedRule, forMode)}) {
+                if (rules == NONE) {
+                    continue;
+                }
+                int groups = CompactAcls.this.groupsOf(rules);
+                for (int i = 0; i < data[groups]; i++) {
+                    if (isMemberOf.test(dictionary.stringOf(data[groups + 1 + i * 2]))) {
+                        return dictionary.stringOf(data[groups + 2 + i * 2]);
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasMember(String group, String webid) {
+            int groupId = CompactAcls.this.dictionary.idOf(group);
+            int memberId = CompactAcls.this.dictionary.idOf(webid);
+            return groupId != NONE && memberId != NONE && CompactAcls.this.hasMemberAt(this.record, groupId, memberId);
+        }
+    }
+
+    private static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return a power of two with a load factor of at most one half
+     */
+    private static int capacityFor(int size) {
+        return (size == 0) ? 0 : Integer.highestOneBit(Math.max(1, size * 2 - 1)) << 1;
+    }
+
+    /**
+     * Lays out the documents in a growing array.
+     */
+    private static final class Writer {
+
+        private final IriDictionary dictionary = new IriDictionary();
+        private int[] data = new int[1 << 10];
+        private int length = 0;
+        // (document id, record position) pairs
+        private int[] documents = new int[16];
+        private int documentCount = 0;
+
+        Writer() {
+            // the ids of the modes acl:Append implies
+            this.dictionary.intern(AclIndex.APPEND);
+            this.dictionary.intern(AclIndex.WRITE);
+        }
+
+        private void put(int value) {
+            if (this.length == this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.length * 2);
+            }
+            this.data[this.length++] = value;
+        }
+
+        /**
+         * @return the position of the zeroed ints
+         */
+        private int reserve(int ints) {
+            if (this.length + ints > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.length + ints));
+            }
+            int position = this.length;
+            this.length += ints;
+            return position;
+        }
+
+        void add(String document, AclIndex index) {
+            int id = this.dictionary.intern(document);
+            // (target id, mode id * 2 + inherited) -> rules position
+            List<int[]> entries = new ArrayList<>();
+            this.addRules(index.accessTo, false, entries);
+            this.addRules(index.inherited, true, entries);
+            int ruleTableCapacity = capacityFor(entries.size());
+            int ruleTable = this.reserve(ruleTableCapacity * 3);
+            for (int[] entry : entries) {
+                int slot = IriDictionary.mix(31 * entry[0] + entry[1]) & (ruleTableCapacity - 1);
+                while (this.data[ruleTable + slot * 3] != 0) {
+                    slot = (slot + 1) & (ruleTableCapacity - 1);
+                }
+                int position = ruleTable + slot * 3;
+                this.data[position] = entry[0] + 1;
+                this.data[position + 1] = entry[1];
+                this.data[position + 2] = entry[2];
+            }
+            int count = 0;
+            for (Set<String> members : index.members.values()) {
+                count += members.size();
+            }
+            long[] memberships = new long[count];
+            int i = 0;
+            for (Map.Entry<String, Set<String>> group : index.members.entrySet()) {
+                int groupId = this.dictionary.intern(group.getKey());
+                for (String member : group.getValue()) {
+                    memberships[i++] = pair(groupId, this.dictionary.intern(member));
+                }
+            }
+            Arrays.sort(memberships);
+            int membersPosition = this.length;
+            for (long membership : memberships) {
+                this.put((int) (membership >>> 32));
+                this.put((int) membership);
+            }
+            int record = this.length;
+            this.put(ruleTable);
+            this.put(ruleTableCapacity);
+            this.put(membersPosition);
+            this.put(memberships.length);
+            if (this.documentCount * 2 == this.documents.length) {
+                this.documents = Arrays.copyOf(this.documents, this.documents.length * 2);
+            }
+            this.documents[this.documentCount * 2] = id;
+            this.documents[this.documentCount * 2 + 1] = record;
+            this.documentCount++;
+        }
+
+        private void addRules(Map<String, Map<String, AclIndex.Rules>> byTarget, boolean isInherited, List<int[]> entries) {
+            for (Map.Entry<String, Map<String, AclIndex.Rules>> target : byTarget.entrySet()) {
+                int targetId = this.dictionary.intern(target.getKey());
+                for (Map.Entry<String, AclIndex.Rules> mode : target.getValue().entrySet()) {
+                    int position = this.addRules(mode.getValue());
+                    entries.add(new int[]{targetId, this.dictionary.intern(mode.getKey()) * 2 + (isInherited ? 1 : 0), position});
+                }
+            }
+        }
+
+        private int addRules(AclIndex.Rules rules) {
+            int position = this.length;
+            this.put((rules.publicRule == null) ? NONE : this.dictionary.intern(rules.publicRule));
+            this.put((rules.authenticatedRule == null) ? NONE : this.dictionary.intern(rules.authenticatedRule));
+            long[] agents = new long[rules.agentRules.size()];
+            int i = 0;
+            for (Map.Entry<String, String> agent : rules.agentRules.entrySet()) {
+                agents[i++] = pair(this.dictionary.intern(agent.getKey()), this.dictionary.intern(agent.getValue()));
+            }
+            Arrays.sort(agents);
+            this.put(agents.length);
+            for (long agent : agents) {
+                this.put((int) (agent >>> 32));
+                this.put((int) agent);
+            }
+            this.put(rules.groups.size());
+            for (int g = 0; g < rules.groups.size(); g++) {
+                this.put(this.dictionary.intern(rules.groups.get(g)));
+                this.put(this.dictionary.intern(rules.groupRules.get(g)));
+            }
+            return position;
+        }
+
+        CompactAcls build() {
+            int[] records = new int[this.dictionary.size()];
+            Arrays.fill(records, NONE);
+            for (int d = 0; d < this.documentCount; d++) {
+                records[this.documents[d * 2]] = this.documents[d * 2 + 1];
+            }
+            int[] groupRecords = new int[this.dictionary.size()];
+            for (int id = 0; id < groupRecords.length; id++) {
+                int document = this.dictionary.idOf(GroupMembershipIndex.documentOf(this.dictionary.stringOf(id)));
+                groupRecords[id] = (document == NONE) ? NONE : records[document];
+            }
+            return new CompactAcls(this.dictionary, Arrays.copyOf(this.data, this.length), records, groupRecords, this.documentCount);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package edu.kit.aifb.solid.wac.index;
+
+/**
+ * The compiled rules and agent group memberships of many documents, looked up
+ * without loading any RDF, e.g. a memory-mapped {@link AclSnapshot} or the
+ * dictionary-encoded {@link CompactAcls} on the heap.
+ */
+public interface CompiledAcls {
+
+    /**
+     * @return the number of documents
+     */
+    int size();
+
+    /**
+     * @param document the URI string of the document
+     * @return if the document is contained (even without rules)
+     */
+    boolean contains(String document);
+
+    /**
+     * Get the rules of a document.
+     *
+     * @param document the URI string of the document, may be {@code null}
+     * @return the rules, {@link AclIndex#EMPTY} if the document is not
+     * contained
+     */
+    AclRules get(String document);
+
+    /**
+     * Check {@code <group> vcard:hasMember <webid>} in the group document.
+     *
+     * @param group the URI string of the group
+     * @param webid the agent
+     * @return isMember
+     */
+    boolean hasMember(String group, String webid);
+}
@@ -0,0 +1,262 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.WacMapping;
+
+/**
+ * A trie of containers (by path segment) that remembers which container has
+ * its own {@code .acl}, s.t. finding the {@code .acl} a resource inherits its
+ * rules from is a single walk down the path of the resource.
+ *
+ * Containers are looked up in the resource map once when first walked
+ * through. When an {@code .acl} is created or deleted, call
+ * {@link #aclChanged(String)}: a lookup that was probing the container
+ * concurrently does not keep its outdated result.
+ */
+public class ContainerTrie {
+
+    private final Map<String, Dataset> resourceMap;
+    private final WacMapping resourceAclMap;
+    private final AtomicInteger epoch = new AtomicInteger();
+    private final Node top = new Node("", 0, 0);
+
+    /**
+     *
+     * @param resourceMap the mapping of URI string to RDF datasets
+     * @param resourceAclMap the mapping of URI string of a resource to its
+     * corresponding .acl
+     */
+    public ContainerTrie(Map<String, Dataset> resourceMap, WacMapping resourceAclMap) {
+        this.resourceMap = resourceMap;
+        this.resourceAclMap = resourceAclMap;
+    }
+
+    /**
+     * A container in the trie.
+     */
+    public static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String uri;
+        private final int segmentStart;
+        private final int segmentHash;
+        private volatile Node[] children = NO_CHILDREN;
+        private int childCount = 0; // guarded by this
+        private final AtomicReference<Probe> probe = new AtomicReference<>();
+
+        private Node(String uri, int segmentStart, int segmentHash) {
+            this.uri = uri;
+            this.segmentStart = segmentStart;
+            this.segmentHash = segmentHash;
+        }
+
+        /**
+         * @return the URI string of the container
+         */
+        public String getUri() {
+            return this.uri;
+        }
+
+        private boolean isSegment(String res, int start, int end, int hash) {
+            int length = end - start;
+            return this.segmentHash == hash
+                    && this.uri.length() - this.segmentStart == length
+                    && res.regionMatches(start, this.uri, this.segmentStart, length);
+        }
+
+        private Node child(String res, int start, int end, int hash) {
+            Node[] table = this.children;
+            if (table.length == 0) {
+                return null;
+            }
+            int mask = table.length - 1;
+            for (int i = hash & mask;; i = (i + 1) & mask) {
+                Node child = table[i];
+                if (child == null || child.isSegment(res, start, end, hash)) {
+                    return child;
+                }
+            }
+        }
+
+        private synchronized Node addChild(String res, int start, int end, int hash) {
+            Node child = this.child(res, start, end, hash);
+            if (child != null) {
+                return child;
+            }
+            child = new Node(res.substring(0, end), start, hash);
+            Node[] table = this.children;
+            if ((this.childCount + 1) * 2 > table.length) {
+                Node[] grown = new Node[Math.max(4, table.length * 2)];
+                for (Node existing : table) {
+                    if (existing != null) {
+                        insert(grown, existing);
+                    }
+                }
+                insert(grown, child);
+                this.children = grown;
+            } else {
+                insert(table, child);
+            }
+            this.childCount++;
+            return child;
+        }
+
+        private static void insert(Node[] table, Node child) {
+            int mask = table.length - 1;
+            int i = child.segmentHash & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = child;
+        }
+    }
+
+    /**
+     * The result of looking up the {@code .acl} of a container.
+     */
+    private static final class Probe {
+
+        final int epoch;
+        final String aclUri;
+        // false for the marker of a changed .acl
+        final boolean isProbed;
+
+        Probe(int epoch, String aclUri, boolean isProbed) {
+            this.epoch = epoch;
+            this.aclUri = aclUri;
+            this.isProbed = isProbed;
+        }
+    }
+
+    private static int hash(String res, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + res.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private String aclUriOf(Node node) {
+        int current = this.epoch.get();
+        Probe probe = node.probe.get();
+        if (probe == null || !probe.isProbed || probe.epoch != current) {
+            String aclUri = this.resourceAclMap.getAcl(node.uri);
+            Probe probed = new Probe(current, (aclUri != null && this.resourceMap.containsKey(aclUri)) ? aclUri : null, true);
+            // not installed if the .acl changed while probing, s.t. the next lookup probes again
+            node.probe.compareAndSet(probe, probed);
+            return probed.aclUri;
+        }
+        return probe.aclUri;
+    }
+
+    /**
+     * Find the closest container above the resource that has its own
+     * {@code .acl}, i.e. the container the resource inherits its rules from.
+     * The resource itself is not considered.
+     *
+     * @param resource URI string
+     * @return the container or {@code null} if no container above the
+     * resource has an {@code .acl}
+     */
+    public Node findInheritingContainer(String resource) {
+        return this.walk(resource, false);
+    }
+
+    /**
+     * Walk down to a resource once ahead of time, e.g. at startup, s.t. the
+     * containers on the way, and the resource itself if it is a container,
+     * are in the trie and their {@code .acl} is looked up.
+     *
+     * @param resource URI string
+     */
+    public void prime(String resource) {
+        this.walk(resource, true);
+    }
+
+    private Node walk(String resource, boolean isIncludingResource) {
+        int scheme = resource.indexOf("://");
+        if (scheme < 0) {
+            return null;
+        }
+        int next = resource.indexOf('/', scheme + 3);
+        if (next < 0) {
+            return null;
+        }
+        Node found = null;
+        Node current = this.top;
+        int start = 0;
+        int end = next + 1;
+        // only containers above the resource, i.e. never the full resource (unless included)
+        while (end < resource.length() || (isIncludingResource && end == resource.length())) {
+            int hash = hash(resource, start, end);
+            Node child = current.child(resource, start, end, hash);
+            if (child == null) {
+                child = current.addChild(resource, start, end, hash);
+            }
+            if (this.aclUriOf(child) != null) {
+                found = child;
+            }
+            current = child;
+            start = end;
+            next = resource.indexOf('/', start);
+            if (next < 0) {
+                break;
+            }
+            end = next + 1;
+        }
+        return found;
+    }
+
+    /**
+     * @param container a container returned by
+     * {@link #findInheritingContainer(String)}
+     * @return the URI string of the {@code .acl} of the container
+     */
+    public String getAcl(Node container) {
+        return this.aclUriOf(container);
+    }
+
+    /**
+     * Look up the container of an {@code .acl} again, e.g. after the
+     * {@code .acl} was created or deleted.
+     *
+     * @param aclUri the URI string of the {@code .acl}
+     */
+    public void aclChanged(String aclUri) {
+        String resource = this.resourceAclMap.getResource(aclUri);
+        if (resource == null || !resource.endsWith("/")) {
+            return; // not a container
+        }
+        Node current = this.top;
+        int scheme = resource.indexOf("://");
+        int next = (scheme < 0) ? -1 : resource.indexOf('/', scheme + 3);
+        int start = 0;
+        if (next < 0) {
+            return;
+        }
+        // the container is added if it is not in the trie yet, as a walk may be probing it right now
+        while (next >= 0) {
+            int end = next + 1;
+            int hash = hash(resource, start, end);
+            Node child = current.child(resource, start, end, hash);
+            current = (child != null) ? child : current.addChild(resource, start, end, hash);
+            start = end;
+            next = resource.indexOf('/', start);
+        }
+        // a fresh marker, s.t. a probe that began before is not installed
+        current.probe.set(new Probe(0, null, false));
+    }
+
+    /**
+     * Look up the {@code .acl} of all containers again.
+     */
+    public void invalidateAll() {
+        this.epoch.incrementAndGet();
+    }
+}
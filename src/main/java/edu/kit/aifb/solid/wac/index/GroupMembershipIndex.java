@@ -0,0 +1,207 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+
+/**
+ * A reverse index from the webid of an agent to the URIs of the agent groups
+ * it is a member of ({@code ?group vcard:hasMember <webid>}), built from the
+ * group documents in the resource map.
+ *
+ * Group documents are indexed when a group of the document is first looked
+ * up (or all at once, see {@link #indexAll()}). When a group document
+ * changes, call {@link #apply(AclDelta)} with the changes or
+ * {@link #documentChanged(String)}.
+ */
+public class GroupMembershipIndex {
+
+    private final Map<String, Dataset> resourceMap;
+    // webid -> groups, the sets are never modified once published
+    private final ConcurrentHashMap<String, Set<String>> groupsByMember = new ConcurrentHashMap<>();
+    // document -> (webid -> groups), what a document contributed to the above
+    private final ConcurrentHashMap<String, Map<String, Set<String>>> documents = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param resourceMap the mapping of URI string to RDF datasets, containing
+     * the group documents
+     */
+    public GroupMembershipIndex(Map<String, Dataset> resourceMap) {
+        this.resourceMap = resourceMap;
+    }
+
+    /**
+     * The URI string of the document describing a group, i.e. the group URI
+     * without fragment.
+     *
+     * @param group the URI string of the group
+     * @return the URI string of the document
+     */
+    public static String documentOf(String group) {
+        int hash = group.indexOf('#');
+        return (hash < 0) ? group : group.substring(0, hash);
+    }
+
+    /**
+     * Check {@code <group> vcard:hasMember <webid>}.
+     *
+     * @param group the URI string of the group
+     * @param webid the agent
+     * @return isMember
+     */
+    public boolean isMember(String group, String webid) {
+        this.ensureIndexed(documentOf(group));
+        return this.getGroups(webid).contains(group);
+    }
+
+    /**
+     * Get the groups of an agent in the group documents indexed so far.
+     *
+     * @param webid the agent
+     * @return the URI strings of the groups, never {@code null}
+     */
+    public Set<String> getGroups(String webid) {
+        Set<String> groups = this.groupsByMember.get(webid);
+        return (groups == null) ? Collections.emptySet() : groups;
+    }
+
+    /**
+     * Index every document of the resource map that states memberships.
+     */
+    public void indexAll() {
+        for (String document : this.resourceMap.keySet()) {
+            this.ensureIndexed(document);
+        }
+    }
+
+    /**
+     * Index a group document if it is not yet indexed.
+     *
+     * @param document the URI string of the group document
+     */
+    public void ensureIndexed(String document) {
+        if (!this.documents.containsKey(document)) {
+            this.index(document);
+        }
+    }
+
+    /**
+     * Drop what is known from a group document, e.g. after it was modified or
+     * deleted. It is indexed again on the next lookup.
+     *
+     * @param document the URI string of the group document
+     */
+    public synchronized void documentChanged(String document) {
+        Map<String, Set<String>> contribution = this.documents.remove(document);
+        if (contribution == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<String>> entry : contribution.entrySet()) {
+            this.groupsByMember.computeIfPresent(entry.getKey(), (webid, groups) -> {
+                Set<String> remaining = new HashSet<>(groups);
+                remaining.removeAll(entry.getValue());
+                return remaining.isEmpty() ? null : Collections.unmodifiableSet(remaining);
+            });
+        }
+    }
+
+    /**
+     * Apply the changed {@code vcard:hasMember} statements of a group document,
+     * instead of indexing it again. If the document is not indexed yet,
+     * nothing happens.
+     *
+     * @param delta the changes of the group document
+     */
+    public synchronized void apply(AclDelta delta) {
+        String document = delta.getDocument();
+        Map<String, Set<String>> contribution = this.documents.get(document);
+        if (contribution == null) {
+            return;
+        }
+        for (Triple triple : delta.getDeletions()) {
+            if (this.isMembership(document, triple)) {
+                String group = triple.getSubject().getURI();
+                String webid = triple.getObject().getURI();
+                Set<String> groups = contribution.get(webid);
+                if (groups != null && groups.remove(group) && groups.isEmpty()) {
+                    contribution.remove(webid);
+                }
+                this.groupsByMember.computeIfPresent(webid, (w, published) -> {
+                    Set<String> remaining = new HashSet<>(published);
+                    remaining.remove(group);
+                    return remaining.isEmpty() ? null : Collections.unmodifiableSet(remaining);
+                });
+            }
+        }
+        for (Triple triple : delta.getInsertions()) {
+            if (this.isMembership(document, triple)) {
+                String group = triple.getSubject().getURI();
+                String webid = triple.getObject().getURI();
+                contribution.computeIfAbsent(webid, w -> new HashSet<>()).add(group);
+                this.groupsByMember.compute(webid, (w, published) -> {
+                    Set<String> merged = (published == null) ? new HashSet<>() : new HashSet<>(published);
+                    merged.add(group);
+                    return Collections.unmodifiableSet(merged);
+                });
+            }
+        }
+    }
+
+    /**
+     * Only the groups described by the document count, see
+     * {@link #members(String, Dataset)}.
+     */
+    private boolean isMembership(String document, Triple triple) {
+        return triple.getSubject().isURI() && triple.getObject().isURI()
+                && triple.getPredicate().isURI() && AclIndex.HAS_MEMBER.equals(triple.getPredicate().getURI())
+                && document.equals(documentOf(triple.getSubject().getURI()));
+    }
+
+    private synchronized void index(String document) {
+        if (this.documents.containsKey(document)) {
+            return;
+        }
+        Map<String, Set<String>> contribution = members(document, this.resourceMap.get(document));
+        for (Map.Entry<String, Set<String>> entry : contribution.entrySet()) {
+            this.groupsByMember.compute(entry.getKey(), (webid, groups) -> {
+                Set<String> merged = (groups == null) ? new HashSet<>() : new HashSet<>(groups);
+                merged.addAll(entry.getValue());
+                return Collections.unmodifiableSet(merged);
+            });
+        }
+        this.documents.put(document, contribution);
+    }
+
+    /**
+     * Only the groups described by the document, as they are looked up in the
+     * dataset of the document.
+     */
+    private static Map<String, Set<String>> members(String document, Dataset dataset) {
+        Map<String, Set<String>> contribution = new HashMap<>();
+        if (dataset == null) {
+            return contribution;
+        }
+        Model model = dataset.getDefaultModel();
+        StmtIterator it = model.listStatements(null, ResourceFactory.createProperty(AclIndex.HAS_MEMBER), (RDFNode) null);
+        while (it.hasNext()) {
+            Statement stmt = it.next();
+            if (stmt.getSubject().isURIResource() && stmt.getObject().isURIResource()
+                    && document.equals(documentOf(stmt.getSubject().getURI()))) {
+                contribution.computeIfAbsent(stmt.getObject().asResource().getURI(), m -> new HashSet<>()).add(stmt.getSubject().getURI());
+            }
+        }
+        return contribution;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.Arrays;
+
+/**
+ * Interns IRIs into dense {@code int} ids, {@code 0} to {@code size() - 1}:
+ * each distinct IRI is stored once, and structures refer to it by id, s.t.
+ * comparing IRIs is comparing {@code int}s. The ids are kept in an
+ * open-addressing hash table of primitive {@code int}s, nothing is boxed.
+ *
+ * Interning is not thread-safe. Once all IRIs are interned (and the dictionary
+ * is published safely), lookups are.
+ */
+public final class IriDictionary {
+
+    /**
+     * The id of an IRI that is not in the dictionary.
+     */
+    public static final int NONE = -1;
+
+    private String[] strings = new String[16];
+    // id + 1, 0 marks an empty slot
+    private int[] table = new int[32];
+    private int size = 0;
+
+    /**
+     * @return the number of IRIs
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the id of an IRI, adding it if it is not in the dictionary yet.
+     *
+     * @param iri
+     * @return its id
+     */
+    public int intern(String iri) {
+        if (iri == null) {
+            throw new IllegalArgumentException("The IRI must not be null.");
+        }
+        int mask = this.table.length - 1;
+        int slot = mix(iri.hashCode()) & mask;
+        for (; this.table[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.strings[this.table[slot] - 1].equals(iri)) {
+                return this.table[slot] - 1;
+            }
+        }
+        int id = this.size++;
+        if (id == this.strings.length) {
+            this.strings = Arrays.copyOf(this.strings, id * 2);
+        }
+        this.strings[id] = iri;
+        this.table[slot] = id + 1;
+        // load factor of at most one half
+        if (this.size * 2 > this.table.length) {
+            this.rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @param iri may be {@code null}
+     * @return its id, {@link #NONE} if it is not in the dictionary
+     */
+    public int idOf(String iri) {
+        if (iri == null) {
+            return NONE;
+        }
+        int mask = this.table.length - 1;
+        for (int slot = mix(iri.hashCode()) & mask; this.table[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.strings[this.table[slot] - 1].equals(iri)) {
+                return this.table[slot] - 1;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param id
+     * @return the IRI, {@code null} for {@link #NONE}
+     */
+    public String stringOf(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        if (id < 0 || id >= this.size) {
+            throw new IllegalArgumentException("Unknown IRI id: " + id);
+        }
+        return this.strings[id];
+    }
+
+    private void rehash() {
+        int[] table = new int[this.table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.strings[id].hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        this.table = table;
+    }
+
+    static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,39 @@
+package edu.kit.aifb.solid.wac.index;
+
+/**
+ * A request whose IRIs are looked up in the dictionary of {@link CompactAcls}
+ * once: the authoritative {@code .acl}, the resource its rules are looked up
+ * for, the mode and the agent as ids. Checking a prepared request compares
+ * {@code int}s only and does not allocate, so it can be kept and checked
+ * again, e.g. for each request of a connection to the same resource.
+ *
+ * Only valid for the {@link CompactAcls} that prepared it. Immutable.
+ */
+public final class PreparedRequest {
+
+    final CompactAcls acls;
+    final int document;
+    final int onResource;
+    final boolean isLookingForInheritedRule;
+    final int forMode;
+    final boolean isAuthenticated;
+    final int forAgent;
+
+    PreparedRequest(CompactAcls acls, int document, int onResource, boolean isLookingForInheritedRule, int forMode, boolean isAuthenticated, int forAgent) {
+        this.acls = acls;
+        this.document = document;
+        this.onResource = onResource;
+        this.isLookingForInheritedRule = isLookingForInheritedRule;
+        this.forMode = forMode;
+        this.isAuthenticated = isAuthenticated;
+        this.forAgent = forAgent;
+    }
+
+    @Override
+    public String toString() {
+        IriDictionary dictionary = this.acls.getDictionary();
+        return String.format("<%s> %s <%s> in <%s> by %s", dictionary.stringOf(this.forMode), this.isLookingForInheritedRule ? "default" : "accessTo",
+                dictionary.stringOf(this.onResource), dictionary.stringOf(this.document),
+                this.isAuthenticated ? "<" + dictionary.stringOf(this.forAgent) + ">" : "anyone");
+    }
+}
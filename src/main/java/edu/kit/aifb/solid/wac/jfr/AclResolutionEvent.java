@@ -0,0 +1,43 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Finding the authoritative {@code .acl} of a resource.
+ */
+@Name("edu.kit.aifb.solid.wac.AclResolution")
+@Label("WAC ACL Resolution")
+@Category({"Solid", "WAC"})
+@Description("Finding the authoritative .acl of a resource")
+public final class AclResolutionEvent extends jdk.jfr.Event {
+
+    @Label("Resource")
+    String resource;
+
+    @Label("ACL")
+    String acl;
+
+    @Label("Inheritance Depth")
+    @Description("Number of containers walked up, 0 if the resource has its own .acl")
+    int inheritanceDepth;
+
+    /**
+     * Commit the event if it is recorded.
+     *
+     * @param resource the target of the request
+     * @param acl the authoritative {@code .acl}, {@code null} if none was
+     * found
+     * @param inheritanceDepth
+     */
+    public void record(String resource, String acl, int inheritanceDepth) {
+        if (this.shouldCommit()) {
+            this.resource = resource;
+            this.acl = acl;
+            this.inheritanceDepth = inheritanceDepth;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An access control decision for a request.
+ */
+@Name("edu.kit.aifb.solid.wac.Decision")
+@Label("WAC Decision")
+@Category({"Solid", "WAC"})
+@Description("Access control decision for a request")
+public final class DecisionEvent extends jdk.jfr.Event {
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Allowed")
+    boolean allowed;
+
+    @Label("Rule")
+    String rule;
+
+    /**
+     * Commit the event if it is recorded.
+     *
+     * @param resource the target of the request
+     * @param mode the access mode URI string
+     * @param rule the matching rule, {@code null} if access is denied
+     */
+    public void record(String resource, String mode, String rule) {
+        if (this.shouldCommit()) {
+            this.resource = resource;
+            this.mode = mode;
+            this.allowed = rule != null;
+            this.rule = rule;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Checking if an agent is member of an agent group.
+ */
+@Name("edu.kit.aifb.solid.wac.GroupLookup")
+@Label("WAC Group Lookup")
+@Category({"Solid", "WAC"})
+@Description("Checking the membership of an agent in an agent group")
+public final class GroupLookupEvent extends jdk.jfr.Event {
+
+    @Label("Group")
+    String group;
+
+    @Label("Member")
+    boolean member;
+
+    /**
+     * Commit the event if it is recorded.
+     *
+     * @param group the URI string of the group
+     * @param isMember
+     */
+    public void record(String group, boolean isMember) {
+        if (this.shouldCommit()) {
+            this.group = group;
+            this.member = isMember;
+            this.commit();
+        }
+    }
+}
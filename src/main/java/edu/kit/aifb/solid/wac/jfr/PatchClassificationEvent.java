@@ -0,0 +1,43 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Classifying a PATCH body as deleting or not.
+ */
+@Name("edu.kit.aifb.solid.wac.PatchClassification")
+@Label("WAC PATCH Classification")
+@Category({"Solid", "WAC"})
+@Description("Classifying an N3 patch as deleting or only appending")
+public final class PatchClassificationEvent extends jdk.jfr.Event {
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Body Length")
+    @DataAmount(DataAmount.BYTES)
+    long bodyLength;
+
+    @Label("Non Deleting")
+    boolean nonDeleting;
+
+    /**
+     * Commit the event if it is recorded.
+     *
+     * @param resource the target of the request
+     * @param bodyLength in characters
+     * @param isNonDeleting
+     */
+    public void record(String resource, long bodyLength, boolean isNonDeleting) {
+        if (this.shouldCommit()) {
+            this.resource = resource;
+            this.bodyLength = bodyLength;
+            this.nonDeleting = isNonDeleting;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Execution of a single query.
+ */
+@Name("edu.kit.aifb.solid.wac.QueryExecution")
+@Label("WAC Query Execution")
+@Category({"Solid", "WAC"})
+@Description("Execution of a query for matching access control rules")
+public final class QueryExecutionEvent extends jdk.jfr.Event {
+
+    @Label("Query")
+    String query;
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Matching")
+    boolean matching;
+
+    /**
+     * Commit the event if it is recorded.
+     *
+     * @param query the kind of query
+     * @param resource the resource the rules are looked up for
+     * @param mode the access mode URI string
+     * @param isMatching if a rule was found
+     */
+    public void record(String query, String resource, String mode, boolean isMatching) {
+        if (this.shouldCommit()) {
+            this.query = query;
+            this.resource = resource;
+            this.mode = mode;
+            this.matching = isMatching;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package edu.kit.aifb.solid.wac.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values with logarithmic buckets,
+ * each split into linear sub-buckets (like HDR histograms): values are
+ * recorded with a relative error of at most {@code 1 / SUB_BUCKETS}, at a
+ * fixed memory footprint.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS are counted exactly, then one bucket per power of two
+    private static final int BUCKETS = Long.SIZE - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param value negative values are recorded as {@code 0}
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        this.counts.incrementAndGet(indexOf(v));
+        this.count.increment();
+        this.sum.add(v);
+        this.max.accumulate(v);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // >= 1
+        int subBucket = (int) (value >>> (bucket - 1)) & (SUB_BUCKETS - 1);
+        return bucket * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that is recorded in the same sub-bucket
+     */
+    private static long highestValueAt(int index) {
+        int bucket = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (bucket == 0) {
+            return subBucket;
+        }
+        long lowest = ((long) (SUB_BUCKETS | subBucket)) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, {@code 0} if none
+     */
+    public double getMean() {
+        long n = this.count.sum();
+        return (n == 0) ? 0 : (double) this.sum.sum() / n;
+    }
+
+    /**
+     * @return the largest recorded value, {@code 0} if none
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @param percentile between {@code 0} and {@code 100}
+     * @return an upper bound of the value at the percentile (at most the
+     * maximum), {@code 0} if none
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = 0;
+        long[] snapshot = new long[this.counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    /**
+     * Forget all recorded values. Values recorded concurrently may be lost
+     * partially.
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d", this.getCount(), this.getMean(), this.getValueAtPercentile(50), this.getValueAtPercentile(99), this.getMax());
+    }
+}
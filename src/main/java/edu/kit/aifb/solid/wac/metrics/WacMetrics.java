@@ -0,0 +1,159 @@
+package edu.kit.aifb.solid.wac.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.kit.aifb.solid.wac.query.WacQueryType;
+
+/**
+ * Collects the timings of the stages in histograms (in nanoseconds) and
+ * counts outcomes. Cheap enough to stay enabled: recording is a few atomic
+ * increments without allocation or locking.
+ */
+public final class WacMetrics implements WacMetricsListener {
+
+    private final Histogram classification = new Histogram();
+    private final Histogram resolution = new Histogram();
+    private final Histogram inheritanceDepth = new Histogram();
+    private final Histogram[] queries = new Histogram[WacQueryType.values().length];
+    private final Histogram singlePassQuery = new Histogram();
+    private final Histogram decision = new Histogram();
+    private final Histogram groupDocuments = new Histogram();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+
+    public WacMetrics() {
+        for (int i = 0; i < this.queries.length; i++) {
+            this.queries[i] = new Histogram();
+        }
+    }
+
+    @Override
+    public void requestClassified(String method, boolean isNonDeleting, long durationNanos) {
+        this.classification.record(durationNanos);
+    }
+
+    @Override
+    public void aclResolved(String authoritativeACLUri, int inheritanceDepth, long durationNanos) {
+        this.resolution.record(durationNanos);
+        this.inheritanceDepth.record(inheritanceDepth);
+        if (authoritativeACLUri == null) {
+            this.unresolved.increment();
+        }
+    }
+
+    @Override
+    public void queryExecuted(WacQueryType type, boolean isMatching, long durationNanos) {
+        Histogram histogram = (type == null) ? this.singlePassQuery : this.queries[type.ordinal()];
+        histogram.record(durationNanos);
+    }
+
+    @Override
+    public void decided(boolean isAllowed, int groupDocuments, long durationNanos) {
+        this.decision.record(durationNanos);
+        this.groupDocuments.record(groupDocuments);
+        if (isAllowed) {
+            this.allowed.increment();
+        } else {
+            this.denied.increment();
+        }
+    }
+
+    /**
+     * @return durations of classifying requests as deleting or not
+     */
+    public Histogram getClassification() {
+        return this.classification;
+    }
+
+    /**
+     * @return durations of finding the authoritative {@code .acl}
+     */
+    public Histogram getResolution() {
+        return this.resolution;
+    }
+
+    /**
+     * @return number of containers walked up to the authoritative
+     * {@code .acl}
+     */
+    public Histogram getInheritanceDepth() {
+        return this.inheritanceDepth;
+    }
+
+    /**
+     * @param type the kind of query or {@code null} for a single pass
+     * @return durations of executing the queries
+     */
+    public Histogram getQuery(WacQueryType type) {
+        return (type == null) ? this.singlePassQuery : this.queries[type.ordinal()];
+    }
+
+    /**
+     * @return durations of whole decisions
+     */
+    public Histogram getDecision() {
+        return this.decision;
+    }
+
+    /**
+     * @return number of agent group documents consulted per decision
+     */
+    public Histogram getGroupDocuments() {
+        return this.groupDocuments;
+    }
+
+    /**
+     * @return number of requests with a matching rule
+     */
+    public long getAllowedCount() {
+        return this.allowed.sum();
+    }
+
+    /**
+     * @return number of requests without a matching rule
+     */
+    public long getDeniedCount() {
+        return this.denied.sum();
+    }
+
+    /**
+     * @return number of requests for which no {@code .acl} was found at all
+     */
+    public long getUnresolvedCount() {
+        return this.unresolved.sum();
+    }
+
+    /**
+     * Forget all recorded values.
+     */
+    public void reset() {
+        this.classification.reset();
+        this.resolution.reset();
+        this.inheritanceDepth.reset();
+        for (Histogram query : this.queries) {
+            query.reset();
+        }
+        this.singlePassQuery.reset();
+        this.decision.reset();
+        this.groupDocuments.reset();
+        this.allowed.reset();
+        this.denied.reset();
+        this.unresolved.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("decision: ").append(this.decision).append(" allowed=").append(this.getAllowedCount()).append(" denied=").append(this.getDeniedCount()).append('\n');
+        sb.append("classification: ").append(this.classification).append('\n');
+        sb.append("resolution: ").append(this.resolution).append(" unresolved=").append(this.getUnresolvedCount()).append('\n');
+        sb.append("inheritance depth: ").append(this.inheritanceDepth).append('\n');
+        for (WacQueryType type : WacQueryType.values()) {
+            sb.append("query ").append(type).append(": ").append(this.queries[type.ordinal()]).append('\n');
+        }
+        sb.append("query single pass: ").append(this.singlePassQuery).append('\n');
+        sb.append("group documents: ").append(this.groupDocuments);
+        return sb.toString();
+    }
+}
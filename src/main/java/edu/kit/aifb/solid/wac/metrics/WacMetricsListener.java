@@ -0,0 +1,63 @@
+package edu.kit.aifb.solid.wac.metrics;
+
+import edu.kit.aifb.solid.wac.query.WacQueryType;
+
+/**
+ * Notified about the stages of checking a request, e.g. to find out whether
+ * latency comes from the {@code .acl} resolution, the PATCH classification or
+ * a specific query. Called on the thread that did the work, so implementations
+ * must be thread-safe and should be cheap.
+ *
+ * All methods do nothing by default.
+ */
+public interface WacMetricsListener {
+
+    /**
+     * Does nothing.
+     */
+    WacMetricsListener NOOP = new WacMetricsListener() {
+    };
+
+    /**
+     * The request was classified as deleting or not (relevant for PATCH).
+     *
+     * @param method the HTTP method
+     * @param isNonDeleting
+     * @param durationNanos
+     */
+    default void requestClassified(String method, boolean isNonDeleting, long durationNanos) {
+    }
+
+    /**
+     * The authoritative {@code .acl} was found.
+     *
+     * @param authoritativeACLUri {@code null} if no {@code .acl} was found
+     * @param inheritanceDepth the number of containers walked up, {@code 0} if
+     * the resource has its own {@code .acl}
+     * @param durationNanos
+     */
+    default void aclResolved(String authoritativeACLUri, int inheritanceDepth, long durationNanos) {
+    }
+
+    /**
+     * A query was executed.
+     *
+     * @param type the kind of query or {@code null} for a single pass over all
+     * kinds
+     * @param isMatching if a rule was found
+     * @param durationNanos
+     */
+    default void queryExecuted(WacQueryType type, boolean isMatching, long durationNanos) {
+    }
+
+    /**
+     * The request was decided.
+     *
+     * @param isAllowed if a rule was found
+     * @param groupDocuments the number of distinct agent group documents
+     * consulted
+     * @param durationNanos including all other stages
+     */
+    default void decided(boolean isAllowed, int groupDocuments, long durationNanos) {
+    }
+}
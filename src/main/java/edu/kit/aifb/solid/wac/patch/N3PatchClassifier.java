@@ -0,0 +1,690 @@
+package edu.kit.aifb.solid.wac.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.irix.IRIException;
+import org.apache.jena.irix.IRIx;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.ErrorHandlerFactory;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+
+/**
+ * Classifies the body of an N3 patch
+ * {@link https://solidproject.org/TR/protocol#n3-patch} as deleting (i.e.
+ * requires {@code acl:Write}) or only appending (i.e. {@code acl:Append} would
+ * suffice), in a single pass over the body without building a model.
+ *
+ * A patch is deleting if any triple outside of a formula ({@code { ... }}) has
+ * the predicate {@code solid:deletes}. IRIs are unescaped and resolved against
+ * the declared base and prefixes before they are compared. The classifier
+ * fails closed: a predicate that cannot be resolved (e.g. a relative IRI
+ * without declared base, as the request URI is unknown here) counts as
+ * {@code solid:deletes}, and a body that is not a sequence of well-formed
+ * directives and triples is rejected. Formulas are only checked to be
+ * balanced.
+ */
+public class N3PatchClassifier {
+
+    private static final String DELETES = Namespaces.SOLID + "deletes";
+    private static final IRIx SOLID = IRIx.create(Namespaces.SOLID);
+
+    private final int maxBodyLength;
+
+    /**
+     * A classifier without limit on the length of the body.
+     */
+    public N3PatchClassifier() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     *
+     * @param maxBodyLength the maximum number of characters of a body to
+     * classify
+     */
+    public N3PatchClassifier(int maxBodyLength) {
+        if (maxBodyLength < 0) {
+            throw new IllegalArgumentException("Body size limit must not be negative");
+        }
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    /**
+     * Check if the patch is not deleting, i.e. at most appending to the
+     * resource.
+     *
+     * @param body the N3 patch
+     * @return isForNonDeletingRequest
+     * @throws IllegalArgumentException if the body exceeds the size limit or
+     * cannot be tokenized
+     */
+    public boolean isNonDeleting(CharSequence body) {
+        if (body.length() > this.maxBodyLength) {
+            throw new IllegalArgumentException("PATCH body exceeds " + this.maxBodyLength + " characters");
+        }
+        return !new Tokenizer(body).deletesSomething();
+    }
+
+    /**
+     * The reference implementation: parse the patch into a model (replacing
+     * formulas with a blank node, as Apache Jena cannot parse N3) and ask for
+     * {@code ?patch solid:deletes ?something}.
+     *
+     * @param body the N3 patch
+     * @return isForNonDeletingRequest
+     */
+    public static boolean isNonDeletingByParsing(String body) {
+        String b = body;
+        // Apache Jena cannot parse the full N3 patch, so we hack it.
+        Pattern p = Pattern.compile("\\{[^{}}]*\\}");
+        Matcher matcher = p.matcher(b);
+        while (matcher.find()) {
+            b = matcher.replaceAll("_:placeholder "); // replace all the blocks just with a blanknode.
+            matcher = p.matcher(b);
+        }
+        InputStream in = new ByteArrayInputStream(b.getBytes(StandardCharsets.UTF_8));
+        Model model = RDFParser.create()
+                .source(in)
+                .lang(RDFLanguages.TRIG)
+                .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
+                .toModel();
+        String queryString = String.format("""
+                                                PREFIX solid: <%s>
+                                                ASK {
+                                                 ?patch solid:deletes ?something
+                                                }
+                                            """, Namespaces.SOLID);
+
+        QueryExecution qexec = QueryExecutionFactory.create(queryString, model);
+        boolean deletesSomething = qexec.execAsk();
+        return !deletesSomething; // isOnlyAppending
+    }
+
+    /**
+     * Check if an absolute IRI might be {@code solid:deletes}. Compares
+     * leniently, s.t. no other spelling of it passes as appending: dot
+     * segments are removed, percent-encoding is decoded and case is ignored.
+     *
+     * @param iri
+     * @return if the IRI is or might be {@code solid:deletes}
+     */
+    static boolean isDeletes(String iri) {
+        if (iri == null) {
+            return true;
+        }
+        StringBuilder decoded = new StringBuilder(iri.length());
+        for (int i = 0; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            if (c == '%' && i + 2 < iri.length() && Character.digit(iri.charAt(i + 1), 16) >= 0 && Character.digit(iri.charAt(i + 2), 16) >= 0) {
+                decoded.append((char) Integer.parseInt(iri.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                decoded.append(c);
+            }
+        }
+        try {
+            // resolving an absolute IRI removes its dot segments
+            return SOLID.resolve(decoded.toString()).str().equalsIgnoreCase(DELETES);
+        } catch (IRIException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Where in a triple the next term is.
+     */
+    private enum Position {
+        SUBJECT, PREDICATE, OBJECT, AFTER_OBJECT, COLLECTION
+    }
+
+    /**
+     * Single use, walks the body once.
+     */
+    private static final class Tokenizer {
+
+        private static final String LOCAL_ESCAPES = "_~.-!$&'()*+,;=/?#@%";
+
+        private final CharSequence in;
+        private int pos = 0;
+
+        private Position position = Position.SUBJECT;
+        // if the statement or blank node property list may end here
+        private boolean isComplete = false;
+        // where to continue after ']' or ')'
+        private final List<Position> stack = new ArrayList<>();
+        // declared prefixes with their resolved namespace IRI, null if it cannot be resolved
+        private final Map<String, String> prefixes = new HashMap<>();
+        // null until an absolute base is declared: relative IRIs resolve against the unknown request URI
+        private IRIx base = null;
+
+        Tokenizer(CharSequence in) {
+            this.in = in;
+        }
+
+        boolean deletesSomething() {
+            while (true) {
+                this.skipWhitespaceAndComments();
+                if (this.pos >= this.in.length()) {
+                    if (this.position != Position.SUBJECT || !this.stack.isEmpty()) {
+                        throw new IllegalArgumentException("Unexpected end of the patch");
+                    }
+                    return false;
+                }
+                char c = this.in.charAt(this.pos);
+                switch (c) {
+                    case '.':
+                        if (!this.isComplete || !this.stack.isEmpty()) {
+                            throw new IllegalArgumentException("Unexpected '.' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.position = Position.SUBJECT;
+                        this.isComplete = false;
+                        break;
+                    case ';':
+                        if (!this.isComplete || this.position == Position.SUBJECT || this.position == Position.COLLECTION) {
+                            throw new IllegalArgumentException("Unexpected ';' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.position = Position.PREDICATE;
+                        break;
+                    case ',':
+                        if (this.position != Position.AFTER_OBJECT) {
+                            throw new IllegalArgumentException("Unexpected ',' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.position = Position.OBJECT;
+                        this.isComplete = false;
+                        break;
+                    case '[':
+                    case '(':
+                        if (this.position == Position.PREDICATE || this.position == Position.AFTER_OBJECT) {
+                            throw new IllegalArgumentException("Unexpected '" + c + "' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.stack.add(this.position);
+                        this.position = (c == '[') ? Position.PREDICATE : Position.COLLECTION;
+                        this.isComplete = true;
+                        break;
+                    case ']':
+                        if (this.position == Position.COLLECTION || !this.isComplete) {
+                            throw new IllegalArgumentException("Unexpected ']' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.closeTerm();
+                        break;
+                    case ')':
+                        if (this.position != Position.COLLECTION) {
+                            throw new IllegalArgumentException("Unexpected ')' at " + this.pos);
+                        }
+                        this.pos++;
+                        this.closeTerm();
+                        break;
+                    case '{':
+                        this.skipFormula();
+                        if (this.term()) {
+                            throw new IllegalArgumentException("Unexpected formula as predicate at " + this.pos);
+                        }
+                        break;
+                    case '}':
+                        throw new IllegalArgumentException("Unbalanced '}' at " + this.pos);
+                    case '<':
+                        int start = this.pos + 1;
+                        this.skipIri();
+                        if (this.term() && isDeletes(this.resolve(this.unescapeIri(start, this.pos - 1)))) {
+                            return true;
+                        }
+                        break;
+                    case '"':
+                    case '\'':
+                        this.skipString();
+                        this.skipLiteralSuffix();
+                        this.literal();
+                        break;
+                    case '@':
+                        this.directive(true);
+                        break;
+                    default:
+                        int nameStart = this.pos;
+                        this.skipName();
+                        if (this.pos == nameStart) {
+                            throw new IllegalArgumentException("Unexpected '" + c + "' at " + this.pos);
+                        }
+                        if (this.isKeyword(nameStart, "PREFIX") || this.isKeyword(nameStart, "BASE")) {
+                            this.pos = nameStart;
+                            this.directive(false);
+                            break;
+                        }
+                        if (this.name(nameStart)) {
+                            return true;
+                        }
+                }
+            }
+        }
+
+        /**
+         * Advance the position after a term.
+         *
+         * @return if the term is a predicate
+         */
+        private boolean term() {
+            switch (this.position) {
+                case SUBJECT:
+                    this.position = Position.PREDICATE;
+                    this.isComplete = false;
+                    return false;
+                case PREDICATE:
+                    this.position = Position.OBJECT;
+                    this.isComplete = false;
+                    return true;
+                case OBJECT:
+                    this.position = Position.AFTER_OBJECT;
+                    this.isComplete = true;
+                    return false;
+                case AFTER_OBJECT:
+                    throw new IllegalArgumentException("Expected '.', ';' or ',' at " + this.pos);
+                default:
+                    return false; // in a collection
+            }
+        }
+
+        private void literal() {
+            if (this.term()) {
+                throw new IllegalArgumentException("Unexpected literal as predicate at " + this.pos);
+            }
+        }
+
+        private void closeTerm() {
+            if (this.stack.isEmpty()) {
+                throw new IllegalArgumentException("Unbalanced '" + this.in.charAt(this.pos - 1) + "' at " + (this.pos - 1));
+            }
+            this.position = this.stack.remove(this.stack.size() - 1);
+            boolean isSubject = this.position == Position.SUBJECT;
+            this.term();
+            // a blank node property list may be a statement on its own
+            this.isComplete |= isSubject && this.in.charAt(this.pos - 1) == ']';
+        }
+
+        /**
+         * A prefixed name, blank node label, variable, keyword, boolean or
+         * number.
+         *
+         * @return if it is a predicate that is or might be
+         * {@code solid:deletes}
+         */
+        private boolean name(int start) {
+            int end = this.pos;
+            char first = this.in.charAt(start);
+            if ((end - start == 1 && first == 'a') || this.isKeyword(start, "=") || this.isKeyword(start, "=>")) {
+                if (this.position != Position.PREDICATE) {
+                    throw new IllegalArgumentException("Unexpected keyword at " + start);
+                }
+                this.term();
+                return false;
+            }
+            if (first == '?') {
+                // a variable could be bound to anything
+                return this.term();
+            }
+            if (first == '_' && end - start > 2 && this.in.charAt(start + 1) == ':') {
+                this.term();
+                return false;
+            }
+            if (this.isKeyword(start, "TRUE") || this.isKeyword(start, "FALSE") || this.isNumber(start, end)) {
+                this.literal();
+                return false;
+            }
+            int colon = -1;
+            for (int i = start; i < end; i++) {
+                if (this.in.charAt(i) == ':') {
+                    colon = i;
+                    break;
+                }
+            }
+            if (colon < 0) {
+                throw new IllegalArgumentException("Unexpected '" + this.in.subSequence(start, end) + "' at " + start);
+            }
+            String prefix = this.in.subSequence(start, colon).toString();
+            if (!this.prefixes.containsKey(prefix)) {
+                throw new IllegalArgumentException("Undeclared prefix '" + prefix + ":' at " + start);
+            }
+            String local = this.unescapeLocalName(colon + 1, end);
+            if (!this.term()) {
+                return false;
+            }
+            String namespace = this.prefixes.get(prefix);
+            return isDeletes((namespace == null) ? null : namespace + local);
+        }
+
+        private boolean isNumber(int start, int end) {
+            char first = this.in.charAt(start);
+            if (!Character.isDigit(first) && first != '+' && first != '-' && first != '.') {
+                return false;
+            }
+            boolean hasDigit = false;
+            for (int i = start; i < end; i++) {
+                char c = this.in.charAt(i);
+                if (Character.isDigit(c)) {
+                    hasDigit = true;
+                } else if (c != '+' && c != '-' && c != '.' && c != 'e' && c != 'E') {
+                    return false;
+                }
+            }
+            return hasDigit;
+        }
+
+        private boolean isKeyword(int start, String keyword) {
+            if (this.pos - start != keyword.length()) {
+                return false;
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                if (Character.toUpperCase(this.in.charAt(start + i)) != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Resolve an IRI against the current base.
+         *
+         * @return the absolute IRI, {@code null} if it is relative and the base
+         * is unknown or if it is invalid
+         */
+        private String resolve(String iri) {
+            try {
+                if (this.base != null) {
+                    return this.base.resolve(iri).str();
+                }
+                IRIx absolute = IRIx.create(iri);
+                return absolute.isRelative() ? null : absolute.str();
+            } catch (IRIException e) {
+                return null;
+            }
+        }
+
+        /**
+         * The IRI between {@code <} and {@code >} with {@code \\u} and
+         * {@code \\U} escapes decoded.
+         */
+        private String unescapeIri(int start, int end) {
+            StringBuilder iri = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = this.in.charAt(i);
+                if (c != '\\') {
+                    iri.append(c);
+                    continue;
+                }
+                int length = (i + 1 < end && this.in.charAt(i + 1) == 'u') ? 4 : (i + 1 < end && this.in.charAt(i + 1) == 'U') ? 8 : -1;
+                if (length < 0 || i + 2 + length > end) {
+                    throw new IllegalArgumentException("Invalid escape in IRI at " + i);
+                }
+                int codePoint = 0;
+                for (int j = i + 2; j < i + 2 + length; j++) {
+                    int digit = Character.digit(this.in.charAt(j), 16);
+                    if (digit < 0) {
+                        throw new IllegalArgumentException("Invalid escape in IRI at " + i);
+                    }
+                    codePoint = codePoint * 16 + digit;
+                }
+                if (!Character.isValidCodePoint(codePoint)) {
+                    throw new IllegalArgumentException("Invalid escape in IRI at " + i);
+                }
+                iri.appendCodePoint(codePoint);
+                i += 1 + length;
+            }
+            return iri.toString();
+        }
+
+        /**
+         * The local name of a prefixed name with {@code \\} escapes removed.
+         */
+        private String unescapeLocalName(int start, int end) {
+            StringBuilder local = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = this.in.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 >= end || LOCAL_ESCAPES.indexOf(this.in.charAt(i + 1)) < 0) {
+                        throw new IllegalArgumentException("Invalid escape in local name at " + i);
+                    }
+                    c = this.in.charAt(++i);
+                }
+                local.append(c);
+            }
+            return local.toString();
+        }
+
+        /**
+         * {@code @prefix p: <iri> .}, {@code @base <iri> .},
+         * {@code PREFIX p: <iri>} or {@code BASE <iri>}. The IRI is resolved
+         * against the base declared before.
+         */
+        private void directive(boolean isTurtleStyle) {
+            int directiveStart = this.pos;
+            if (this.position != Position.SUBJECT || !this.stack.isEmpty()) {
+                throw new IllegalArgumentException("Unexpected directive at " + directiveStart);
+            }
+            if (isTurtleStyle) {
+                this.pos++; // '@'
+            }
+            int keywordStart = this.pos;
+            this.skipName();
+            boolean isPrefix = this.isKeyword(keywordStart, "PREFIX");
+            if (!isPrefix && !this.isKeyword(keywordStart, "BASE")) {
+                throw new IllegalArgumentException("Unknown directive at " + directiveStart);
+            }
+            if (isPrefix) {
+                this.skipWhitespaceAndComments();
+                int prefixStart = this.pos;
+                this.skipName();
+                if (this.pos == prefixStart || this.in.charAt(this.pos - 1) != ':') {
+                    throw new IllegalArgumentException("Expected prefix at " + prefixStart);
+                }
+                String prefix = this.in.subSequence(prefixStart, this.pos - 1).toString();
+                this.skipWhitespaceAndComments();
+                if (this.pos >= this.in.length() || this.in.charAt(this.pos) != '<') {
+                    throw new IllegalArgumentException("Expected namespace IRI at " + this.pos);
+                }
+                int iriStart = this.pos + 1;
+                this.skipIri();
+                this.prefixes.put(prefix, this.resolve(this.unescapeIri(iriStart, this.pos - 1)));
+            } else {
+                this.skipWhitespaceAndComments();
+                int iriStart = this.pos + 1;
+                this.skipIri();
+                String base = this.resolve(this.unescapeIri(iriStart, this.pos - 1));
+                this.base = (base == null) ? null : IRIx.create(base);
+            }
+            if (isTurtleStyle) {
+                this.skipWhitespaceAndComments();
+                if (this.pos >= this.in.length() || this.in.charAt(this.pos) != '.') {
+                    throw new IllegalArgumentException("Expected '.' at " + this.pos);
+                }
+                this.pos++;
+            }
+        }
+
+        private void skipWhitespaceAndComments() {
+            while (this.pos < this.in.length()) {
+                char c = this.in.charAt(this.pos);
+                if (c == '#') {
+                    while (this.pos < this.in.length() && this.in.charAt(this.pos) != '\n' && this.in.charAt(this.pos) != '\r') {
+                        this.pos++;
+                    }
+                } else if (Character.isWhitespace(c)) {
+                    this.pos++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void skipIri() {
+            if (this.pos >= this.in.length() || this.in.charAt(this.pos) != '<') {
+                throw new IllegalArgumentException("Expected IRI at " + this.pos);
+            }
+            int start = this.pos;
+            this.pos++;
+            while (this.pos < this.in.length()) {
+                char c = this.in.charAt(this.pos++);
+                if (c == '>') {
+                    return;
+                }
+                if (c <= ' ' || "<\"{}|^`".indexOf(c) >= 0) {
+                    throw new IllegalArgumentException("Invalid character in IRI at " + (this.pos - 1));
+                }
+            }
+            throw new IllegalArgumentException("Unterminated IRI at " + start);
+        }
+
+        private void skipString() {
+            int start = this.pos;
+            char quote = this.in.charAt(this.pos);
+            boolean isLong = this.pos + 2 < this.in.length()
+                    && this.in.charAt(this.pos + 1) == quote
+                    && this.in.charAt(this.pos + 2) == quote;
+            this.pos += isLong ? 3 : 1;
+            while (this.pos < this.in.length()) {
+                char c = this.in.charAt(this.pos++);
+                if (c == '\\') {
+                    this.pos++;
+                } else if (c == quote) {
+                    if (!isLong) {
+                        return;
+                    }
+                    if (this.pos + 1 < this.in.length()
+                            && this.in.charAt(this.pos) == quote
+                            && this.in.charAt(this.pos + 1) == quote) {
+                        this.pos += 2;
+                        return;
+                    }
+                } else if (!isLong && (c == '\n' || c == '\r')) {
+                    break;
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string at " + start);
+        }
+
+        /**
+         * {@code @lang} or {@code ^^datatype}
+         */
+        private void skipLiteralSuffix() {
+            if (this.pos >= this.in.length()) {
+                return;
+            }
+            char c = this.in.charAt(this.pos);
+            if (c == '@') {
+                this.pos++;
+                this.skipName();
+            } else if (c == '^' && this.pos + 1 < this.in.length() && this.in.charAt(this.pos + 1) == '^') {
+                this.pos += 2;
+                if (this.pos < this.in.length() && this.in.charAt(this.pos) == '<') {
+                    this.skipIri();
+                } else {
+                    this.skipName();
+                }
+            }
+        }
+
+        /**
+         * Prefixed names, blank node labels, variables, keywords and numbers. A
+         * trailing '.' ends the statement instead.
+         */
+        private void skipName() {
+            int start = this.pos;
+            while (this.pos < this.in.length() && isNameChar(this.in.charAt(this.pos))) {
+                if (this.in.charAt(this.pos) == '\\' && this.pos + 1 < this.in.length()) {
+                    this.pos++; // escaped local name character
+                }
+                this.pos++;
+            }
+            while (this.pos > start && this.in.charAt(this.pos - 1) == '.') {
+                this.pos--;
+            }
+        }
+
+        private static boolean isNameChar(char c) {
+            switch (c) {
+                case '.':
+                case ':':
+                case '_':
+                case '-':
+                case '?':
+                case '$':
+                case '%':
+                case '\\':
+                case '+':
+                case '=':
+                    return true;
+                default:
+                    return Character.isLetterOrDigit(c) || c > 0x7F;
+            }
+        }
+
+        /**
+         * Skip a formula including nested formulas.
+         */
+        private void skipFormula() {
+            int start = this.pos;
+            int depth = 0;
+            while (this.pos < this.in.length()) {
+                char c = this.in.charAt(this.pos);
+                switch (c) {
+                    case '{':
+                        depth++;
+                        this.pos++;
+                        break;
+                    case '}':
+                        depth--;
+                        this.pos++;
+                        if (depth == 0) {
+                            return;
+                        }
+                        break;
+                    case '#':
+                        this.skipWhitespaceAndComments();
+                        break;
+                    case '<':
+                        if (this.looksLikeIri()) {
+                            this.skipIri();
+                        } else {
+                            this.pos++; // e.g. the "<=" operator
+                        }
+                        break;
+                    case '"':
+                    case '\'':
+                        this.skipString();
+                        break;
+                    default:
+                        this.pos++;
+                }
+            }
+            throw new IllegalArgumentException("Unterminated formula at " + start);
+        }
+
+        private boolean looksLikeIri() {
+            for (int i = this.pos + 1; i < this.in.length(); i++) {
+                char c = this.in.charAt(i);
+                if (c == '>') {
+                    return true;
+                }
+                if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '{' || c == '}') {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package edu.kit.aifb.solid.wac.query;
+
+/**
+ * The action of a request on a resource, as set by
+ * {@link WacQueryBuilder#forRequest(String, String, String)}.
+ */
+public final class AccessRequest {
+
+    private final String resource;
+    private final String method;
+    private final String body;
+
+    /**
+     *
+     * @param resource the target of the HTTP request
+     * @param method the HTTP action to be executed on the target resource
+     * @param body MUST not be null, for PATCH the body should always be
+     * provided, otherwise shouldnt
+     */
+    public AccessRequest(String resource, String method, String body) {
+        if (resource == null || method == null) {
+            throw new IllegalArgumentException("Cannot check access for resource `" + resource + "` and method `" + method + "`");
+        }
+        this.resource = resource;
+        this.method = method;
+        this.body = body;
+    }
+
+    /**
+     * @return the target of the request
+     */
+    public String getResource() {
+        return this.resource;
+    }
+
+    /**
+     * @return the HTTP method
+     */
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return the body of the request
+     */
+    public String getBody() {
+        return this.body;
+    }
+
+    @Override
+    public String toString() {
+        return this.method + " <" + this.resource + ">";
+    }
+}
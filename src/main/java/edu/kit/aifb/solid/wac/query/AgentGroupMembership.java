@@ -0,0 +1,93 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+import edu.kit.aifb.solid.wac.jfr.GroupLookupEvent;
+import edu.kit.aifb.solid.wac.store.AclStore;
+import edu.kit.aifb.solid.wac.store.RemoteGroupResolver;
+
+/**
+ * Decides {@code <group> vcard:hasMember <webid>} for the agent group queries.
+ */
+@FunctionalInterface
+interface AgentGroupMembership {
+
+    /**
+     *
+     * @param group the URI string of the group
+     * @param webid the agent
+     * @return isMember
+     */
+    boolean isMember(String group, String webid);
+
+    /**
+     * Commit a JFR event for each lookup (if recorded).
+     *
+     * @param membership
+     * @return the membership lookup
+     */
+    static AgentGroupMembership recorded(AgentGroupMembership membership) {
+        return (group, webid) -> {
+            GroupLookupEvent event = new GroupLookupEvent();
+            event.begin();
+            boolean isMember = membership.isMember(group, webid);
+            event.record(group, isMember);
+            return isMember;
+        };
+    }
+
+    /**
+     * Dereference the group URI in the resource map and ask the group document
+     * using SPARQL.
+     *
+     * @param agentGroupsMap
+     * @return the membership lookup
+     */
+    static AgentGroupMembership sparql(Map<String, Dataset> agentGroupsMap) {
+        return (group, webid) -> QueryForAgentGroup.isMemberOf(agentGroupsMap, group, webid);
+    }
+
+    /**
+     * Dereference the group URI in the resource map and look up the compiled
+     * group document.
+     *
+     * @param indexCache
+     * @param agentGroupsMap
+     * @return the membership lookup
+     */
+    static AgentGroupMembership indexed(AclIndexCache indexCache, Map<String, Dataset> agentGroupsMap) {
+        return (group, webid) -> {
+            String groupDocument = GroupMembershipIndex.documentOf(group);
+            return indexCache.get(groupDocument, agentGroupsMap.get(groupDocument)).hasMember(group, webid);
+        };
+    }
+
+    /**
+     * Look up the groups of a group document in the store, and fetch the
+     * other group documents, e.g. on another server.
+     *
+     * @param local decides for the group documents in the store
+     * @param store
+     * @param remote fetches and caches the other group documents
+     * @return the membership lookup
+     */
+    static AgentGroupMembership remote(AgentGroupMembership local, AclStore store, RemoteGroupResolver remote) {
+        return (group, webid) -> store.exists(GroupMembershipIndex.documentOf(group))
+                ? local.isMember(group, webid)
+                : remote.isMember(group, webid);
+    }
+
+    /**
+     * Look up the groups of the agent in the reverse index.
+     *
+     * @param groupIndex
+     * @return the membership lookup
+     */
+    static AgentGroupMembership indexed(GroupMembershipIndex groupIndex) {
+        return groupIndex::isMember;
+    }
+}
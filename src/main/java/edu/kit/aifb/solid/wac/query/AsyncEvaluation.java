@@ -0,0 +1,101 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Helpers for evaluating queries concurrently, see
+ * {@link WacEngine#checkAsync(AccessRequest, String)}.
+ */
+final class AsyncEvaluation {
+
+    private AsyncEvaluation() {
+    }
+
+    /**
+     * Virtual threads, if available (Java 21), otherwise the common pool.
+     */
+    static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    private static Executor defaultExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * The first non-{@code null} result in the order of the futures. It is
+     * known as soon as all preceding futures completed with {@code null}; then
+     * the remaining futures are cancelled, which only skips the tasks that
+     * have not started: {@link CompletableFuture#cancel(boolean)} does not
+     * interrupt a running task. An exception is only propagated if
+     * no preceding future has a result.
+     *
+     * @param <T>
+     * @param futures in order of priority
+     * @return the result, {@code null} if all futures complete with
+     * {@code null}. Cancelling it cancels all futures.
+     */
+    static <T> CompletableFuture<T> firstNonNull(List<CompletableFuture<T>> futures) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable scan = () -> {
+            synchronized (result) {
+                for (CompletableFuture<T> future : futures) {
+                    if (!future.isDone()) {
+                        return;
+                    }
+                    T value;
+                    try {
+                        value = future.join();
+                    } catch (CompletionException | CancellationException e) {
+                        result.completeExceptionally(unwrap(e));
+                        return;
+                    }
+                    if (value != null) {
+                        result.complete(value);
+                        return;
+                    }
+                }
+                result.complete(null);
+            }
+        };
+        result.whenComplete((value, e) -> futures.forEach(future -> future.cancel(true)));
+        if (futures.isEmpty()) {
+            scan.run();
+        }
+        futures.forEach(future -> future.whenComplete((value, e) -> scan.run()));
+        return result;
+    }
+
+    /**
+     * Complete {@code to} with the outcome of {@code from}, and cancel
+     * {@code from} when {@code to} completes first.
+     *
+     * @param <T>
+     * @param from
+     * @param to
+     */
+    static <T> void propagate(CompletableFuture<T> from, CompletableFuture<T> to) {
+        from.whenComplete((value, e) -> {
+            if (e != null) {
+                to.completeExceptionally(unwrap(e));
+            } else {
+                to.complete(value);
+            }
+        });
+        to.whenComplete((value, e) -> from.cancel(true));
+    }
+
+    static Throwable unwrap(Throwable e) {
+        return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+    }
+}
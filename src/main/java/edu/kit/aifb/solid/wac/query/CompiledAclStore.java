@@ -0,0 +1,41 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+
+import edu.kit.aifb.solid.wac.index.CompiledAcls;
+import edu.kit.aifb.solid.wac.store.AclStore;
+
+/**
+ * Lets the engine resolve the authoritative {@code .acl} against
+ * {@link CompiledAcls}, e.g. a snapshot. The rules are looked up in the
+ * compiled documents, so no RDF is loaded: an existing document is an empty
+ * placeholder dataset.
+ */
+final class CompiledAclStore implements AclStore {
+
+    private static final Dataset COMPILED = DatasetFactory.empty();
+
+    private final CompiledAcls compiled;
+
+    CompiledAclStore(CompiledAcls compiled) {
+        this.compiled = compiled;
+    }
+
+    @Override
+    public Dataset load(String uri) {
+        return this.compiled.contains(uri) ? COMPILED : null;
+    }
+
+    @Override
+    public boolean exists(String uri) {
+        return this.compiled.contains(uri);
+    }
+
+    @Override
+    public Set<String> uris() {
+        throw new UnsupportedOperationException("Cannot list the compiled documents.");
+    }
+}
@@ -0,0 +1,79 @@
+package edu.kit.aifb.solid.wac.query;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.index.AclRules;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
+/**
+ * Evaluates a {@link WacQueryType} against the compiled {@link AclRules} of
+ * the authoritative ACL instead of running SPARQL. Yields the same rule URI
+ * as the corresponding {@code QueryFor...} implementation.
+ */
+class IndexedQuery extends WacQuery {
+
+    private final WacQueryType type;
+    private final AclRules index;
+    private final String onResource;
+    private final boolean isLookingForInheritedRule;
+    private final String forMode;
+    private final String forAgentWebId;
+    private final AgentGroupMembership membership;
+
+    /**
+     *
+     * @param type
+     * @param inAuthoritativeACL
+     * @param index
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId
+     * @param membership how to decide if the agent is member of a group
+     */
+    public IndexedQuery(WacQueryType type, Dataset inAuthoritativeACL, AclRules index, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, AgentGroupMembership membership) {
+        super(inAuthoritativeACL, onResource, forMode);
+        if (forAgentWebId == null && (type == WacQueryType.AGENT || type == WacQueryType.AGENT_GROUP)) {
+            throw new IllegalArgumentException("Cannot build agent query for webid `null`");
+        }
+        this.type = type;
+        this.index = index;
+        this.onResource = onResource;
+        this.isLookingForInheritedRule = isLookingForInheritedRule;
+        this.forMode = forMode;
+        this.forAgentWebId = forAgentWebId;
+        this.membership = membership;
+    }
+
+    @Override
+    public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
+        switch (this.type) {
+            case PUBLIC:
+                return this.index.findPublicRule(this.onResource, this.isLookingForInheritedRule, this.forMode);
+            case AUTHENTICATED:
+                return this.index.findAuthenticatedRule(this.onResource, this.isLookingForInheritedRule, this.forMode);
+            case AGENT:
+                return this.index.findAgentRule(this.onResource, this.isLookingForInheritedRule, this.forMode, this.forAgentWebId);
+            case AGENT_GROUP:
+                return this.index.findGroupRule(this.onResource, this.isLookingForInheritedRule, this.forMode, this::isMemberOf);
+            default:
+                throw new IllegalStateException("Unknown query type " + this.type);
+        }
+    }
+
+    @Override
+    protected String getKind() {
+        return "IndexedQuery " + this.type;
+    }
+
+    private boolean isMemberOf(String group) {
+        return this.membership.isMember(group, this.forAgentWebId);
+    }
+
+}
@@ -0,0 +1,57 @@
+package edu.kit.aifb.solid.wac.query;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.index.AclRules;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
+/**
+ * Evaluates all {@link WacQueryType} in one probe of the compiled
+ * {@link AclRules} of the authoritative ACL. Yields the same rule URI as
+ * {@link QueryForAnyAgent}.
+ */
+class IndexedQueryForAnyAgent extends WacQuery {
+
+    private final AclRules index;
+    private final String onResource;
+    private final boolean isLookingForInheritedRule;
+    private final String forMode;
+    private final String forAgentWebId;
+    private final AgentGroupMembership membership;
+
+    /**
+     *
+     * @param inAuthoritativeACL
+     * @param index
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId if {@code null}, only public rules are considered
+     * @param membership how to decide if the agent is member of a group
+     */
+    public IndexedQueryForAnyAgent(Dataset inAuthoritativeACL, AclRules index, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, AgentGroupMembership membership) {
+        super(inAuthoritativeACL, onResource, forMode);
+        this.index = index;
+        this.onResource = onResource;
+        this.isLookingForInheritedRule = isLookingForInheritedRule;
+        this.forMode = forMode;
+        this.forAgentWebId = forAgentWebId;
+        this.membership = membership;
+    }
+
+    @Override
+    public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
+        return this.index.findRule(this.onResource, this.isLookingForInheritedRule, this.forMode, this.forAgentWebId, this::isMemberOf);
+    }
+
+    private boolean isMemberOf(String group) {
+        return this.membership.isMember(group, this.forAgentWebId);
+    }
+
+}
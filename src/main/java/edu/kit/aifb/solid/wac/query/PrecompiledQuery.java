@@ -0,0 +1,162 @@
+package edu.kit.aifb.solid.wac.query;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
+/**
+ * Evaluates the same SPARQL as the {@code QueryFor...} implementations, but
+ * the query shapes are parsed and algebra-optimized only once. Per request,
+ * the target, mode and agent are substituted into the prepared algebra.
+ *
+ * Shapes: {@link WacQueryType} (or all of them in a single pass, like
+ * {@link QueryForAnyAgent}) x {@code acl:accessTo}/{@code acl:default} x
+ * single mode/Append-with-Write-union.
+ */
+class PrecompiledQuery extends WacQuery {
+
+    private static final Var AUTHORIZATION = Var.alloc("authz");
+    private static final Var GROUP = Var.alloc("group");
+    private static final Var TARGET = Var.alloc("target");
+    private static final Var MODE = Var.alloc("mode");
+    private static final Var AGENT = Var.alloc("agent");
+    // bound to ?agent if there is no webid, so that only the public branch of the single pass matches
+    // [type or single pass][accessTo/default][single mode/Append-with-Write-union]
+    private static final Op[][][] TEMPLATES = new Op[WacQueryType.values().length + 1][2][2];
+    private static final int SINGLE_PASS = WacQueryType.values().length;
+
+    static {
+        for (int type = 0; type < TEMPLATES.length; type++) {
+            for (int inherited = 0; inherited < 2; inherited++) {
+                for (int append = 0; append < 2; append++) {
+                    String queryString = queryString(type, inherited == 1, append == 1);
+                    Query query = QueryFactory.create(queryString);
+                    TEMPLATES[type][inherited][append] = Algebra.optimize(Algebra.compile(query));
+                }
+            }
+        }
+    }
+
+    private final Op template;
+    private final Binding binding;
+    private final String forAgentWebId;
+    private final AgentGroupMembership membership;
+    private final WacQueryType type;
+
+    /**
+     *
+     * @param type the agent condition or {@code null} for all conditions in a
+     * single pass
+     * @param inAuthoritativeACL
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId
+     * @param membership how to decide if the agent is member of a group
+     */
+    public PrecompiledQuery(WacQueryType type, Dataset inAuthoritativeACL, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, AgentGroupMembership membership) {
+        super(inAuthoritativeACL, onResource, forMode);
+        if (forAgentWebId == null && (type == WacQueryType.AGENT || type == WacQueryType.AGENT_GROUP)) {
+            throw new IllegalArgumentException("Cannot build agent query for webid `null`");
+        }
+        boolean isAppend = forMode.contains("Append");
+        int shape = (type == null) ? SINGLE_PASS : type.ordinal();
+        this.template = TEMPLATES[shape][isLookingForInheritedRule ? 1 : 0][isAppend ? 1 : 0];
+        this.binding = BindingBuilder.create()
+                .add(TARGET, NodeFactory.createURI(onResource))
+                .add(MODE, NodeFactory.createURI(forMode))
+                .add(AGENT, NodeFactory.createURI((forAgentWebId == null) ? NO_AGENT : forAgentWebId))
+                .build();
+        this.forAgentWebId = forAgentWebId;
+        this.membership = membership;
+        this.type = type;
+    }
+
+    private static final String NO_AGENT = "urn:solid-wac:no-agent";
+
+    private static String queryString(int type, boolean isLookingForInheritedRule, boolean isAppend) {
+        String authz = "?" + AUTHORIZATION.getVarName();
+        String lookAtRuleFor = (isLookingForInheritedRule) ? "acl:default" : "acl:accessTo";
+        StringBuilder bgps = new StringBuilder();
+        bgps.append(" ").append(authz).append(" a acl:Authorization .\n");
+        bgps.append(" ").append(authz).append(" ").append(lookAtRuleFor).append(" ?").append(TARGET.getVarName()).append(" .\n");
+        String accessModeTriples = " " + authz + " acl:mode ?" + MODE.getVarName() + " .";
+        if (isAppend) {
+            // if acl:Append is ok, then acl:Write is also acceptable
+            accessModeTriples = "{ " + accessModeTriples + " } UNION { " + authz + " acl:mode <" + Namespaces.ACL + "Write> . }";
+        }
+        bgps.append(accessModeTriples).append("\n");
+        String publicTriple = " " + authz + " acl:agentClass <" + Namespaces.FOAF + "Agent> .";
+        String authenticatedTriple = " " + authz + " acl:agentClass acl:AuthenticatedAgent .";
+        String agentTriple = " " + authz + " acl:agent ?" + AGENT.getVarName() + " .";
+        String groupTriple = " " + authz + " acl:agentGroup ?" + GROUP.getVarName() + " .";
+        String orderBy = "";
+        if (type == SINGLE_PASS) {
+            bgps.append("{").append(publicTriple).append(" BIND(" + WacQueryType.PUBLIC.ordinal() + " AS ?priority) }\n");
+            bgps.append(" UNION {").append(authenticatedTriple).append(" FILTER(?").append(AGENT.getVarName()).append(" != <").append(NO_AGENT).append(">) BIND(" + WacQueryType.AUTHENTICATED.ordinal() + " AS ?priority) }\n");
+            bgps.append(" UNION {").append(agentTriple).append(" BIND(" + WacQueryType.AGENT.ordinal() + " AS ?priority) }\n");
+            bgps.append(" UNION {").append(groupTriple).append(" FILTER(?").append(AGENT.getVarName()).append(" != <").append(NO_AGENT).append(">) BIND(" + WacQueryType.AGENT_GROUP.ordinal() + " AS ?priority) }\n");
+            orderBy = "ORDER BY ?priority";
+        } else {
+            switch (WacQueryType.values()[type]) {
+                case PUBLIC -> bgps.append(publicTriple);
+                case AUTHENTICATED -> bgps.append(authenticatedTriple);
+                case AGENT -> bgps.append(agentTriple);
+                case AGENT_GROUP -> bgps.append(groupTriple);
+            }
+        }
+        return String.format("""
+                                PREFIX acl: <%s>
+                                SELECT ?%s ?%s WHERE {
+                                    %s
+                                }
+                                %s
+                            """, Namespaces.ACL, AUTHORIZATION.getVarName(), GROUP.getVarName(), bgps, orderBy);
+    }
+
+    @Override
+    protected String getKind() {
+        return "PrecompiledQuery " + ((this.type == null) ? "single pass" : this.type);
+    }
+
+    @Override
+    public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
+        Op op = Substitute.substitute(this.template, this.binding);
+        QueryIterator results = Algebra.exec(op, this.authoritativeACL.asDatasetGraph());
+        try {
+            while (results.hasNext()) {
+                Binding soln = results.next();
+                Node group = soln.get(GROUP);
+                if (group != null && !this.membership.isMember(group.getURI(), this.forAgentWebId)) {
+                    continue;
+                }
+                Node rule = soln.get(AUTHORIZATION);
+                if (rule != null && rule.isURI()) {
+                    return rule.getURI();
+                }
+            }
+            return null;
+        } finally {
+            results.close();
+        }
+    }
+
+}
@@ -5,6 +5,8 @@ import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.ResultSet;
 
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
 /**
  * Example:
  *
@@ -48,6 +50,12 @@ class QueryForAgent extends WacQuery {
 
     @Override
     public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
         if (this.forAgentWebId == null) {
             throw new IllegalArgumentException("Cannot execute agent query for webid `null`");
         }
@@ -1,6 +1,10 @@
 package edu.kit.aifb.solid.wac.query;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.QueryExecution;
@@ -9,6 +13,7 @@ import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 
 import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
 
 /**
  * Example:
@@ -38,7 +43,7 @@ import edu.kit.aifb.solid.wac.Namespaces;
 class QueryForAgentGroup extends WacQuery {
 
     private String forAgentWebId;
-    private Map<String, Dataset> agentGroupsMap;
+    private AgentGroupMembership membership;
     private final String VARIABLE_FOR_GROUP = "?group";
 
     /**
@@ -51,12 +56,25 @@ class QueryForAgentGroup extends WacQuery {
      * @param agentGroupsMap
      */
     public QueryForAgentGroup(Dataset inAuthoritativeACL, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, Map<String, Dataset> agentGroupsMap) {
+        this(inAuthoritativeACL, onResource, isLookingForInheritedRule, forMode, forAgentWebId, AgentGroupMembership.sparql(agentGroupsMap));
+    }
+
+    /**
+     *
+     * @param inAuthoritativeACL
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId
+     * @param membership how to decide if the agent is member of a group
+     */
+    public QueryForAgentGroup(Dataset inAuthoritativeACL, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, AgentGroupMembership membership) {
         super(inAuthoritativeACL, onResource, isLookingForInheritedRule, forMode);
         if (forAgentWebId == null) {
             throw new IllegalArgumentException("Cannot build agent query for webid `null`");
         }
         this.forAgentWebId = forAgentWebId;
-        this.agentGroupsMap = agentGroupsMap;
+        this.membership = membership;
         String agentTriple = " " + this.VARIABLE_FOR_AUTHORIZATION + " acl:agentGroup " + this.VARIABLE_FOR_GROUP + " .";
         this.appendToQueryBGPs(agentTriple);
     }
@@ -79,24 +97,45 @@ class QueryForAgentGroup extends WacQuery {
      *
      * @return true or false
      */
-    private String generateAgentQueryString(String groupName) {
+    private static String generateAgentQueryString(String groupName, String forAgentWebId) {
         return String.format("""
                 PREFIX vcard: <http://www.w3.org/2006/vcard/ns#>
                 ASK WHERE {
                 <%s> vcard:hasMember <%s>
                 }
-                """, groupName, this.forAgentWebId);
+                """, groupName, forAgentWebId);
+    }
+
+    /**
+     * Dereference the group URI and check if the agent is a member.
+     *
+     * @param agentGroupsMap
+     * @param groupName
+     * @param forAgentWebId
+     * @return isMember
+     */
+    static boolean isMemberOf(Map<String, Dataset> agentGroupsMap, String groupName, String forAgentWebId) {
+        Dataset datasetGroup = agentGroupsMap.get(groupName.split("#")[0]);
+        String queryStringForAgent = generateAgentQueryString(groupName, forAgentWebId);
+        QueryExecution qexecAgent = QueryExecutionFactory.create(queryStringForAgent, datasetGroup);
+        return qexecAgent.execAsk();
     }
 
     /**
-     * Find any applicable agent group and derefence their URIs to check if the
-     * agent is a member of any.
+     * Find any applicable agent group and check if the agent is a member of
+     * any, by default derefencing their URIs.
      *
      * @return the {@code String} of the retrieved access control rule URI or
      * {@code null} if no rule was found
      */
     @Override
     public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
         if (this.forAgentWebId == null) {
             throw new IllegalArgumentException("Cannot execute agent query for webid `null`");
         }
@@ -106,15 +145,55 @@ class QueryForAgentGroup extends WacQuery {
         while (results.hasNext()) {
             QuerySolution soln = results.next();
             String groupName = soln.getResource(this.VARIABLE_FOR_GROUP).getURI();
-            Dataset datasetGroup = this.agentGroupsMap.get(groupName.split("#")[0]);
-            String queryStringForAgent = generateAgentQueryString(groupName);
-            QueryExecution qexecAgent = QueryExecutionFactory.create(queryStringForAgent, datasetGroup);
-            boolean resultAgent = qexecAgent.execAsk();
-            if (resultAgent) {
+            if (this.membership.isMember(groupName, this.forAgentWebId)) {
                 return soln.getResource(this.VARIABLE_FOR_AUTHORIZATION).getURI();
             }
         }
         return null;
     }
 
+    /**
+     * Like {@link #exec()}, but the memberships of all applicable agent groups
+     * are checked in parallel. The first rule (in the order of the query
+     * results) of a group with the agent as member is returned.
+     *
+     * @param executor
+     * @return the future rule
+     */
+    @Override
+    public CompletableFuture<String> execAsync(Executor executor) {
+        if (this.forAgentWebId == null) {
+            throw new IllegalArgumentException("Cannot execute agent query for webid `null`");
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        result.whenComplete((rule, e) -> {
+            if (e == null) {
+                this.recordExecution(event, rule);
+            }
+        });
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone()) {
+                return; // cancelled
+            }
+            List<CompletableFuture<String>> candidates = new ArrayList<>();
+            String queryForGroupString = this.getQueryWithCurrentBGPs();
+            QueryExecution qexec = QueryExecutionFactory.create(queryForGroupString, this.authoritativeACL);
+            ResultSet results = qexec.execSelect();
+            while (results.hasNext()) {
+                QuerySolution soln = results.next();
+                String groupName = soln.getResource(this.VARIABLE_FOR_GROUP).getURI();
+                String rule = soln.getResource(this.VARIABLE_FOR_AUTHORIZATION).getURI();
+                candidates.add(CompletableFuture.supplyAsync(() -> this.membership.isMember(groupName, this.forAgentWebId) ? rule : null, executor));
+            }
+            AsyncEvaluation.propagate(AsyncEvaluation.firstNonNull(candidates), result);
+        }, executor).whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(AsyncEvaluation.unwrap(e));
+            }
+        });
+        return result;
+    }
+
 }
@@ -0,0 +1,117 @@
+package edu.kit.aifb.solid.wac.query;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
+/**
+ * Matches the agent conditions of {@link QueryForPublic},
+ * {@link QueryForAuthenticated}, {@link QueryForAgent} and
+ * {@link QueryForAgentGroup} in a single query, ordered by the same priority.
+ *
+ * Example:
+ *
+ * <pre>
+ * PREFIX acl: <http://www.w3.org/ns/auth/acl#>
+ * SELECT ?authz ?group ?priority WHERE {
+ * ?authz a acl:Authorization .
+ * ?authz acl:accessTo <http://localhost:8080/marmotta/ldp/test> .
+ * { ?authz acl:mode <http://www.w3.org/ns/auth/acl#Append> . }
+ * UNION
+ * { ?authz acl:mode <http://www.w3.org/ns/auth/acl#Write> . }
+ * { ?authz acl:agentClass <http://xmlns.com/foaf/0.1/Agent> . BIND(0 AS ?priority) }
+ * UNION
+ * { ?authz acl:agentClass acl:AuthenticatedAgent . BIND(1 AS ?priority) }
+ * UNION
+ * { ?authz acl:agent <http://example.org/webid> . BIND(2 AS ?priority) }
+ * UNION
+ * { ?authz acl:agentGroup ?group . BIND(3 AS ?priority) }
+ * }
+ * ORDER BY ?priority
+ * </pre>
+ */
+class QueryForAnyAgent extends WacQuery {
+
+    private final String VARIABLE_FOR_GROUP = "?group";
+    private final String VARIABLE_FOR_PRIORITY = "?priority";
+    private String forAgentWebId;
+    private AgentGroupMembership membership;
+
+    /**
+     *
+     * @param inAuthoritativeACL
+     * @param onResource
+     * @param isLookingForInheritedRule
+     * @param forMode
+     * @param forAgentWebId if {@code null}, only public rules are considered
+     * @param membership how to decide if the agent is member of a group
+     */
+    public QueryForAnyAgent(Dataset inAuthoritativeACL, String onResource, boolean isLookingForInheritedRule, String forMode, String forAgentWebId, AgentGroupMembership membership) {
+        super(inAuthoritativeACL, onResource, isLookingForInheritedRule, forMode);
+        this.forAgentWebId = forAgentWebId;
+        this.membership = membership;
+        StringBuilder agentTriples = new StringBuilder();
+        agentTriples.append(" { " + this.VARIABLE_FOR_AUTHORIZATION + " acl:agentClass <" + Namespaces.FOAF + "Agent> . BIND(" + WacQueryType.PUBLIC.ordinal() + " AS " + this.VARIABLE_FOR_PRIORITY + ") }");
+        if (forAgentWebId != null) {
+            agentTriples.append("\n UNION { " + this.VARIABLE_FOR_AUTHORIZATION + " acl:agentClass acl:AuthenticatedAgent . BIND(" + WacQueryType.AUTHENTICATED.ordinal() + " AS " + this.VARIABLE_FOR_PRIORITY + ") }");
+            agentTriples.append("\n UNION { " + this.VARIABLE_FOR_AUTHORIZATION + " acl:agent <" + forAgentWebId + "> . BIND(" + WacQueryType.AGENT.ordinal() + " AS " + this.VARIABLE_FOR_PRIORITY + ") }");
+            agentTriples.append("\n UNION { " + this.VARIABLE_FOR_AUTHORIZATION + " acl:agentGroup " + this.VARIABLE_FOR_GROUP + " . BIND(" + WacQueryType.AGENT_GROUP.ordinal() + " AS " + this.VARIABLE_FOR_PRIORITY + ") }");
+        }
+        this.appendToQueryBGPs(agentTriples.toString());
+    }
+
+    /**
+     * override to also return group and order by priority
+     */
+    @Override
+    protected String getQueryWithCurrentBGPs() {
+        return String.format("""
+                                PREFIX acl: <%s>
+                                SELECT %s %s %s WHERE {
+                                    %s
+                                }
+                                ORDER BY %s
+                            """, Namespaces.ACL, this.VARIABLE_FOR_AUTHORIZATION, this.VARIABLE_FOR_GROUP, this.VARIABLE_FOR_PRIORITY, this.getQueryBGPs(), this.VARIABLE_FOR_PRIORITY);
+    }
+
+    /**
+     * Return the first rule matching the agent, in the order of
+     * {@link WacQueryType}. For agent groups, it is checked if the agent is a
+     * member.
+     *
+     * @return the {@code String} of the retrieved access control rule URI or
+     * {@code null} if no rule was found
+     */
+    @Override
+    public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
+        String queryString = this.getQueryWithCurrentBGPs();
+        QueryExecution qexec = QueryExecutionFactory.create(queryString, this.authoritativeACL);
+        ResultSet results = qexec.execSelect();
+        while (results.hasNext()) {
+            QuerySolution soln = results.next();
+            if (soln.contains(this.VARIABLE_FOR_GROUP)) {
+                String groupName = soln.getResource(this.VARIABLE_FOR_GROUP).getURI();
+                if (!this.membership.isMember(groupName, this.forAgentWebId)) {
+                    continue;
+                }
+            }
+            String rule = soln.getResource(this.VARIABLE_FOR_AUTHORIZATION).getURI();
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+}
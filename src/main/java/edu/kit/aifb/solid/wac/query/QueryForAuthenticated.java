@@ -5,6 +5,8 @@ import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.ResultSet;
 
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
 /**
  * Example:
  *
@@ -41,6 +43,12 @@ class QueryForAuthenticated extends WacQuery {
 
     @Override
     public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, this.execQuery());
+    }
+
+    private String execQuery() {
         String queryString = this.getQueryWithCurrentBGPs();
         QueryExecution qexec = QueryExecutionFactory.create(queryString, this.authoritativeACL);
         ResultSet results = qexec.execSelect();
@@ -0,0 +1,40 @@
+package edu.kit.aifb.solid.wac.query;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
+
+/**
+ * Stands in for a {@link WacQueryType} that cannot match, e.g. because the
+ * {@link edu.kit.aifb.solid.wac.index.AgentFilters} rule out that the
+ * {@code .acl} mentions the agent: finds no rule without looking at the
+ * {@code .acl}.
+ */
+class SkippedQuery extends WacQuery {
+
+    private final WacQueryType type;
+
+    /**
+     *
+     * @param type the kind of query that is skipped
+     * @param inAuthoritativeACL
+     * @param onResource
+     * @param forMode
+     */
+    public SkippedQuery(WacQueryType type, Dataset inAuthoritativeACL, String onResource, String forMode) {
+        super(inAuthoritativeACL, onResource, forMode);
+        this.type = type;
+    }
+
+    @Override
+    public String exec() {
+        QueryExecutionEvent event = new QueryExecutionEvent();
+        event.begin();
+        return this.recordExecution(event, null);
+    }
+
+    @Override
+    protected String getKind() {
+        return this.getClass().getSimpleName() + "(" + this.type + ")";
+    }
+}
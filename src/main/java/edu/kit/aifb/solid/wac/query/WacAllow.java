@@ -0,0 +1,143 @@
+package edu.kit.aifb.solid.wac.query;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+
+/**
+ * The access modes granted on a resource to the requesting agent ("user") and
+ * to everyone ("public"), as bitmasks: what a Solid server sends in the
+ * {@code WAC-Allow} header. As {@code acl:Write} implies {@code acl:Append},
+ * a mask with {@link #WRITE} always contains {@link #APPEND}.
+ *
+ * Immutable.
+ */
+public final class WacAllow {
+
+    /**
+     * {@code acl:Read}
+     */
+    public static final int READ = 1;
+    /**
+     * {@code acl:Write}
+     */
+    public static final int WRITE = 1 << 1;
+    /**
+     * {@code acl:Append}
+     */
+    public static final int APPEND = 1 << 2;
+    /**
+     * {@code acl:Control}
+     */
+    public static final int CONTROL = 1 << 3;
+    /**
+     * All access modes.
+     */
+    public static final int ALL = READ | WRITE | APPEND | CONTROL;
+
+    // in the order of the bits
+    static final String[] MODES = {Namespaces.ACL + "Read", Namespaces.ACL + "Write", Namespaces.ACL + "Append", Namespaces.ACL + "Control"};
+    private static final String[] NAMES = {"read", "write", "append", "control"};
+
+    private final int userModes;
+    private final int publicModes;
+
+    /**
+     *
+     * @param userModes the modes granted to the requesting agent
+     * @param publicModes the modes granted to everyone
+     */
+    public WacAllow(int userModes, int publicModes) {
+        if ((userModes & ~ALL) != 0 || (publicModes & ~ALL) != 0) {
+            throw new IllegalArgumentException("Unknown access modes: user=" + userModes + ", public=" + publicModes);
+        }
+        this.userModes = withImplied(userModes | publicModes);
+        this.publicModes = withImplied(publicModes);
+    }
+
+    private static int withImplied(int modes) {
+        return ((modes & WRITE) != 0) ? modes | APPEND : modes;
+    }
+
+    /**
+     * @param mode the URI string of an access mode, e.g. {@code acl:Read}
+     * @return its bit
+     */
+    public static int bitOf(String mode) {
+        for (int i = 0; i < MODES.length; i++) {
+            if (MODES[i].equals(mode)) {
+                return 1 << i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown access mode: " + mode);
+    }
+
+    /**
+     * @return the modes granted to the requesting agent, including the public
+     * modes
+     */
+    public int getUserModes() {
+        return this.userModes;
+    }
+
+    /**
+     * @return the modes granted to everyone
+     */
+    public int getPublicModes() {
+        return this.publicModes;
+    }
+
+    /**
+     * @param mode e.g. {@link #READ}
+     * @return if the requesting agent has the mode
+     */
+    public boolean isUserAllowed(int mode) {
+        return (this.userModes & mode) == mode;
+    }
+
+    /**
+     * @param mode e.g. {@link #READ}
+     * @return if everyone has the mode
+     */
+    public boolean isPublicAllowed(int mode) {
+        return (this.publicModes & mode) == mode;
+    }
+
+    /**
+     * @return the value of the {@code WAC-Allow} header, e.g.
+     * {@code user="read write append",public="read"}
+     */
+    public String toHeader() {
+        return "user=\"" + namesOf(this.userModes) + "\",public=\"" + namesOf(this.publicModes) + "\"";
+    }
+
+    private static String namesOf(int modes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if ((modes & (1 << i)) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(NAMES[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof WacAllow)) {
+            return false;
+        }
+        WacAllow other = (WacAllow) o;
+        return this.userModes == other.userModes && this.publicModes == other.publicModes;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.userModes * 31 + this.publicModes;
+    }
+
+    @Override
+    public String toString() {
+        return this.toHeader();
+    }
+}
@@ -0,0 +1,271 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+
+import edu.kit.aifb.solid.wac.WacMapping;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.ContainerTrie;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+import edu.kit.aifb.solid.wac.patch.N3PatchClassifier;
+import edu.kit.aifb.solid.wac.store.AclStore;
+import edu.kit.aifb.solid.wac.store.MapAclStore;
+import edu.kit.aifb.solid.wac.store.RemoteGroupResolver;
+
+/**
+ * Checks many requests of one agent at once, e.g. for sync or export, or
+ * filters the listing of a container.
+ *
+ * Within a batch, the walk up the containers to the authoritative
+ * {@code .acl}, the compiled rules, the agent group memberships and the
+ * decisions themselves are shared: requests with the same authoritative
+ * {@code .acl}, target and access mode are evaluated only once.
+ */
+public class WacBatch {
+
+    /**
+     * Get a batch in the current application environment.
+     *
+     * @param envResourceMap a mapping of URI string to RDF datasets, s.t. the
+     * query may look up data, .acl or specific agentGroups.
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new batch (for the provided environment)
+     */
+    public static WacBatch newBatch(Map<String, Dataset> envResourceMap, WacMapping envResourceAclMap) {
+        return new WacBatch(new MapAclStore(envResourceMap), envResourceAclMap);
+    }
+
+    /**
+     * Get a batch in the current application environment.
+     *
+     * @param envAclStore loads .acl and agentGroup documents on demand
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new batch (for the provided environment)
+     */
+    public static WacBatch newBatch(AclStore envAclStore, WacMapping envResourceAclMap) {
+        if (envAclStore == null) {
+            throw new IllegalArgumentException("The ACL store must not be null.");
+        }
+        return new WacBatch(envAclStore, envResourceAclMap);
+    }
+
+    private WacBatch(AclStore aclStore, WacMapping resourceAclMap) {
+        this.aclStore = aclStore;
+        this.resourceMap = aclStore.asMap();
+        this.resourceAclMap = resourceAclMap;
+    }
+
+    private final AclStore aclStore;
+    private final Map<String, Dataset> resourceMap;
+    private final WacMapping resourceAclMap;
+
+    // SHARED STRUCTURES (-> optional, created per batch if not set)
+    private AclIndexCache aclIndexCache;
+    private ContainerTrie containerTrie;
+    private GroupMembershipIndex groupMembershipIndex;
+    private RemoteGroupResolver remoteGroupResolver;
+    private N3PatchClassifier patchClassifier;
+
+    private String webid;
+
+    /**
+     * Use a shared cache of compiled ACLs. If not set, the ACLs are compiled
+     * once per batch.
+     *
+     * @param aclIndexCache
+     * @return the batch
+     */
+    public WacBatch usingIndex(AclIndexCache aclIndexCache) {
+        this.aclIndexCache = aclIndexCache;
+        return this;
+    }
+
+    /**
+     * Use a shared container trie. If not set, the containers are probed once
+     * per batch.
+     *
+     * @param containerTrie
+     * @return the batch
+     */
+    public WacBatch usingContainerTrie(ContainerTrie containerTrie) {
+        this.containerTrie = containerTrie;
+        return this;
+    }
+
+    /**
+     * Use a shared reverse index of agent groups. If not set, the group
+     * documents are compiled and each group is checked once per batch.
+     *
+     * @param groupMembershipIndex
+     * @return the batch
+     */
+    public WacBatch usingGroupIndex(GroupMembershipIndex groupMembershipIndex) {
+        this.groupMembershipIndex = groupMembershipIndex;
+        return this;
+    }
+
+    /**
+     * Fetch the agent group documents that are not in the store over HTTP.
+     *
+     * @param remoteGroupResolver
+     * @return the batch
+     */
+    public WacBatch usingRemoteGroups(RemoteGroupResolver remoteGroupResolver) {
+        this.remoteGroupResolver = remoteGroupResolver;
+        return this;
+    }
+
+    /**
+     * Classify PATCH bodies with a specific classifier.
+     *
+     * @param patchClassifier
+     * @return the batch
+     */
+    public WacBatch usingPatchClassifier(N3PatchClassifier patchClassifier) {
+        this.patchClassifier = patchClassifier;
+        return this;
+    }
+
+    /**
+     * Set the webid of the accessing agent. Remains {@code null} if unknown.
+     *
+     * @param webid
+     * @return the batch
+     */
+    public WacBatch byAgent(String webid) {
+        this.webid = webid;
+        return this;
+    }
+
+    /**
+     * Check all requests.
+     *
+     * @param requests
+     * @return the URI strings of the matching access control rules, in the
+     * order of the requests; {@code null} where none matches
+     */
+    public List<String> check(Collection<AccessRequest> requests) {
+        return this.aclStore.read(() -> this.checkAll(requests));
+    }
+
+    private List<String> checkAll(Collection<AccessRequest> requests) {
+        Session session = new Session();
+        List<String> rules = new ArrayList<>(requests.size());
+        for (AccessRequest request : requests) {
+            rules.add(session.check(request.getResource(), request.getMethod(), request.getBody()));
+        }
+        return rules;
+    }
+
+    /**
+     * Filter the listing of a container to the children the agent may read.
+     *
+     * Children without their own {@code .acl} all inherit the same
+     * {@code acl:default} rules, so they are decided together with a single
+     * check; only children with their own {@code .acl} are checked one by
+     * one.
+     *
+     * @param container the URI string of the container
+     * @param children the URI strings of the contained resources
+     * @return the readable children, in the order of the listing
+     */
+    public List<String> filterReadable(String container, Collection<String> children) {
+        return this.aclStore.read(() -> this.filter(container, children));
+    }
+
+    private List<String> filter(String container, Collection<String> children) {
+        if (!container.endsWith("/")) {
+            container = container + "/";
+        }
+        Session session = new Session();
+        List<String> readable = new ArrayList<>();
+        String inheritedRule = null;
+        boolean isInheritedRuleChecked = false;
+        for (String child : children) {
+            String rule;
+            if (this.isInheritingChild(container, child)) {
+                if (!isInheritedRuleChecked) {
+                    inheritedRule = session.check(child, "GET", "");
+                    isInheritedRuleChecked = true;
+                }
+                rule = inheritedRule;
+            } else {
+                rule = session.check(child, "GET", "");
+            }
+            if (rule != null) {
+                readable.add(child);
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * @return if the rules of the child are looked up in the same
+     * {@code .acl} as for all the other children without an {@code .acl}
+     */
+    private boolean isInheritingChild(String container, String child) {
+        if (!child.startsWith(container) || child.length() == container.length()) {
+            return false;
+        }
+        int slash = child.indexOf('/', container.length());
+        if (slash != -1 && slash != child.length() - 1) {
+            return false; // not a direct child
+        }
+        String acl = this.resourceAclMap.getAcl(child);
+        return !acl.equals(child) && !this.resourceMap.containsKey(acl);
+    }
+
+    /**
+     * The structures shared by the requests of one call.
+     */
+    private class Session {
+
+        private final AclIndexCache indexCache = (WacBatch.this.aclIndexCache != null) ? WacBatch.this.aclIndexCache : new AclIndexCache();
+        private final ContainerTrie trie = (WacBatch.this.containerTrie != null) ? WacBatch.this.containerTrie : new ContainerTrie(WacBatch.this.resourceMap, WacBatch.this.resourceAclMap);
+        private final AgentGroupMembership membership = WacBatch.this.memoizedGroupMembership(this.indexCache);
+        private final Map<String, String> decisions = new HashMap<>();
+        private final WacEngine engine = WacEngine
+                .newBuilder(WacBatch.this.aclStore, WacBatch.this.resourceAclMap)
+                .usingIndex(this.indexCache)
+                .usingContainerTrie(this.trie)
+                .usingGroupMembership(this.membership)
+                .usingPatchClassifier(WacBatch.this.patchClassifier)
+                .usingSinglePass()
+                .build();
+
+        String check(String resource, String method, String body) {
+            String accessMode = this.engine.determineAccessMode(resource, method, body);
+            WacEngine.Resolution resolution = this.engine.findAuthoritativeACL(resource);
+            // the decision only depends on the rules, what they are looked up for and the (fixed) agent
+            String key = resolution.authoritativeACLUri + " " + resolution.onResource + " " + resolution.hasInheritedRule + " " + accessMode;
+            if (this.decisions.containsKey(key)) {
+                return this.decisions.get(key);
+            }
+            String rule = this.engine.build(resolution, accessMode, WacBatch.this.webid)[0].exec();
+            this.decisions.put(key, rule);
+            return rule;
+        }
+    }
+
+    /**
+     * The agent is fixed within a batch, so each group needs to be checked only
+     * once.
+     */
+    private AgentGroupMembership memoizedGroupMembership(AclIndexCache indexCache) {
+        AgentGroupMembership local = (this.groupMembershipIndex != null)
+                ? AgentGroupMembership.indexed(this.groupMembershipIndex)
+                : AgentGroupMembership.indexed(indexCache, this.resourceMap);
+        AgentGroupMembership membership = (this.remoteGroupResolver != null)
+                ? AgentGroupMembership.remote(local, this.aclStore, this.remoteGroupResolver)
+                : local;
+        Map<String, Boolean> isMemberOf = new HashMap<>();
+        return (group, webid) -> isMemberOf.computeIfAbsent(group, g -> membership.isMember(g, webid));
+    }
+}
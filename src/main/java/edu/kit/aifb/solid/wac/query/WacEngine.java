@@ -0,0 +1,878 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.WacMapping;
+import edu.kit.aifb.solid.wac.index.AclIndex;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.AclRules;
+import edu.kit.aifb.solid.wac.index.AgentFilters;
+import edu.kit.aifb.solid.wac.index.CompactAcls;
+import edu.kit.aifb.solid.wac.index.CompiledAcls;
+import edu.kit.aifb.solid.wac.index.ContainerTrie;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+import edu.kit.aifb.solid.wac.index.PreparedRequest;
+import edu.kit.aifb.solid.wac.jfr.AclResolutionEvent;
+import edu.kit.aifb.solid.wac.jfr.DecisionEvent;
+import edu.kit.aifb.solid.wac.jfr.PatchClassificationEvent;
+import edu.kit.aifb.solid.wac.metrics.WacMetricsListener;
+import edu.kit.aifb.solid.wac.patch.N3PatchClassifier;
+import edu.kit.aifb.solid.wac.store.AclStore;
+import edu.kit.aifb.solid.wac.store.RemoteGroupResolver;
+import edu.kit.aifb.solid.wac.store.MapAclStore;
+
+/**
+ * Checks the rules for requests. Created once for the application environment
+ * and then shared: the engine is immutable and safe for concurrent use, as
+ * long as the resource map is not modified concurrently.
+ *
+ * The request state lives on the stack of {@link #check(AccessRequest, String)}
+ * only. {@link WacQueryBuilder} is a thin, per-request wrapper around an
+ * engine.
+ */
+public final class WacEngine {
+
+    /**
+     * Get an engine builder in the current application environment:
+     *
+     * @param envResourceMap a mapping of URI string to RDF datasets, s.t. the
+     * query may look up data, .acl or specific agentGroups.
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new builder (for the provided environment)
+     */
+    public static Builder newBuilder(Map<String, Dataset> envResourceMap, WacMapping envResourceAclMap) {
+        return new Builder(new MapAclStore(envResourceMap), envResourceAclMap);
+    }
+
+    /**
+     * Get an engine builder in the current application environment:
+     *
+     * @param envAclStore loads .acl and agentGroup documents on demand
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new builder (for the provided environment)
+     */
+    public static Builder newBuilder(AclStore envAclStore, WacMapping envResourceAclMap) {
+        if (envAclStore == null) {
+            throw new IllegalArgumentException("The ACL store must not be null.");
+        }
+        return new Builder(envAclStore, envResourceAclMap);
+    }
+
+    /**
+     * Get an engine builder in the current application environment: the rules
+     * and agent group memberships are looked up in the compiled documents,
+     * e.g. a memory-mapped {@link edu.kit.aifb.solid.wac.index.AclSnapshot} or
+     * {@link edu.kit.aifb.solid.wac.index.CompactAcls}, no RDF is loaded.
+     *
+     * @param envCompiledAcls the compiled .acl and agentGroup documents
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new builder (for the provided environment)
+     */
+    public static Builder newBuilder(CompiledAcls envCompiledAcls, WacMapping envResourceAclMap) {
+        if (envCompiledAcls == null) {
+            throw new IllegalArgumentException("The compiled ACLs must not be null.");
+        }
+        Builder builder = new Builder(new CompiledAclStore(envCompiledAcls), envResourceAclMap);
+        builder.compiledAcls = envCompiledAcls;
+        return builder;
+    }
+
+    // PATCH CLASSIFICATION (-> isForNonDeletingRequest)
+    static final N3PatchClassifier DEFAULT_PATCH_CLASSIFIER = new N3PatchClassifier();
+
+    // RESOURCE DATA (-> for lookup of resources, e.g. .acl and resources of agentGroup)
+    private final AclStore aclStore;
+
+    // RESOURCE-ACL MAP (-> isForControlRequest)
+    private final WacMapping resourceAclMap;
+
+    private final AclIndexCache aclIndexCache;
+    private final CompiledAcls compiledAcls;
+    private final AgentFilters agentFilters;
+    private final boolean isSinglePass;
+    private final boolean isPrecompiled;
+    private final AgentGroupMembership agentGroupMembership;
+    private final GroupMembershipIndex groupMembershipIndex;
+    private final ContainerTrie containerTrie;
+    private final N3PatchClassifier patchClassifier;
+    private final Executor executor;
+    private final WacMetricsListener metrics;
+    private final boolean isMeasuring;
+
+    private WacEngine(Builder builder) {
+        this.aclStore = builder.aclStore;
+        this.resourceAclMap = builder.resourceAclMap;
+        this.aclIndexCache = builder.aclIndexCache;
+        this.compiledAcls = builder.compiledAcls;
+        this.agentFilters = builder.agentFilters;
+        this.isSinglePass = builder.isSinglePass;
+        this.isPrecompiled = builder.isPrecompiled;
+        this.groupMembershipIndex = builder.groupMembershipIndex;
+        this.containerTrie = builder.containerTrie;
+        this.patchClassifier = (builder.patchClassifier != null) ? builder.patchClassifier : DEFAULT_PATCH_CLASSIFIER;
+        Executor executor = (builder.executor != null) ? builder.executor : AsyncEvaluation.DEFAULT_EXECUTOR;
+        // each task reads the store on its own thread
+        this.executor = task -> executor.execute(() -> this.aclStore.read(() -> {
+            task.run();
+            return null;
+        }));
+        this.metrics = (builder.metrics != null) ? builder.metrics : WacMetricsListener.NOOP;
+        this.isMeasuring = this.metrics != WacMetricsListener.NOOP;
+        AgentGroupMembership membership;
+        if (builder.agentGroupMembership != null) {
+            membership = builder.agentGroupMembership;
+        } else if (builder.groupMembershipIndex != null) {
+            membership = AgentGroupMembership.indexed(builder.groupMembershipIndex);
+        } else if (builder.compiledAcls != null) {
+            membership = builder.compiledAcls::hasMember;
+        } else if (builder.aclIndexCache != null) {
+            membership = AgentGroupMembership.indexed(builder.aclIndexCache, builder.aclStore.asMap());
+        } else {
+            membership = AgentGroupMembership.sparql(builder.aclStore.asMap());
+        }
+        if (builder.remoteGroupResolver != null) {
+            membership = AgentGroupMembership.remote(membership, builder.aclStore, builder.remoteGroupResolver);
+        }
+        this.agentGroupMembership = AgentGroupMembership.recorded(membership);
+    }
+
+    /**
+     * Check the rules! If webid == null, then the request is assumed to be
+     * unauthenticated.
+     *
+     * @param request
+     * @param webid if != null, it is assumed to be authenticated
+     * @return the URI String of the matching access control rule or
+     * {@code null} if none matches
+     */
+    public String check(AccessRequest request, String webid) {
+        return this.aclStore.read(() -> this.decide(request, webid));
+    }
+
+    /**
+     * Evaluate all access modes on a resource at once, for the requesting agent
+     * and for everyone, e.g. for the {@code WAC-Allow} header: the
+     * authoritative .acl is resolved once, and its (compiled) rules are looked
+     * up for each mode. Without an index, the .acl is compiled for this call.
+     * On an .acl itself, all modes are granted with {@code acl:Control}.
+     *
+     * @param resource
+     * @param webid if != null, it is assumed to be authenticated
+     * @return the granted modes
+     */
+    public WacAllow checkModes(String resource, String webid) {
+        if (resource == null) {
+            throw new IllegalArgumentException("Cannot check access for resource `null`");
+        }
+        return this.aclStore.read(() -> {
+            Resolution resolution = this.findAuthoritativeACL(resource);
+            AclRules rules = this.isIndexed() ? this.rulesOf(resolution) : AclIndex.compile(resolution.authoritativeACL);
+            int userModes = 0;
+            int publicModes = 0;
+            for (int i = 0; i < WacAllow.MODES.length; i++) {
+                String mode = WacAllow.MODES[i];
+                if (rules.findPublicRule(resolution.onResource, resolution.hasInheritedRule, mode) != null) {
+                    publicModes |= 1 << i;
+                } else if (webid != null && rules.findRule(resolution.onResource, resolution.hasInheritedRule, mode, webid,
+                        group -> this.agentGroupMembership.isMember(group, webid)) != null) {
+                    userModes |= 1 << i;
+                }
+            }
+            if (this.isForControlRequest(resource)) {
+                userModes = ((userModes | publicModes) & WacAllow.CONTROL) != 0 ? WacAllow.ALL : 0;
+                publicModes = ((publicModes & WacAllow.CONTROL) != 0) ? WacAllow.ALL : 0;
+            }
+            return new WacAllow(userModes, publicModes);
+        });
+    }
+
+    /**
+     * Classify the request and find its authoritative .acl once, s.t. it can
+     * be checked again and again with {@link #check(PreparedRequest)} without
+     * allocating. Only for engines on {@link CompactAcls}.
+     *
+     * @param request
+     * @param webid if != null, it is assumed to be authenticated
+     * @return the prepared request, valid as long as the compiled ACLs are
+     * not replaced
+     */
+    public PreparedRequest prepare(AccessRequest request, String webid) {
+        if (!(this.compiledAcls instanceof CompactAcls)) {
+            throw new IllegalStateException("Only requests on compact ACLs can be prepared.");
+        }
+        CompactAcls compactAcls = (CompactAcls) this.compiledAcls;
+        return this.aclStore.read(() -> {
+            String accessMode = this.determineAccessMode(request.getResource(), request.getMethod(), request.getBody());
+            Resolution resolution = this.findAuthoritativeACL(request.getResource());
+            return compactAcls.prepare(resolution.authoritativeACLUri, resolution.onResource, resolution.hasInheritedRule, accessMode, webid);
+        });
+    }
+
+    /**
+     * Check a prepared request: a few lookups of ids in the compact ACLs,
+     * without allocating, recording JFR events or notifying the metrics.
+     *
+     * @param request prepared by this engine
+     * @return the URI String of the matching access control rule or
+     * {@code null} if none matches
+     */
+    public String check(PreparedRequest request) {
+        if (!(this.compiledAcls instanceof CompactAcls)) {
+            throw new IllegalStateException("Only requests on compact ACLs can be prepared.");
+        }
+        return ((CompactAcls) this.compiledAcls).check(request);
+    }
+
+    /**
+     * @return the URI strings of all documents of the store
+     */
+    Set<String> documents() {
+        return this.aclStore.uris();
+    }
+
+    /**
+     * Warm up the structures for a document, see {@link WarmUp}: load (i.e.
+     * parse) it, compile it into the index, agent filters and group index the
+     * engine uses and, if it is an .acl, walk the container trie down to its
+     * resource and evaluate the public rules for reading the resource once.
+     *
+     * @param uri the URI string of the .acl or agent group document
+     * @return if the document exists
+     */
+    boolean warm(String uri) {
+        return this.aclStore.read(() -> {
+            Dataset dataset = this.aclStore.load(uri);
+            if (dataset == null) {
+                return false;
+            }
+            if (this.aclIndexCache != null) {
+                this.aclIndexCache.get(uri, dataset);
+            }
+            if (this.agentFilters != null && this.compiledAcls == null) {
+                this.agentFilters.prepare(uri, dataset);
+            }
+            if (this.groupMembershipIndex != null) {
+                this.groupMembershipIndex.ensureIndexed(uri);
+            }
+            String resource = this.isForControlRequest(uri) ? this.resourceAclMap.getResource(uri) : null;
+            if (resource != null) {
+                if (this.containerTrie != null) {
+                    this.containerTrie.prime(resource);
+                }
+                // without metrics and events, the queries are the same as for a GET of an unauthenticated agent
+                Resolution resolution = this.resolve(resource);
+                for (WacQuery query : this.build(resolution, Namespaces.ACL + "Read", null)) {
+                    query.exec();
+                }
+            }
+            return true;
+        });
+    }
+
+    private String decide(AccessRequest request, String webid) {
+        DecisionEvent event = new DecisionEvent();
+        event.begin();
+        long start = this.isMeasuring ? System.nanoTime() : 0;
+        CountingGroupMembership membership = this.isMeasuring ? new CountingGroupMembership(this.agentGroupMembership) : null;
+        Prepared prepared = this.prepare(request, webid, membership);
+        String ruleMatch = null;
+        for (int i = 0; i < prepared.queries.length && ruleMatch == null; i++) {
+            if (this.isMeasuring) {
+                long queryStart = System.nanoTime();
+                ruleMatch = prepared.queries[i].exec();
+                this.metrics.queryExecuted(this.typeOf(i), ruleMatch != null, System.nanoTime() - queryStart);
+            } else {
+                ruleMatch = prepared.queries[i].exec();
+            }
+        }
+        event.record(request.getResource(), prepared.accessMode, ruleMatch);
+        if (this.isMeasuring) {
+            this.metrics.decided(ruleMatch != null, membership.getDocumentCount(), System.nanoTime() - start);
+        }
+        return ruleMatch;
+    }
+
+    /**
+     * Check the rules without blocking: the queries are evaluated concurrently
+     * and the result is known as soon as the rule with the highest priority
+     * matched, i.e. all queries of higher priority found no rule. Then, the
+     * remaining queries are cancelled: those not started yet are skipped,
+     * while a query (or group lookup) already running is not interrupted and
+     * runs to completion, its result is ignored. Agent group memberships are
+     * checked in parallel, too.
+     *
+     * @param request
+     * @param webid if != null, it is assumed to be authenticated
+     * @return the future URI String of the matching access control rule or
+     * {@code null} if none matches. Cancelling it skips the queries not
+     * started yet.
+     */
+    public CompletableFuture<String> checkAsync(AccessRequest request, String webid) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        DecisionEvent event = new DecisionEvent();
+        event.begin();
+        long start = this.isMeasuring ? System.nanoTime() : 0;
+        CountingGroupMembership membership = this.isMeasuring ? new CountingGroupMembership(this.agentGroupMembership) : null;
+        CompletableFuture.supplyAsync(() -> this.prepare(request, webid, membership), this.executor).whenComplete((prepared, e) -> {
+            if (e != null) {
+                result.completeExceptionally(AsyncEvaluation.unwrap(e));
+                return;
+            }
+            if (result.isDone()) {
+                return; // cancelled
+            }
+            List<CompletableFuture<String>> futures = new ArrayList<>(prepared.queries.length);
+            for (int i = 0; i < prepared.queries.length; i++) {
+                CompletableFuture<String> future = prepared.queries[i].execAsync(this.executor);
+                if (this.isMeasuring) {
+                    WacQueryType type = this.typeOf(i);
+                    long queryStart = System.nanoTime();
+                    future.whenComplete((ruleMatch, x) -> {
+                        if (x == null) {
+                            this.metrics.queryExecuted(type, ruleMatch != null, System.nanoTime() - queryStart);
+                        }
+                    });
+                }
+                futures.add(future);
+            }
+            result.whenComplete((ruleMatch, x) -> {
+                if (x == null) {
+                    event.record(request.getResource(), prepared.accessMode, ruleMatch);
+                }
+            });
+            AsyncEvaluation.propagate(AsyncEvaluation.firstNonNull(futures), result);
+        });
+        if (this.isMeasuring) {
+            result.whenComplete((ruleMatch, e) -> {
+                if (e == null) {
+                    this.metrics.decided(ruleMatch != null, membership.getDocumentCount(), System.nanoTime() - start);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Build all {@link WacQuery} for a request.
+     *
+     * @param request
+     * @param webid if != null, it is assumed to be authenticated
+     * @return the queries, see {@link WacQueryBuilder#build()}
+     */
+    public WacQuery[] build(AccessRequest request, String webid) {
+        return this.prepare(request, webid, null).queries;
+    }
+
+    private Prepared prepare(AccessRequest request, String webid, AgentGroupMembership membership) {
+        String accessMode = this.determineAccessMode(request.getResource(), request.getMethod(), request.getBody());
+        Resolution resolution = this.findAuthoritativeACL(request.getResource());
+        WacQuery[] queries = this.build(resolution, accessMode, webid, (membership != null) ? membership : this.agentGroupMembership);
+        return new Prepared(accessMode, queries);
+    }
+
+    /**
+     * The queries for a request and its access mode.
+     */
+    private static final class Prepared {
+
+        final String accessMode;
+        final WacQuery[] queries;
+
+        Prepared(String accessMode, WacQuery[] queries) {
+            this.accessMode = accessMode;
+            this.queries = queries;
+        }
+    }
+
+    /**
+     * @return the kind of the i-th query built by this engine, {@code null}
+     * for a single pass
+     */
+    private WacQueryType typeOf(int i) {
+        return (this.isSinglePass) ? null : WacQueryType.values()[i];
+    }
+
+    /**
+     * Counts the distinct agent group documents consulted for a request.
+     */
+    private static final class CountingGroupMembership implements AgentGroupMembership {
+
+        private final AgentGroupMembership membership;
+        private final Set<String> documents = ConcurrentHashMap.newKeySet();
+
+        CountingGroupMembership(AgentGroupMembership membership) {
+            this.membership = membership;
+        }
+
+        @Override
+        public boolean isMember(String group, String webid) {
+            this.documents.add(GroupMembershipIndex.documentOf(group));
+            return this.membership.isMember(group, webid);
+        }
+
+        int getDocumentCount() {
+            return this.documents.size();
+        }
+    }
+
+    /**
+     * Where the rules for a request are looked up.
+     */
+    static final class Resolution {
+
+        final Dataset authoritativeACL;
+        final String authoritativeACLUri;
+        final String onResource;
+        final boolean hasInheritedRule;
+        // number of containers walked up, 0 if the resource has its own .acl
+        final int inheritanceDepth;
+
+        Resolution(Dataset authoritativeACL, String authoritativeACLUri, String onResource, boolean hasInheritedRule, int inheritanceDepth) {
+            this.authoritativeACL = authoritativeACL;
+            this.authoritativeACLUri = authoritativeACLUri;
+            this.onResource = onResource;
+            this.hasInheritedRule = hasInheritedRule;
+            this.inheritanceDepth = inheritanceDepth;
+        }
+    }
+
+    /**
+     * If the target {@code resource} of the request is the {@code .acl} itself,
+     * then {@code acl:mode acl:Control} is required.
+     *
+     * @param resource
+     * @return isControlling
+     */
+    boolean isForControlRequest(String resource) {
+        return resource.equals(this.resourceAclMap.getAcl(resource));
+    }
+
+    /**
+     * Check if the request is not deleting, i.e. at most appending to the
+     * resource. See N3 patch
+     * {@link https://solidproject.org/TR/protocol#writing-resources}.
+     *
+     * @param method
+     * @param body
+     * @return isForNonDeletingRequest
+     */
+    boolean isForNonDeletingRequest(String method, String body) {
+        switch (method) {
+            case "GET", "HEAD", "POST" -> {
+                // if on resource then not allowed anyway - on ldp:Container it is append.
+                return true;
+            }
+            case "PUT", "DELETE" -> {
+                return false;
+            }
+            case "PATCH" -> {
+                return this.patchClassifier.isNonDeleting(body); // isOnlyAppending
+            }
+            default ->
+                throw new IllegalArgumentException("Unknown HTTP method");
+        }
+    }
+
+    /**
+     * Retrieve the access mode.
+     *
+     * If acl:Append is retrieved, of course, an acl:Write is also acceptable in
+     * a rule.
+     *
+     * @param resource
+     * @param method
+     * @param body
+     * @return the access mode URI string
+     */
+    String determineAccessMode(String resource, String method, String body) {
+        PatchClassificationEvent event = new PatchClassificationEvent();
+        event.begin();
+        long start = this.isMeasuring ? System.nanoTime() : 0;
+        boolean isForNonDeletingRequest = this.isForNonDeletingRequest(method, body);
+        if (this.isMeasuring) {
+            this.metrics.requestClassified(method, isForNonDeletingRequest, System.nanoTime() - start);
+        }
+        if ("PATCH".equals(method)) {
+            event.record(resource, (body == null) ? 0 : body.length(), isForNonDeletingRequest);
+        }
+        if (this.isForControlRequest(resource)) {
+            return Namespaces.ACL + "Control";
+        }
+        switch (method) {
+            case "GET":
+            case "HEAD":
+                return Namespaces.ACL + "Read";
+            case "POST":
+            case "PATCH":
+                if (isForNonDeletingRequest) {
+                    // if it is "non deleting / only appending" request then an acl:Append would suffice.
+                    return Namespaces.ACL + "Append";
+                }
+            // if we receive a request, which is NOT "only appending to a resource",
+            // i.e. also deletes something, then we need acl:Write
+            case "PUT":
+            case "DELETE":
+                return Namespaces.ACL + "Write";
+            default:
+                throw new IllegalArgumentException("Unknown HTTP method");
+        }
+    }
+
+    /**
+     * Find the {@code .acl} of the resource or, if there is none, of the
+     * closest container that has one.
+     *
+     * @param resource the target of the request
+     * @return where to look up the rules
+     */
+    Resolution findAuthoritativeACL(String resource) {
+        AclResolutionEvent event = new AclResolutionEvent();
+        event.begin();
+        long start = this.isMeasuring ? System.nanoTime() : 0;
+        Resolution resolution = this.resolve(resource);
+        if (this.isMeasuring) {
+            this.metrics.aclResolved(resolution.authoritativeACLUri, resolution.inheritanceDepth, System.nanoTime() - start);
+        }
+        event.record(resource, resolution.authoritativeACLUri, resolution.inheritanceDepth);
+        return resolution;
+    }
+
+    private Resolution resolve(String resource) {
+        String res = resource;
+        if (this.isForControlRequest(res)) {
+            res = this.resourceAclMap.getResource(res);
+        }
+        String currentAclUriString = this.resourceAclMap.getAcl(res);
+        Dataset currentAcl = this.lookup(currentAclUriString);
+        // found .acl ?
+        if (currentAcl != null) {
+            return new Resolution(currentAcl, currentAclUriString, res, false, 0);
+        }
+        // > not found.
+        if (this.containerTrie != null) {
+            return this.findInheritedACL(res);
+        }
+        int depth = 0;
+        while (true) {
+            // check for directory .acl ...
+            String dir = res;
+            if (res.endsWith("/")) {
+                // is already directory
+                dir = dir.substring(0, dir.length() - 1);
+                // > omit last slash
+            }
+            // move one directory up
+            int lastIndexOfSlash = dir.lastIndexOf("/");
+            // was root directory?
+            if (dir.indexOf("://") == lastIndexOfSlash - 2) {
+                return new Resolution(DatasetFactory.create(), null, res, true, depth); // nothing found, give back empty root .acl.
+            }
+            res = dir.substring(0, lastIndexOfSlash + 1);
+            depth++;
+            currentAclUriString = this.resourceAclMap.getAcl(res);
+            currentAcl = this.lookup(currentAclUriString);
+            if (currentAcl != null) {
+                return new Resolution(currentAcl, currentAclUriString, res, true, depth);
+            }
+        }
+    }
+
+    /**
+     * Only load an {@code .acl} that exists, s.t. a store does not load (or
+     * fail to load) the {@code .acl}s missing on the way up.
+     */
+    private Dataset lookup(String aclUriString) {
+        return (aclUriString != null && this.aclStore.exists(aclUriString)) ? this.aclStore.load(aclUriString) : null;
+    }
+
+    /**
+     * Like the walk in {@link #findAuthoritativeACL(String)}, but a single walk
+     * of the container trie.
+     */
+    private Resolution findInheritedACL(String res) {
+        ContainerTrie.Node container = this.containerTrie.findInheritingContainer(res);
+        String aclUriString = (container == null) ? null : this.containerTrie.getAcl(container);
+        Dataset acl = this.lookup(aclUriString);
+        if (acl == null) {
+            int root = res.indexOf('/', res.indexOf("://") + 3);
+            String rootUri = (root == -1) ? res : res.substring(0, root + 1);
+            return new Resolution(DatasetFactory.create(), null, rootUri, true, depthBelow(rootUri, res)); // nothing found, give back empty root .acl.
+        }
+        return new Resolution(acl, aclUriString, container.getUri(), true, depthBelow(container.getUri(), res));
+    }
+
+    /**
+     * @return the number of path segments of the resource below the container
+     */
+    private static int depthBelow(String container, String res) {
+        int end = res.endsWith("/") ? res.length() - 1 : res.length();
+        int depth = 0;
+        for (int i = container.length(); i < end; i++) {
+            if (res.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return (end > container.length()) ? depth + 1 : depth;
+    }
+
+    private boolean isIndexed() {
+        return this.compiledAcls != null || this.aclIndexCache != null;
+    }
+
+    /**
+     * @return the compiled rules of the authoritative .acl, from the compiled
+     * documents if there are any
+     */
+    private AclRules rulesOf(Resolution resolution) {
+        if (this.compiledAcls != null) {
+            return this.compiledAcls.get(resolution.authoritativeACLUri);
+        }
+        return this.aclIndexCache.get(resolution.authoritativeACLUri, resolution.authoritativeACL);
+    }
+
+    /**
+     * Build the queries for a resolved request.
+     *
+     * @param resolution
+     * @param accessMode
+     * @param webid
+     * @return the queries
+     */
+    WacQuery[] build(Resolution resolution, String accessMode, String webid) {
+        return this.build(resolution, accessMode, webid, this.agentGroupMembership);
+    }
+
+    private WacQuery[] build(Resolution resolution, String accessMode, String webid, AgentGroupMembership membership) {
+        Dataset acl = resolution.authoritativeACL;
+        String onResource = resolution.onResource;
+        boolean hasInheritedRule = resolution.hasInheritedRule;
+        if (this.isSinglePass) {
+            WacQuery query;
+            if (this.isIndexed()) {
+                AclRules index = this.rulesOf(resolution);
+                query = new IndexedQueryForAnyAgent(acl, index, onResource, hasInheritedRule, accessMode, webid, membership);
+            } else if (this.isPrecompiled) {
+                query = new PrecompiledQuery(null, acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            } else {
+                query = new QueryForAnyAgent(acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            }
+            WacQuery[] result = {query};
+            return result;
+        }
+        boolean isAgentSkipped = this.isAgentSkipped(resolution, webid);
+        boolean isGroupSkipped = this.isGroupSkipped(resolution, webid);
+        if (this.isIndexed()) {
+            AclRules index = this.rulesOf(resolution);
+            WacQuery pub = new IndexedQuery(WacQueryType.PUBLIC, acl, index, onResource, hasInheritedRule, accessMode, webid, membership);
+            if (webid == null) {
+                WacQuery[] result = {pub};
+                return result;
+            }
+            WacQuery authn = new IndexedQuery(WacQueryType.AUTHENTICATED, acl, index, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery agent = isAgentSkipped ? new SkippedQuery(WacQueryType.AGENT, acl, onResource, accessMode)
+                    : new IndexedQuery(WacQueryType.AGENT, acl, index, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery group = isGroupSkipped ? new SkippedQuery(WacQueryType.AGENT_GROUP, acl, onResource, accessMode)
+                    : new IndexedQuery(WacQueryType.AGENT_GROUP, acl, index, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery[] result = {pub, authn, agent, group};
+            return result;
+        }
+        if (this.isPrecompiled) {
+            WacQuery pub = new PrecompiledQuery(WacQueryType.PUBLIC, acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            if (webid == null) {
+                WacQuery[] result = {pub};
+                return result;
+            }
+            WacQuery authn = new PrecompiledQuery(WacQueryType.AUTHENTICATED, acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery agent = isAgentSkipped ? new SkippedQuery(WacQueryType.AGENT, acl, onResource, accessMode)
+                    : new PrecompiledQuery(WacQueryType.AGENT, acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery group = isGroupSkipped ? new SkippedQuery(WacQueryType.AGENT_GROUP, acl, onResource, accessMode)
+                    : new PrecompiledQuery(WacQueryType.AGENT_GROUP, acl, onResource, hasInheritedRule, accessMode, webid, membership);
+            WacQuery[] result = {pub, authn, agent, group};
+            return result;
+        }
+        WacQuery pub = new QueryForPublic(acl, onResource, hasInheritedRule, accessMode);
+        if (webid == null) {
+            WacQuery[] result = {pub};
+            return result;
+        }
+        WacQuery authn = new QueryForAuthenticated(acl, onResource, hasInheritedRule, accessMode);
+        WacQuery agent = isAgentSkipped ? new SkippedQuery(WacQueryType.AGENT, acl, onResource, accessMode)
+                : new QueryForAgent(acl, onResource, hasInheritedRule, accessMode, webid);
+        WacQuery group = isGroupSkipped ? new SkippedQuery(WacQueryType.AGENT_GROUP, acl, onResource, accessMode)
+                : new QueryForAgentGroup(acl, onResource, hasInheritedRule, accessMode, webid, membership);
+        WacQuery[] result = {pub, authn, agent, group};
+        return result;
+    }
+
+    /**
+     * @return if the agent filters rule out that the authoritative .acl grants
+     * the agent access via acl:agent
+     */
+    private boolean isAgentSkipped(Resolution resolution, String webid) {
+        return this.isFiltering(resolution, webid) && !this.agentFilters.mightGrantAgent(resolution.authoritativeACLUri, resolution.authoritativeACL, webid);
+    }
+
+    /**
+     * @return if the agent filters rule out that the authoritative .acl grants
+     * the agent access via acl:agentGroup
+     */
+    private boolean isGroupSkipped(Resolution resolution, String webid) {
+        return this.isFiltering(resolution, webid) && !this.agentFilters.mightGrantGroup(resolution.authoritativeACLUri, resolution.authoritativeACL, webid, this::lookup);
+    }
+
+    private boolean isFiltering(Resolution resolution, String webid) {
+        // compiled ACLs have no RDF to build filters from, and look up rules as cheaply
+        return this.agentFilters != null && this.compiledAcls == null && webid != null && resolution.authoritativeACLUri != null;
+    }
+
+    /**
+     * Collects the (shared) structures the engine uses, see the corresponding
+     * methods of {@link WacQueryBuilder}.
+     */
+    public static final class Builder {
+
+        private final AclStore aclStore;
+        private final WacMapping resourceAclMap;
+        private AclIndexCache aclIndexCache;
+        private CompiledAcls compiledAcls;
+        private AgentFilters agentFilters;
+        private RemoteGroupResolver remoteGroupResolver;
+        private boolean isSinglePass = false;
+        private boolean isPrecompiled = false;
+        private GroupMembershipIndex groupMembershipIndex;
+        private AgentGroupMembership agentGroupMembership;
+        private ContainerTrie containerTrie;
+        private N3PatchClassifier patchClassifier;
+        private Executor executor;
+        private WacMetricsListener metrics;
+
+        private Builder(AclStore aclStore, WacMapping resourceAclMap) {
+            this.aclStore = aclStore;
+            this.resourceAclMap = resourceAclMap;
+        }
+
+        /**
+         * @param aclIndexCache evaluate the rules against compiled ACLs, if
+         * {@code null} SPARQL is used
+         * @return the builder
+         */
+        public Builder usingIndex(AclIndexCache aclIndexCache) {
+            this.aclIndexCache = aclIndexCache;
+            return this;
+        }
+
+        /**
+         * @param agentFilters skip the agent and agent group rules if the
+         * filters rule out that the .acl mentions the agent, not in a single
+         * pass or with compiled ACLs
+         * @return the builder
+         */
+        public Builder usingAgentFilters(AgentFilters agentFilters) {
+            this.agentFilters = agentFilters;
+            return this;
+        }
+
+        /**
+         * @param groupMembershipIndex look up agent group memberships in a
+         * reverse index
+         * @return the builder
+         */
+        public Builder usingGroupIndex(GroupMembershipIndex groupMembershipIndex) {
+            this.groupMembershipIndex = groupMembershipIndex;
+            return this;
+        }
+
+        /**
+         * @param remoteGroupResolver fetch the agent group documents that are
+         * not in the store
+         * @return the builder
+         */
+        public Builder usingRemoteGroups(RemoteGroupResolver remoteGroupResolver) {
+            this.remoteGroupResolver = remoteGroupResolver;
+            return this;
+        }
+
+        Builder usingGroupMembership(AgentGroupMembership agentGroupMembership) {
+            this.agentGroupMembership = agentGroupMembership;
+            return this;
+        }
+
+        /**
+         * @param containerTrie find inherited rules with a walk of the trie
+         * @return the builder
+         */
+        public Builder usingContainerTrie(ContainerTrie containerTrie) {
+            this.containerTrie = containerTrie;
+            return this;
+        }
+
+        /**
+         * @param patchClassifier classify PATCH bodies with this classifier
+         * @return the builder
+         */
+        public Builder usingPatchClassifier(N3PatchClassifier patchClassifier) {
+            this.patchClassifier = patchClassifier;
+            return this;
+        }
+
+        /**
+         * Match all rules in a single pass.
+         *
+         * @return the builder
+         */
+        public Builder usingSinglePass() {
+            this.isSinglePass = true;
+            return this;
+        }
+
+        /**
+         * Evaluate SPARQL from precompiled templates.
+         *
+         * @return the builder
+         */
+        public Builder usingPrecompiledQueries() {
+            this.isPrecompiled = true;
+            return this;
+        }
+
+        /**
+         * @param executor run {@link WacEngine#checkAsync(AccessRequest, String)}
+         * on this executor instead of virtual threads (Java 21) or the common
+         * pool
+         * @return the builder
+         */
+        public Builder usingExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param metrics notified about the stages of each check
+         * @return the builder
+         */
+        public Builder usingMetrics(WacMetricsListener metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @return the engine
+         */
+        public WacEngine build() {
+            return new WacEngine(this);
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package edu.kit.aifb.solid.wac.query;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.apache.jena.query.Dataset;
 
 import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.jfr.QueryExecutionEvent;
 
 /**
  * Just a little abstract class to provide the base functionality for
@@ -17,6 +21,8 @@ public abstract class WacQuery {
 
     protected final String VARIABLE_FOR_AUTHORIZATION = "?authz";
     protected final Dataset authoritativeACL;
+    private final String onResource;
+    private final String forMode;
     private String queryBGPs;
 
     /**
@@ -28,6 +34,8 @@ public abstract class WacQuery {
      */
     public WacQuery(Dataset inAuthoritativeACL, String onResource, boolean isLookingForInheritedRule, String forMode) {
         this.authoritativeACL = inAuthoritativeACL;
+        this.onResource = onResource;
+        this.forMode = forMode;
 
         StringBuilder queryBGPsb = new StringBuilder();
 
@@ -59,6 +67,20 @@ public abstract class WacQuery {
         // (2) specify how these BGPs are used in a query or multiple queries in exec().
     }
 
+    /**
+     * For implementations that do not evaluate SPARQL, i.e. no BGPs are
+     * generated.
+     *
+     * @param inAuthoritativeACL
+     * @param onResource
+     * @param forMode
+     */
+    protected WacQuery(Dataset inAuthoritativeACL, String onResource, String forMode) {
+        this.authoritativeACL = inAuthoritativeACL;
+        this.onResource = onResource;
+        this.forMode = forMode;
+    }
+
     protected void appendToQueryBGPs(String bgps) {
         this.queryBGPs += bgps;
     }
@@ -82,6 +104,25 @@ public abstract class WacQuery {
                             """, Namespaces.ACL, this.VARIABLE_FOR_AUTHORIZATION, this.queryBGPs);
     }
 
+    /**
+     * Commit a JFR event for an execution of this query (if recorded).
+     *
+     * @param event begun before the execution
+     * @param rule the result of the execution
+     * @return the rule
+     */
+    protected String recordExecution(QueryExecutionEvent event, String rule) {
+        event.record(this.getKind(), this.onResource, this.forMode, rule != null);
+        return rule;
+    }
+
+    /**
+     * @return the kind of query, e.g. for JFR events
+     */
+    protected String getKind() {
+        return this.getClass().getSimpleName();
+    }
+
     /**
      * execute the query
      *
@@ -89,4 +130,16 @@ public abstract class WacQuery {
      * {@code null} if no rule was found
      */
     public abstract String exec();
+
+    /**
+     * execute the query on an executor, see
+     * {@link WacEngine#checkAsync(AccessRequest, String)}
+     *
+     * @param executor
+     * @return the future result of {@link #exec()}, cancelling it before it
+     * started skips the query
+     */
+    public CompletableFuture<String> execAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::exec, executor);
+    }
 }
@@ -1,26 +1,26 @@
 package edu.kit.aifb.solid.wac.query;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.jena.query.Dataset;
-import org.apache.jena.query.DatasetFactory;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.riot.RDFLanguages;
-import org.apache.jena.riot.RDFParser;
-import org.apache.jena.riot.system.ErrorHandlerFactory;
-
-import edu.kit.aifb.solid.wac.Namespaces;
+
 import edu.kit.aifb.solid.wac.WacMapping;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.AgentFilters;
+import edu.kit.aifb.solid.wac.index.CompiledAcls;
+import edu.kit.aifb.solid.wac.index.ContainerTrie;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+import edu.kit.aifb.solid.wac.metrics.WacMetricsListener;
+import edu.kit.aifb.solid.wac.patch.N3PatchClassifier;
+import edu.kit.aifb.solid.wac.store.AclStore;
+import edu.kit.aifb.solid.wac.store.RemoteGroupResolver;
 
 /**
  * A builder-pattern for ACL Queries ({@link WacQueryType}).
+ *
+ * Holds the state of a single request; the rules are evaluated by a
+ * {@link WacEngine}. To share prepared state across requests and threads,
+ * use a {@link WacEngine} directly.
  */
 public class WacQueryBuilder {
 
@@ -35,36 +35,88 @@ public class WacQueryBuilder {
      * @return a new builder (for the provided environment)
      */
     public static WacQueryBuilder newBuilder(Map<String, Dataset> envResourceMap, WacMapping envResourceAclMap) {
-        return new WacQueryBuilder(envResourceMap, envResourceAclMap);
+        return new WacQueryBuilder(WacEngine.newBuilder(envResourceMap, envResourceAclMap));
     }
 
-    private WacQueryBuilder(Map<String, Dataset> resourceMap, WacMapping resourceAclMap) {
-        this.resourceMap = resourceMap;
-        this.resourceAclMap = resourceAclMap;
+    /**
+     *
+     * Get a query builder in the current application environment:
+     *
+     * @param envAclStore loads .acl and agentGroup documents on demand
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new builder (for the provided environment)
+     */
+    public static WacQueryBuilder newBuilder(AclStore envAclStore, WacMapping envResourceAclMap) {
+        return new WacQueryBuilder(WacEngine.newBuilder(envAclStore, envResourceAclMap));
+    }
+
+    /**
+     *
+     * Get a query builder in the current application environment:
+     *
+     * @param envCompiledAcls the compiled .acl and agentGroup documents, e.g.
+     * a snapshot
+     * @param envResourceAclMap a mapping of URI string of a resource to its
+     * corresponding .acl
+     * @return a new builder (for the provided environment)
+     */
+    public static WacQueryBuilder newBuilder(CompiledAcls envCompiledAcls, WacMapping envResourceAclMap) {
+        return new WacQueryBuilder(WacEngine.newBuilder(envCompiledAcls, envResourceAclMap));
     }
 
-    // RESOURCE DATA (-> for lookup of resources, e.g. .acl and resources of agentGroup)
-    private final Map<String, Dataset> resourceMap;
+    private WacQueryBuilder(WacEngine.Builder engineBuilder) {
+        this.engineBuilder = engineBuilder;
+    }
 
-    // RESOURCE-ACL MAP (-> isForControlRequest)
-    private final WacMapping resourceAclMap;
+    // ENGINE OPTIONS (-> compiled ACLs, group index, container trie, PATCH classification, ...)
+    private final WacEngine.Builder engineBuilder;
+    // built on first use, reset by each option
+    private WacEngine engine;
 
     // REQUEST DATA
     private String resource;
-    private String method;
-    private String body;
     private String webid;
 
     // REQUEST PROPERTIES
-    private boolean isForControlRequest = false;
-    private boolean isForNonDeletingRequest = false;
     private String accessMode;
 
     // ACL DATA
     Dataset authoritativeACL;
+    String authoritativeACLUri;
     String onResource;
     boolean hasInheritedRule = false;
 
+    /**
+     * Classify PATCH bodies with a specific classifier, e.g. one with a body
+     * size limit. Must be set before
+     * {@link #forRequest(String, String, String)}.
+     *
+     * @param patchClassifier
+     * @return the builder
+     */
+    public WacQueryBuilder usingPatchClassifier(N3PatchClassifier patchClassifier) {
+        this.engineBuilder.usingPatchClassifier(patchClassifier);
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * Report the durations of classifying the request and finding the
+     * authoritative {@code .acl}. Must be set before
+     * {@link #forRequest(String, String, String)}. The queries are executed
+     * by the caller, use {@link WacEngine#check(AccessRequest, String)} to
+     * also measure them.
+     *
+     * @param metrics
+     * @return the builder
+     */
+    public WacQueryBuilder usingMetrics(WacMetricsListener metrics) {
+        this.engineBuilder.usingMetrics(metrics);
+        this.engine = null;
+        return this;
+    }
+
     /**
      * Set the action used to access the resource.
      *
@@ -75,11 +127,7 @@ public class WacQueryBuilder {
      */
     public WacQueryBuilder forRequest(String resource, String method, String body) {
         this.resource = resource;
-        this.method = method;
-        this.body = body;
-        this.isForControlRequest = this.checkForControlRequest();
-        this.isForNonDeletingRequest = this.checkForNonDeletingRequest();
-        this.accessMode = this.getAccessMode();
+        this.accessMode = this.engine().determineAccessMode(resource, method, body);
         return this;
     }
 
@@ -95,147 +143,171 @@ public class WacQueryBuilder {
     }
 
     /**
-     * If the target {@code resource} of the request is the {@code .acl} itself,
-     * then {@code acl:mode acl:Control} is required.
+     * Evaluate the queries against compiled ACLs instead of using SPARQL. If
+     * not set, the SPARQL queries are used.
      *
-     * @return isControlling
+     * @param aclIndexCache the (shared) cache of compiled ACLs and agent
+     * groups
+     * @return the builder
      */
-    private boolean checkForControlRequest() {
-        return this.resource.equals(this.resourceAclMap.getAcl(this.resource));
+    public WacQueryBuilder usingIndex(AclIndexCache aclIndexCache) {
+        this.engineBuilder.usingIndex(aclIndexCache);
+        this.engine = null;
+        return this;
     }
 
     /**
-     * Check if the request is not deleting, i.e. at most appending to the
-     * resource. See N3 patch
-     * {@link https://solidproject.org/TR/protocol#writing-resources}.
+     * Skip the agent and agent group rules if Bloom filters of the agents
+     * (and group members) an .acl mentions rule out the requesting agent. Has
+     * no effect in a single pass ({@link #usingSinglePass()}).
      *
-     * @param method
-     * @param body
-     * @return isForNonDeletingRequest
-     */
-    private boolean checkForNonDeletingRequest() {
-        switch (this.method) {
-            case "GET", "HEAD", "POST" -> {
-                // if on resource then not allowed anyway - on ldp:Container it is append.
-                return true;
-            }
-            case "PUT", "DELETE" -> {
-                return false;
-            }
-            case "PATCH" -> {
-                String b = this.body;
-                // Apache Jena cannot parse the full N3 patch, so we hack it.
-                Pattern p = Pattern.compile("\\{[^{}}]*\\}");
-                Matcher matcher = p.matcher(b);
-                while (matcher.find()) {
-                    b = matcher.replaceAll("_:placeholder "); // replace all the blocks just with a blanknode.
-                    matcher = p.matcher(b);
-                }
-                InputStream in = new ByteArrayInputStream(b.getBytes(StandardCharsets.UTF_8));
-                Model model = RDFParser.create()
-                        .source(in)
-                        .lang(RDFLanguages.TRIG)
-                        .errorHandler(ErrorHandlerFactory.errorHandlerStrict)
-                        .toModel();
-                String queryString = String.format("""
-                                                        PREFIX solid: <%s>
-                                                        ASK {
-                                                         ?patch solid:deletes ?something
-                                                        }
-                                                    """, Namespaces.SOLID);
-
-                QueryExecution qexec = QueryExecutionFactory.create(queryString, model);
-                boolean deletesSomething = qexec.execAsk();
-                return !deletesSomething; // isOnlyAppending
-            }
-            default ->
-                throw new IllegalArgumentException("Unknown HTTP method");
-        }
+     * @param agentFilters the (shared) filters
+     * @return the builder
+     */
+    public WacQueryBuilder usingAgentFilters(AgentFilters agentFilters) {
+        this.engineBuilder.usingAgentFilters(agentFilters);
+        this.engine = null;
+        return this;
     }
 
     /**
-     * Retrieve the access mode.
+     * Fetch the agent group documents that are not in the store over HTTP,
+     * e.g. groups hosted on another server. The memberships are cached.
      *
-     * If acl:Append is retrieved, of course, an acl:Write is also acceptable in
-     * a rule.
+     * @param remoteGroupResolver the (shared) resolver
+     * @return the builder
+     */
+    public WacQueryBuilder usingRemoteGroups(RemoteGroupResolver remoteGroupResolver) {
+        this.engineBuilder.usingRemoteGroups(remoteGroupResolver);
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * Look up agent group memberships in a reverse index from webid to groups
+     * instead of querying each group document.
      *
-     * @return the access mode URI string
+     * @param groupMembershipIndex the (shared) index, created for the same
+     * resource map as this builder
+     * @return the builder
      */
-    private String getAccessMode() {
-        if (this.isForControlRequest) {
-            return Namespaces.ACL + "Control";
-        }
-        switch (this.method) {
-            case "GET":
-            case "HEAD":
-                return Namespaces.ACL + "Read";
-            case "POST":
-            case "PATCH":
-                if (this.isForNonDeletingRequest) {
-                    // if it is "non deleting / only appending" request then an acl:Append would suffice.
-                    return Namespaces.ACL + "Append";
-                }
-            // if we receive a request, which is NOT "only appending to a resource",
-            // i.e. also deletes something, then we need acl:Write
-            case "PUT":
-            case "DELETE":
-                return Namespaces.ACL + "Write";
-            default:
-                throw new IllegalArgumentException("Unknown HTTP method");
-        }
+    public WacQueryBuilder usingGroupIndex(GroupMembershipIndex groupMembershipIndex) {
+        this.engineBuilder.usingGroupIndex(groupMembershipIndex);
+        this.engine = null;
+        return this;
     }
 
-    private void findAuthoritativeACL(String res) {
-        if (this.isForControlRequest) {
-            res = this.resourceAclMap.getResource(res);
-        }
-        this.onResource = res;
-        String currentAclUriString = this.resourceAclMap.getAcl(res);
-        Dataset currentAcl = this.resourceMap.get(currentAclUriString);
-        // found .acl ?
-        if (currentAcl != null) {
-            this.authoritativeACL = currentAcl;
-            return;
-        }
-        // > not found.
-        this.hasInheritedRule = true;
-        // check for directory .acl ...
-        String dir = res;
-        if (res.endsWith("/")) {
-            // is already directory
-            dir = dir.substring(0, dir.length() - 1);
-            // > omit last slash
-        }
-        // move one directory up
-        int lastIndexOfSlash = dir.lastIndexOf("/");
-        // was root directory?
-        if (dir.indexOf("://") == lastIndexOfSlash - 2) {
-            this.authoritativeACL = DatasetFactory.create(); // nothing found, give back empty root .acl.
-            return;
+    /**
+     * Decide agent group memberships with a specific lookup, e.g. one shared
+     * by a batch of requests.
+     *
+     * @param agentGroupMembership
+     * @return the builder
+     */
+    WacQueryBuilder usingGroupMembership(AgentGroupMembership agentGroupMembership) {
+        this.engineBuilder.usingGroupMembership(agentGroupMembership);
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * Find the {@code .acl} to inherit rules from with a single walk of the
+     * container trie instead of probing the resource map on every level.
+     *
+     * @param containerTrie the (shared) trie, created for the same resource
+     * map and mapping as this builder
+     * @return the builder
+     */
+    public WacQueryBuilder usingContainerTrie(ContainerTrie containerTrie) {
+        this.engineBuilder.usingContainerTrie(containerTrie);
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * Match the public, authenticated, agent and agent group rules in a single
+     * pass over the authoritative ACL (one query or one index probe). Then,
+     * {@link #build()} returns only a single {@link WacQuery} which yields the
+     * first matching rule in the usual order.
+     *
+     * @return the builder
+     */
+    public WacQueryBuilder usingSinglePass() {
+        this.engineBuilder.usingSinglePass();
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * Evaluate the SPARQL queries from templates that are parsed and optimized
+     * once, instead of generating and parsing a query string per request. Has
+     * no effect when using an index ({@link #usingIndex(AclIndexCache)}).
+     *
+     * @return the builder
+     */
+    public WacQueryBuilder usingPrecompiledQueries() {
+        this.engineBuilder.usingPrecompiledQueries();
+        this.engine = null;
+        return this;
+    }
+
+    /**
+     * @return the target of the request
+     */
+    public String getResource() {
+        return this.resource;
+    }
+
+    /**
+     * @return the webid of the accessing agent, {@code null} if unknown
+     */
+    public String getWebId() {
+        return this.webid;
+    }
+
+    /**
+     * @return the access mode URI string required by the request, available
+     * after {@link #forRequest(String, String, String)}
+     */
+    public String getAccessMode() {
+        return this.accessMode;
+    }
+
+    /**
+     * @return the URI string of the {@code .acl} whose rules apply to the
+     * request, available after {@link #build()}; {@code null} if no
+     * {@code .acl} was found
+     */
+    public String getAuthoritativeACLUri() {
+        return this.authoritativeACLUri;
+    }
+
+    /**
+     * @return the engine for the options set so far, built only once for
+     * {@link #forRequest(String, String, String)} and {@link #build()}
+     */
+    private WacEngine engine() {
+        if (this.engine == null) {
+            this.engine = this.engineBuilder.build();
         }
-        dir = dir.substring(0, lastIndexOfSlash + 1);
-        this.findAuthoritativeACL(dir);
+        return this.engine;
     }
 
     /**
      * Build all {@link WacQuery} from the information currently in the builder.
      *
      * @return the {@link WacQuery} array of length 1 (if webid is {@code null},
-     * no valid authentication assumed) or length 4 (if webid provided, valid
-     * authentication assumed)
+     * no valid authentication assumed, or if using a single pass) or length 4
+     * (if webid provided, valid authentication assumed)
      */
     public WacQuery[] build() {
-        this.findAuthoritativeACL(this.resource); // set authoritativeACL, onResource, and hasInheritedRule
-        WacQuery pub = new QueryForPublic(this.authoritativeACL, this.onResource, this.hasInheritedRule, this.accessMode);
-        if (this.webid == null) {
-            WacQuery[] result = {pub};
-            return result;
-        }
-        WacQuery authn = new QueryForAuthenticated(this.authoritativeACL, this.onResource, this.hasInheritedRule, this.accessMode);
-        WacQuery agent = new QueryForAgent(this.authoritativeACL, this.onResource, this.hasInheritedRule, this.accessMode, this.webid);
-        WacQuery group = new QueryForAgentGroup(this.authoritativeACL, this.onResource, this.hasInheritedRule, this.accessMode, this.webid, this.resourceMap);
-        WacQuery[] result = {pub, authn, agent, group};
-        return result;
+        WacEngine engine = this.engine();
+        WacEngine.Resolution resolution = engine.findAuthoritativeACL(this.resource);
+        this.authoritativeACL = resolution.authoritativeACL;
+        this.authoritativeACLUri = resolution.authoritativeACLUri;
+        this.onResource = resolution.onResource;
+        this.hasInheritedRule = resolution.hasInheritedRule;
+        return engine.build(resolution, this.accessMode, this.webid);
     }
 
 }
@@ -0,0 +1,25 @@
+package edu.kit.aifb.solid.wac.query;
+
+/**
+ * How a rule specifies the agent that may have access. The order of the
+ * constants is the order in which the queries are built and executed.
+ */
+public enum WacQueryType {
+
+    /**
+     * {@code acl:agentClass foaf:Agent}
+     */
+    PUBLIC,
+    /**
+     * {@code acl:agentClass acl:AuthenticatedAgent}
+     */
+    AUTHENTICATED,
+    /**
+     * {@code acl:agent <webid>}
+     */
+    AGENT,
+    /**
+     * {@code acl:agentGroup ?group . ?group vcard:hasMember <webid>}
+     */
+    AGENT_GROUP
+}
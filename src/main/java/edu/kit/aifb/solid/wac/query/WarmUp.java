@@ -0,0 +1,251 @@
+package edu.kit.aifb.solid.wac.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up an engine before it serves requests, e.g. after a deploy: all
+ * {@code .acl} and agent group documents are loaded (i.e. parsed) and compiled
+ * into the structures the engine uses, in parallel on a fork-join pool. For
+ * each {@code .acl}, the container trie is walked down to its resource and the
+ * public rules are evaluated once, s.t. the first requests find warm caches
+ * and compiled code.
+ *
+ * The warm-up runs in the background once started: poll
+ * {@link #isReady()}, e.g. in a readiness probe, or wait with
+ * {@link #await()}. A document that fails to load is reported in
+ * {@link #getFailures()} and does not stop the warm-up.
+ *
+ * The compiled indexes and agent filters are cached per dataset instance, so
+ * they are only hit later if the store returns the same dataset on every
+ * load: a {@link edu.kit.aifb.solid.wac.store.MapAclStore}, a
+ * {@link edu.kit.aifb.solid.wac.store.Tdb2AclStore}, or a
+ * {@link edu.kit.aifb.solid.wac.store.CachingAclStore} that admits the
+ * document. A {@link edu.kit.aifb.solid.wac.store.FileSystemAclStore} parses
+ * anew on every load, so wrap it in a large enough
+ * {@link edu.kit.aifb.solid.wac.store.CachingAclStore}, or warm
+ * {@link edu.kit.aifb.solid.wac.index.CompactAcls} instead. The container
+ * trie, the group index and the JIT are warmed with any store.
+ */
+public final class WarmUp {
+
+    /**
+     * Get a warm-up builder for an engine.
+     *
+     * @param engine
+     * @return the builder
+     */
+    public static Builder newBuilder(WacEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("The engine must not be null.");
+        }
+        return new Builder(engine);
+    }
+
+    /**
+     * Notified after each document, on the thread that warmed it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param document the URI string of the document
+         * @param done the number of documents warmed so far, including this
+         * one
+         * @param total the number of documents to warm
+         */
+        void warmed(String document, int done, int total);
+    }
+
+    private final WacEngine engine;
+    private final String[] documents;
+    private final Listener listener;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger missing = new AtomicInteger();
+    private final ConcurrentHashMap<String, RuntimeException> failures = new ConcurrentHashMap<>();
+    private final long start;
+    private volatile long duration = -1;
+    private final ForkJoinTask<?> task;
+
+    private WarmUp(Builder builder) {
+        this.engine = builder.engine;
+        Collection<String> documents = (builder.documents != null) ? builder.documents : builder.engine.documents();
+        this.documents = documents.toArray(new String[0]);
+        this.listener = builder.listener;
+        this.start = System.nanoTime();
+        this.task = builder.pool.submit(() -> {
+            new Range(0, this.documents.length).invoke();
+            this.duration = System.nanoTime() - this.start;
+        });
+    }
+
+    /**
+     * Warms the documents of a range, splitting it in halves down to single
+     * documents, s.t. idle workers steal the remaining ones.
+     */
+    private final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Range(this.from, middle), new Range(middle, this.to));
+            } else if (this.to > this.from) {
+                WarmUp.this.warm(WarmUp.this.documents[this.from]);
+            }
+        }
+    }
+
+    private void warm(String document) {
+        try {
+            if (!this.engine.warm(document)) {
+                this.missing.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            this.failures.put(document, e);
+        }
+        int done = this.done.incrementAndGet();
+        if (this.listener != null) {
+            this.listener.warmed(document, done, this.documents.length);
+        }
+    }
+
+    /**
+     * @return if all documents are warmed
+     */
+    public boolean isReady() {
+        return this.task.isDone();
+    }
+
+    /**
+     * Wait until all documents are warmed.
+     *
+     * @return this warm-up
+     */
+    public WarmUp await() {
+        this.task.join();
+        return this;
+    }
+
+    /**
+     * @return the number of documents to warm
+     */
+    public int getTotal() {
+        return this.documents.length;
+    }
+
+    /**
+     * @return the number of documents warmed so far
+     */
+    public int getDone() {
+        return this.done.get();
+    }
+
+    /**
+     * @return the number of documents that did not exist (anymore) when they
+     * were warmed
+     */
+    public int getMissing() {
+        return this.missing.get();
+    }
+
+    /**
+     * @return the URI strings of the documents that failed to load or
+     * compile, with the cause
+     */
+    public Map<String, RuntimeException> getFailures() {
+        return Collections.unmodifiableMap(new HashMap<>(this.failures));
+    }
+
+    /**
+     * @return the nanoseconds it took to warm all documents, {@code -1} if it
+     * is not ready yet
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("warmed %d/%d documents (%d missing, %d failed)%s", this.getDone(), this.getTotal(), this.getMissing(), this.failures.size(),
+                this.isReady() ? String.format(" in %d ms", this.duration / 1_000_000) : "");
+    }
+
+    /**
+     * Configures a {@link WarmUp}.
+     */
+    public static final class Builder {
+
+        private final WacEngine engine;
+        private List<String> documents;
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        private Listener listener;
+
+        private Builder(WacEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * @param documents the URI strings of the documents to warm instead of
+         * all documents of the store, e.g. if the store cannot list them
+         * @return the builder
+         */
+        public Builder usingDocuments(Collection<String> documents) {
+            if (documents == null) {
+                throw new IllegalArgumentException("The documents must not be null.");
+            }
+            this.documents = new ArrayList<>(documents);
+            return this;
+        }
+
+        /**
+         * @param pool warm the documents on this pool instead of the common
+         * pool
+         * @return the builder
+         */
+        public Builder usingPool(ForkJoinPool pool) {
+            if (pool == null) {
+                throw new IllegalArgumentException("The pool must not be null.");
+            }
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * @param listener notified about the progress
+         * @return the builder
+         */
+        public Builder usingListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Start warming in the background.
+         *
+         * @return the running warm-up
+         */
+        public WarmUp start() {
+            return new WarmUp(this);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Provides the RDF datasets of {@code .acl} and agent group documents on
+ * demand, s.t. not all documents of a pod need to be in memory.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface AclStore {
+
+    /**
+     * Load a document.
+     *
+     * @param uri the URI string of the document
+     * @return the RDF dataset of the document, {@code null} if there is none
+     */
+    Dataset load(String uri);
+
+    /**
+     * Send the triples of a document to a sink, e.g. an
+     * {@link edu.kit.aifb.solid.wac.index.AclSink} that compiles it. Stores
+     * that parse their documents send the triples while parsing, without
+     * building a dataset; by default, the triples of the default graph of the
+     * loaded dataset are sent.
+     *
+     * @param uri the URI string of the document
+     * @param sink receives the triples, between {@code start()} and
+     * {@code finish()}
+     * @return if the document exists
+     */
+    default boolean stream(String uri, StreamRDF sink) {
+        Dataset dataset = this.load(uri);
+        if (dataset == null) {
+            return false;
+        }
+        Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+        sink.start();
+        ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+            while (it.hasNext()) {
+                sink.triple(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        sink.finish();
+        return true;
+    }
+
+    /**
+     * Check whether a document exists without loading it, e.g. while walking
+     * up the containers to the authoritative {@code .acl}.
+     *
+     * @param uri the URI string of the document
+     * @return if {@link #load(String)} returns a dataset
+     */
+    boolean exists(String uri);
+
+    /**
+     * List all documents. Only needed to index all documents ahead of time,
+     * e.g. {@link edu.kit.aifb.solid.wac.index.GroupMembershipIndex#indexAll()}.
+     *
+     * @return the URI strings of all documents
+     * @throws UnsupportedOperationException if the store cannot list its
+     * documents
+     */
+    default Set<String> uris() {
+        throw new UnsupportedOperationException("Cannot list the documents of " + this);
+    }
+
+    /**
+     * Evaluate against a consistent view of the store, e.g. in a read
+     * transaction. The engine checks every request this way; the queries of a
+     * {@link edu.kit.aifb.solid.wac.query.WacQueryBuilder} must be executed
+     * this way, too. Calls may be nested.
+     *
+     * @param <T>
+     * @param evaluation
+     * @return the result of the evaluation
+     */
+    default <T> T read(Supplier<T> evaluation) {
+        return evaluation.get();
+    }
+
+    /**
+     * A read-only view for the components that look up documents in a map:
+     * {@code get} loads, {@code containsKey} checks for existence.
+     *
+     * @return a map of URI string to RDF dataset backed by the store
+     */
+    default Map<String, Dataset> asMap() {
+        return new AclStoreMap(this);
+    }
+}
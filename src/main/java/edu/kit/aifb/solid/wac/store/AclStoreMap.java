@@ -0,0 +1,64 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+
+/**
+ * The read-only map view of an {@link AclStore}, see
+ * {@link AclStore#asMap()}.
+ */
+final class AclStoreMap extends AbstractMap<String, Dataset> {
+
+    private final AclStore store;
+
+    AclStoreMap(AclStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Dataset get(Object key) {
+        return (key instanceof String) ? this.store.load((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && this.store.exists((String) key);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return this.store.uris();
+    }
+
+    @Override
+    public Set<Entry<String, Dataset>> entrySet() {
+        Set<String> uris = this.store.uris();
+        return new AbstractSet<Entry<String, Dataset>>() {
+            @Override
+            public Iterator<Entry<String, Dataset>> iterator() {
+                Iterator<String> it = uris.iterator();
+                return new Iterator<Entry<String, Dataset>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Dataset> next() {
+                        String uri = it.next();
+                        return new SimpleImmutableEntry<>(uri, AclStoreMap.this.store.load(uri));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return uris.size();
+            }
+        };
+    }
+}
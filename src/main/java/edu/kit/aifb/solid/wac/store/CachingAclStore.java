@@ -0,0 +1,189 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * Keeps at most {@code maximumSize} documents of another store in memory.
+ *
+ * A loaded document only replaces the least recently used one if it was
+ * requested more often recently (TinyLFU admission), s.t. a scan over many
+ * rarely used documents does not flush the frequently used {@code .acl}s of
+ * the containers near the root. Absent documents are not cached, and
+ * {@link #exists(String)} never loads.
+ *
+ * If a document changes, call {@link #invalidate(String)}. A load that was
+ * still running when a document was invalidated returns its result, but does
+ * not cache it.
+ */
+public final class CachingAclStore implements AclStore {
+
+    private final AclStore delegate;
+    private final int maximumSize;
+    private final FrequencySketch sketch;
+    // access order: the eldest entry is the least recently used
+    private final LinkedHashMap<String, Dataset> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long rejections = 0;
+    // incremented by each invalidation, s.t. a load that began before is not admitted
+    private long generation = 0;
+
+    /**
+     * @param delegate the store to load documents from
+     * @param maximumSize the maximum number of cached documents
+     */
+    public CachingAclStore(AclStore delegate, int maximumSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("The store must not be null.");
+        }
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maximumSize);
+        }
+        this.delegate = delegate;
+        this.maximumSize = maximumSize;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public Dataset load(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        long generation;
+        synchronized (this) {
+            generation = this.generation;
+            this.sketch.increment(uri);
+            Dataset dataset = this.entries.get(uri);
+            if (dataset != null) {
+                this.hits++;
+                return dataset;
+            }
+            this.misses++;
+        }
+        // load without holding the lock, concurrent loads of the same document may happen
+        Dataset dataset = this.delegate.load(uri);
+        if (dataset != null) {
+            this.admit(uri, dataset, generation);
+        }
+        return dataset;
+    }
+
+    private synchronized void admit(String uri, Dataset dataset, long generation) {
+        // invalidated while loading: the dataset may be outdated
+        if (generation != this.generation || this.entries.containsKey(uri)) {
+            return;
+        }
+        if (this.entries.size() < this.maximumSize) {
+            this.entries.put(uri, dataset);
+            return;
+        }
+        Iterator<Map.Entry<String, Dataset>> eldest = this.entries.entrySet().iterator();
+        String victim = eldest.next().getKey();
+        if (this.sketch.frequency(uri) > this.sketch.frequency(victim)) {
+            eldest.remove();
+            this.entries.put(uri, dataset);
+            this.evictions++;
+        } else {
+            this.rejections++;
+        }
+    }
+
+    /**
+     * Streams from the delegate, e.g. to compile all documents: a streamed
+     * document is neither counted nor admitted.
+     */
+    @Override
+    public boolean stream(String uri, StreamRDF sink) {
+        return this.delegate.stream(uri, sink);
+    }
+
+    @Override
+    public boolean exists(String uri) {
+        synchronized (this) {
+            if (uri != null && this.entries.containsKey(uri)) {
+                return true;
+            }
+        }
+        return this.delegate.exists(uri);
+    }
+
+    @Override
+    public Set<String> uris() {
+        return this.delegate.uris();
+    }
+
+    /**
+     * Drop a cached document, e.g. after it was modified or deleted.
+     *
+     * @param uri the URI string of the document
+     */
+    public synchronized void invalidate(String uri) {
+        this.entries.remove(uri);
+        this.generation++;
+    }
+
+    /**
+     * Drop all cached documents.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.generation++;
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @param uri the URI string of the document
+     * @return if the document is cached
+     */
+    public synchronized boolean isCached(String uri) {
+        return this.entries.containsKey(uri);
+    }
+
+    /**
+     * @return the number of loads served from the cache
+     */
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of loads from the underlying store
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of cached documents replaced by more frequent ones
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * @return the number of loaded documents not cached because they were less
+     * frequent than the least recently used one
+     */
+    public synchronized long getRejectionCount() {
+        return this.rejections;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CachingAclStore(" + this.delegate + ") size=" + this.entries.size() + " hits=" + this.hits + " misses=" + this.misses
+                + " evictions=" + this.evictions + " rejections=" + this.rejections;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * Documents as Turtle files in a directory: the document
+ * {@code <baseUri>a/b/.acl} is the file {@code <directory>/a/b/.acl}, parsed
+ * with the document URI as base. Documents are parsed on every
+ * {@link #load(String)}, wrap the store in a {@link CachingAclStore} to keep
+ * the frequently used ones.
+ */
+public final class FileSystemAclStore implements AclStore {
+
+    private final Path directory;
+    private final String baseUri;
+
+    /**
+     * @param directory the directory that corresponds to the base URI
+     * @param baseUri the URI string of the pod root, e.g.
+     * {@code http://example.org/}
+     */
+    public FileSystemAclStore(Path directory, String baseUri) {
+        if (directory == null || baseUri == null) {
+            throw new IllegalArgumentException("The directory and the base URI must not be null.");
+        }
+        this.directory = directory.toAbsolutePath().normalize();
+        this.baseUri = baseUri.endsWith("/") ? baseUri : baseUri + "/";
+    }
+
+    /**
+     * @return the file of the document, {@code null} if the URI is not below
+     * the base URI or denotes a container
+     */
+    private Path fileOf(String uri) {
+        if (uri == null || !uri.startsWith(this.baseUri)) {
+            return null;
+        }
+        String relative = uri.substring(this.baseUri.length());
+        int fragment = relative.indexOf('#');
+        if (fragment != -1) {
+            relative = relative.substring(0, fragment);
+        }
+        if (relative.isEmpty() || relative.endsWith("/")) {
+            return null;
+        }
+        Path file = this.directory.resolve(relative).normalize();
+        // no way out of the directory, e.g. via ../
+        return file.startsWith(this.directory) ? file : null;
+    }
+
+    @Override
+    public Dataset load(String uri) {
+        Path file = this.fileOf(uri);
+        if (file == null || !Files.isRegularFile(file)) {
+            return null;
+        }
+        Dataset dataset = DatasetFactory.create();
+        RDFParser.source(file).lang(Lang.TURTLE).base(uri).parse(dataset.getDefaultModel());
+        return dataset;
+    }
+
+    /**
+     * Parses the file straight into the sink, no dataset is built.
+     */
+    @Override
+    public boolean stream(String uri, StreamRDF sink) {
+        Path file = this.fileOf(uri);
+        if (file == null || !Files.isRegularFile(file)) {
+            return false;
+        }
+        RDFParser.source(file).lang(Lang.TURTLE).base(uri).parse(sink);
+        return true;
+    }
+
+    @Override
+    public boolean exists(String uri) {
+        Path file = this.fileOf(uri);
+        return file != null && Files.isRegularFile(file);
+    }
+
+    /**
+     * Walks the whole directory.
+     */
+    @Override
+    public Set<String> uris() {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> this.baseUri + this.directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"))
+                    .collect(Collectors.toUnmodifiableSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemAclStore(" + this.directory + " -> " + this.baseUri + ")";
+    }
+}
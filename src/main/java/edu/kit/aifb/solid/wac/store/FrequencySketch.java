@@ -0,0 +1,72 @@
+package edu.kit.aifb.solid.wac.store;
+
+/**
+ * Estimates how often keys were seen recently: a count-min sketch of 4-bit
+ * counters (4 rows) that halves all counters after a sample of
+ * {@code 10 * capacity} increments, s.t. old popularity fades (as in
+ * TinyLFU). Not thread-safe.
+ */
+final class FrequencySketch {
+
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final int[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int increments = 0;
+
+    /**
+     * @param capacity the number of keys to tell apart, about
+     */
+    FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(64, capacity * 4 - 1) << 1);
+        this.counters = new int[width * SEEDS.length];
+        this.mask = width - 1;
+        this.sampleSize = Math.max(10, 10 * capacity);
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x5BD1E995;
+        h ^= h >>> 15;
+        return row * (this.mask + 1) + (h & this.mask);
+    }
+
+    /**
+     * @param key
+     * @return the estimated number of recent occurrences
+     */
+    int frequency(Object key) {
+        int hash = key.hashCode();
+        int min = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            min = Math.min(min, this.counters[this.indexOf(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Count an occurrence.
+     *
+     * @param key
+     */
+    void increment(Object key) {
+        int hash = key.hashCode();
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = this.indexOf(hash, row);
+            if (this.counters[index] < MAX_COUNT) {
+                this.counters[index]++;
+            }
+        }
+        if (++this.increments >= this.sampleSize) {
+            this.age();
+        }
+    }
+
+    private void age() {
+        for (int i = 0; i < this.counters.length; i++) {
+            this.counters[i] >>>= 1;
+        }
+        this.increments /= 2;
+    }
+}
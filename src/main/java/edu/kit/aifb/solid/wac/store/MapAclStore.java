@@ -0,0 +1,49 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+
+/**
+ * All documents in memory, in a map of URI string to RDF dataset. Changes to
+ * the map are visible to the store.
+ */
+public final class MapAclStore implements AclStore {
+
+    private final Map<String, Dataset> resourceMap;
+
+    /**
+     * @param resourceMap a mapping of URI string to RDF datasets
+     */
+    public MapAclStore(Map<String, Dataset> resourceMap) {
+        if (resourceMap == null) {
+            throw new IllegalArgumentException("The resource map must not be null.");
+        }
+        this.resourceMap = resourceMap;
+    }
+
+    @Override
+    public Dataset load(String uri) {
+        return (uri == null) ? null : this.resourceMap.get(uri);
+    }
+
+    @Override
+    public boolean exists(String uri) {
+        return uri != null && this.resourceMap.containsKey(uri);
+    }
+
+    @Override
+    public Set<String> uris() {
+        return Collections.unmodifiableSet(this.resourceMap.keySet());
+    }
+
+    /**
+     * @return the backing map itself
+     */
+    @Override
+    public Map<String, Dataset> asMap() {
+        return this.resourceMap;
+    }
+}
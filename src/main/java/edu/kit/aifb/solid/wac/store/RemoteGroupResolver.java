@@ -0,0 +1,442 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+
+/**
+ * Fetches agent group documents that are not in the local store over HTTP,
+ * e.g. groups hosted on another server, and caches their memberships.
+ *
+ * <ul>
+ * <li>Only the {@code vcard:hasMember} triples are kept, the document is not
+ * loaded into a model.</li>
+ * <li>A cached document is fresh for the {@code max-age} of its
+ * {@code Cache-Control} header (or the default max age), then it is
+ * revalidated with its {@code ETag}: a {@code 304 Not Modified} keeps the
+ * memberships. {@code no-cache} revalidates on each lookup, {@code no-store}
+ * does not cache at all.</li>
+ * <li>Concurrent lookups of the same document share one request.</li>
+ * <li>At most {@code capacity} documents are cached, the least recently used
+ * one is dropped first.</li>
+ * <li>If a document is gone or not accessible (a {@code 4xx} response other
+ * than {@code 408} or {@code 429}), nobody is a member.</li>
+ * <li>If a document cannot be fetched otherwise, a stale copy is used until
+ * the stale-if-error window after its last successful fetch ends, then nobody
+ * is a member.</li>
+ * <li>Failures are cached for the retry delay.</li>
+ * </ul>
+ *
+ * Thread-safe.
+ */
+public final class RemoteGroupResolver {
+
+    private static final String HAS_MEMBER = Namespaces.VCARD + "hasMember";
+    private static final String ACCEPT = "text/turtle, application/ld+json;q=0.9, application/n-triples;q=0.8";
+
+    private final HttpClient httpClient;
+    private final int capacity;
+    private final long defaultMaxAgeNanos;
+    private final long retryDelayNanos;
+    private final long staleIfErrorNanos;
+    private final Duration timeout;
+    private final Map<String, Entry> cache;
+    // incremented by each invalidation, s.t. a fetch that began before is not cached; guarded by the cache
+    private long generation = 0;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private RemoteGroupResolver(Builder builder) {
+        this.httpClient = (builder.httpClient != null) ? builder.httpClient : HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(builder.timeout)
+                .build();
+        this.capacity = builder.capacity;
+        this.defaultMaxAgeNanos = builder.defaultMaxAge.toNanos();
+        this.retryDelayNanos = builder.retryDelay.toNanos();
+        this.staleIfErrorNanos = builder.staleIfError.toNanos();
+        this.timeout = builder.timeout;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return this.size() > RemoteGroupResolver.this.capacity;
+            }
+        });
+    }
+
+    /**
+     * @return a builder for a resolver
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Check {@code <group> vcard:hasMember <webid>} in the (remote) group
+     * document.
+     *
+     * @param group the URI string of the group
+     * @param webid the agent
+     * @return isMember, {@code false} if the group document is not available
+     */
+    public boolean isMember(String group, String webid) {
+        Set<String> members = this.resolve(GroupMembershipIndex.documentOf(group)).members.get(group);
+        return members != null && members.contains(webid);
+    }
+
+    /**
+     * Get the memberships of a group document, fetching it if it is not
+     * cached or stale.
+     *
+     * @param document the URI string of the group document
+     * @return group -> members
+     */
+    public Map<String, Set<String>> getMembers(String document) {
+        return this.resolve(document).members;
+    }
+
+    /**
+     * Drop a cached document, s.t. the next lookup fetches it.
+     *
+     * @param document the URI string of the group document
+     */
+    public void invalidate(String document) {
+        synchronized (this.cache) {
+            this.cache.remove(document);
+            this.generation++;
+        }
+        // later lookups do not wait for a fetch that began before
+        this.inFlight.remove(document);
+    }
+
+    /**
+     * Drop all cached documents.
+     */
+    public void clear() {
+        synchronized (this.cache) {
+            this.cache.clear();
+            this.generation++;
+        }
+        this.inFlight.clear();
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public int size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of HTTP requests
+     */
+    public long getFetchCount() {
+        return this.fetches.sum();
+    }
+
+    /**
+     * @return the number of HTTP requests answered with
+     * {@code 304 Not Modified}
+     */
+    public long getRevalidationCount() {
+        return this.revalidations.sum();
+    }
+
+    /**
+     * @return the number of failed HTTP requests
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    private Entry resolve(String document) {
+        Entry cached;
+        long generation;
+        synchronized (this.cache) {
+            generation = this.generation;
+            cached = this.cache.get(document);
+        }
+        if (cached != null && System.nanoTime() - cached.expiresAt < 0) {
+            this.hits.increment();
+            return cached;
+        }
+        CompletableFuture<Entry> flight = new CompletableFuture<>();
+        CompletableFuture<Entry> running = this.inFlight.putIfAbsent(document, flight);
+        if (running != null) {
+            return running.join();
+        }
+        try {
+            Entry entry = this.fetch(document, cached);
+            synchronized (this.cache) {
+                // invalidated while fetching: the entry may be outdated
+                if (generation == this.generation) {
+                    if (entry.isCacheable) {
+                        this.cache.put(document, entry);
+                    } else {
+                        this.cache.remove(document);
+                    }
+                }
+            }
+            flight.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(document, flight);
+        }
+    }
+
+    private Entry fetch(String document, Entry stale) {
+        if (!document.startsWith("http://") && !document.startsWith("https://")) {
+            long now = System.nanoTime();
+            return Entry.failed(now, now + this.retryDelayNanos);
+        }
+        this.fetches.increment();
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(document))
+                    .timeout(this.timeout)
+                    .header("Accept", ACCEPT)
+                    .GET();
+            if (stale != null && stale.etag != null) {
+                request.header("If-None-Match", stale.etag);
+            }
+            HttpResponse<InputStream> response = this.httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                long now = System.nanoTime();
+                String cacheControl = response.headers().firstValue("Cache-Control").orElse("").toLowerCase(Locale.ROOT);
+                boolean isCacheable = !cacheControl.contains("no-store");
+                long expiresAt = now + this.maxAgeNanos(cacheControl);
+                int status = response.statusCode();
+                if (status == 304 && stale != null) {
+                    this.revalidations.increment();
+                    return new Entry(stale.members, stale.etag, expiresAt, now, isCacheable);
+                }
+                if (status / 100 == 4 && status != 408 && status != 429) {
+                    // gone or not accessible (anymore): the stale memberships do not count
+                    this.failures.increment();
+                    return Entry.failed(now, now + this.retryDelayNanos);
+                }
+                if (status / 100 != 2) {
+                    return this.failed(stale, now);
+                }
+                String etag = response.headers().firstValue("ETag").orElse(null);
+                return new Entry(parse(document, body, response.headers().firstValue("Content-Type").orElse(null)), etag, expiresAt, now, isCacheable);
+            }
+        } catch (IOException | RiotException | IllegalArgumentException e) {
+            return this.failed(stale, System.nanoTime());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return this.failed(stale, System.nanoTime());
+        }
+    }
+
+    private Entry failed(Entry stale, long now) {
+        this.failures.increment();
+        long retryAt = now + this.retryDelayNanos;
+        if (stale == null || now - stale.validatedAt >= this.staleIfErrorNanos) {
+            return Entry.failed(now, retryAt);
+        }
+        // the stale copy is used until its stale-if-error window ends, at the latest
+        long staleUntil = stale.validatedAt + this.staleIfErrorNanos;
+        return new Entry(stale.members, stale.etag, (retryAt - staleUntil < 0) ? retryAt : staleUntil, stale.validatedAt, true);
+    }
+
+    private long maxAgeNanos(String cacheControl) {
+        if (cacheControl.contains("no-cache")) {
+            return 0;
+        }
+        int at = cacheControl.indexOf("max-age=");
+        if (at < 0) {
+            return this.defaultMaxAgeNanos;
+        }
+        int start = at + "max-age=".length();
+        int end = start;
+        while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) {
+            end++;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(cacheControl.substring(start, end))).toNanos();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return this.defaultMaxAgeNanos;
+        }
+    }
+
+    /**
+     * Stream the document, keeping only the {@code vcard:hasMember} triples.
+     */
+    private static Map<String, Set<String>> parse(String document, InputStream body, String contentType) {
+        Lang lang = (contentType == null) ? null : RDFLanguages.contentTypeToLang(contentType.split(";")[0].trim());
+        Map<String, Set<String>> members = new HashMap<>();
+        StreamRDF sink = new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                if (triple.getSubject().isURI() && triple.getObject().isURI() && HAS_MEMBER.equals(triple.getPredicate().getURI())) {
+                    members.computeIfAbsent(triple.getSubject().getURI(), k -> new HashSet<>()).add(triple.getObject().getURI());
+                }
+            }
+        };
+        RDFParser.source(body).lang((lang != null) ? lang : Lang.TURTLE).base(document).parse(sink);
+        members.replaceAll((group, set) -> Collections.unmodifiableSet(set));
+        return Collections.unmodifiableMap(members);
+    }
+
+    /**
+     * The memberships of a document.
+     */
+    private static final class Entry {
+
+        final Map<String, Set<String>> members;
+        final String etag;
+        // System.nanoTime() until which the entry is fresh
+        final long expiresAt;
+        // System.nanoTime() of the last response with the members
+        final long validatedAt;
+        final boolean isCacheable;
+
+        Entry(Map<String, Set<String>> members, String etag, long expiresAt, long validatedAt, boolean isCacheable) {
+            this.members = members;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+            this.validatedAt = validatedAt;
+            this.isCacheable = isCacheable;
+        }
+
+        static Entry failed(long now, long retryAt) {
+            return new Entry(Collections.emptyMap(), null, retryAt, now, true);
+        }
+    }
+
+    /**
+     * Configures a {@link RemoteGroupResolver}.
+     */
+    public static final class Builder {
+
+        private HttpClient httpClient;
+        private int capacity = 1_000;
+        private Duration defaultMaxAge = Duration.ofMinutes(5);
+        private Duration retryDelay = Duration.ofSeconds(10);
+        private Duration staleIfError = Duration.ofMinutes(5);
+        private Duration timeout = Duration.ofSeconds(5);
+
+        private Builder() {
+        }
+
+        /**
+         * @param httpClient send the requests with this client instead of a
+         * client following redirects
+         * @return the builder
+         */
+        public Builder usingHttpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * @param capacity the maximum number of cached documents, default
+         * 1000
+         * @return the builder
+         */
+        public Builder usingCapacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param defaultMaxAge how long a document without
+         * {@code Cache-Control: max-age} is fresh, default 5 minutes
+         * @return the builder
+         */
+        public Builder usingDefaultMaxAge(Duration defaultMaxAge) {
+            if (defaultMaxAge == null || defaultMaxAge.isNegative()) {
+                throw new IllegalArgumentException("The default max age must not be negative: " + defaultMaxAge);
+            }
+            this.defaultMaxAge = defaultMaxAge;
+            return this;
+        }
+
+        /**
+         * @param retryDelay how long a failed fetch is not retried, default 10
+         * seconds
+         * @return the builder
+         */
+        public Builder usingRetryDelay(Duration retryDelay) {
+            if (retryDelay == null || retryDelay.isNegative()) {
+                throw new IllegalArgumentException("The retry delay must not be negative: " + retryDelay);
+            }
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        /**
+         * @param staleIfError how long after its last successful fetch or
+         * revalidation a stale copy is used while a document cannot be
+         * fetched, default 5 minutes; zero to never use a stale copy
+         * @return the builder
+         */
+        public Builder usingStaleIfError(Duration staleIfError) {
+            if (staleIfError == null || staleIfError.isNegative()) {
+                throw new IllegalArgumentException("The stale-if-error window must not be negative: " + staleIfError);
+            }
+            this.staleIfError = staleIfError;
+            return this;
+        }
+
+        /**
+         * @param timeout of connecting and of each request, default 5 seconds
+         * @return the builder
+         */
+        public Builder usingTimeout(Duration timeout) {
+            if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("The timeout must be positive: " + timeout);
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * @return the resolver
+         */
+        public RemoteGroupResolver build() {
+            return new RemoteGroupResolver(this);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+
+/**
+ * All documents in one Jena TDB2 dataset on disk, one named graph per
+ * document (named by the document URI).
+ *
+ * A loaded document is a view of its named graph as the default graph, s.t.
+ * the queries are evaluated as {@code GRAPH <document> { ... }} lookups in the
+ * indexes of TDB2, without copying the document to the heap. TDB2 requires
+ * transactions: the engine evaluates each request in
+ * {@link #read(Supplier)}, which begins a read transaction if none is active.
+ *
+ * A named graph only exists with at least one triple, i.e. an empty
+ * {@code .acl} is the same as none.
+ *
+ * The view of a document is the same dataset on every {@link #load(String)},
+ * s.t. the caches keyed by dataset (e.g.
+ * {@link edu.kit.aifb.solid.wac.index.AclIndexCache}) compile it only once.
+ * Writing a document through this store replaces its view, s.t. they compile
+ * it again. Modify the TDB2 dataset only through this store.
+ */
+public final class Tdb2AclStore implements AclStore {
+
+    private final Dataset dataset;
+    // document URI -> view of its named graph
+    private final ConcurrentHashMap<String, Dataset> views = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataset a TDB2 dataset
+     */
+    public Tdb2AclStore(Dataset dataset) {
+        if (dataset == null) {
+            throw new IllegalArgumentException("The dataset must not be null.");
+        }
+        this.dataset = dataset;
+    }
+
+    /**
+     * Open (or create) a TDB2 database.
+     *
+     * @param directory the directory of the database
+     * @return the store
+     */
+    public static Tdb2AclStore connect(Path directory) {
+        return new Tdb2AclStore(TDB2Factory.connectDataset(directory.toString()));
+    }
+
+    /**
+     * @return the TDB2 dataset
+     */
+    public Dataset getDataset() {
+        return this.dataset;
+    }
+
+    @Override
+    public <T> T read(Supplier<T> evaluation) {
+        return Txn.calculateRead(this.dataset, evaluation);
+    }
+
+    @Override
+    public Dataset load(String uri) {
+        if (!this.exists(uri)) {
+            return null;
+        }
+        return this.views.computeIfAbsent(uri, u -> {
+            DatasetGraph dsg = this.dataset.asDatasetGraph();
+            return DatasetFactory.wrap(DatasetGraphFactory.wrap(dsg.getGraph(NodeFactory.createURI(u))));
+        });
+    }
+
+    @Override
+    public boolean exists(String uri) {
+        if (uri == null) {
+            return false;
+        }
+        Node graph = NodeFactory.createURI(uri);
+        return this.read(() -> this.dataset.asDatasetGraph().containsGraph(graph));
+    }
+
+    @Override
+    public Set<String> uris() {
+        return this.read(() -> {
+            Set<String> uris = new HashSet<>();
+            Iterator<Node> names = this.dataset.asDatasetGraph().listGraphNodes();
+            while (names.hasNext()) {
+                Node name = names.next();
+                if (name.isURI()) {
+                    uris.add(name.getURI());
+                }
+            }
+            return uris;
+        });
+    }
+
+    /**
+     * Store a document, replacing its previous content.
+     *
+     * @param uri the URI string of the document
+     * @param document the RDF dataset of the document, its default graph is
+     * stored
+     */
+    public void put(String uri, Dataset document) {
+        Node graph = NodeFactory.createURI(uri);
+        Txn.executeWrite(this.dataset, () -> {
+            DatasetGraph dsg = this.dataset.asDatasetGraph();
+            dsg.removeGraph(graph);
+            dsg.addGraph(graph, document.asDatasetGraph().getDefaultGraph());
+        });
+        this.views.remove(uri);
+    }
+
+    /**
+     * Store all documents of another store, e.g. to migrate a directory of
+     * Turtle files, in one transaction.
+     *
+     * @param source must be able to list its documents
+     */
+    public void putAll(AclStore source) {
+        Txn.executeWrite(this.dataset, () -> {
+            DatasetGraph dsg = this.dataset.asDatasetGraph();
+            for (String uri : source.uris()) {
+                Dataset document = source.load(uri);
+                if (document != null) {
+                    Node graph = NodeFactory.createURI(uri);
+                    dsg.removeGraph(graph);
+                    dsg.addGraph(graph, document.asDatasetGraph().getDefaultGraph());
+                }
+            }
+        });
+        this.views.clear();
+    }
+
+    /**
+     * Delete a document.
+     *
+     * @param uri the URI string of the document
+     */
+    public void remove(String uri) {
+        Node graph = NodeFactory.createURI(uri);
+        Txn.executeWrite(this.dataset, () -> this.dataset.asDatasetGraph().removeGraph(graph));
+        this.views.remove(uri);
+    }
+
+    @Override
+    public String toString() {
+        return "Tdb2AclStore(" + this.dataset + ")";
+    }
+}
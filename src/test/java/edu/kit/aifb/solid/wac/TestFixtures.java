@@ -0,0 +1,47 @@
+package edu.kit.aifb.solid.wac;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * The fixtures shared by the tests.
+ */
+public final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * The {@code .acl} of a resource is the resource URI (without fragment)
+     * with the suffix {@code .acl}.
+     */
+    public static final WacMapping MAPPING = new WacMapping() {
+        @Override
+        public String getAcl(String resource) {
+            String res = resource.split("#")[0];
+            return res.endsWith(".acl") ? res : res + ".acl";
+        }
+
+        @Override
+        public String getResource(String acl) {
+            String res = acl.split("#")[0];
+            return res.endsWith(".acl") ? res.substring(0, res.length() - ".acl".length()) : res;
+        }
+    };
+
+    /**
+     * @param base the URI string of the document
+     * @param ttl the Turtle of the document
+     * @return a dataset with the Turtle in its default graph
+     */
+    public static Dataset parse(String base, String ttl) {
+        Dataset dataset = DatasetFactory.create();
+        RDFDataMgr.read(dataset.getDefaultModel(), new ByteArrayInputStream(ttl.getBytes(StandardCharsets.UTF_8)), base, Lang.TTL);
+        return dataset;
+    }
+}
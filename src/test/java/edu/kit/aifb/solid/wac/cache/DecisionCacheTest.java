@@ -0,0 +1,111 @@
+package edu.kit.aifb.solid.wac.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.cache.DecisionCache.Decision;
+
+public class DecisionCacheTest {
+
+    private static final String RESOURCE = "http://example.org/test/resource";
+    private static final String ACL = RESOURCE + ".acl";
+    private static final String READ = Namespaces.ACL + "Read";
+    private static final String WEBID = "http://example.org/test/webid";
+
+    @Test
+    public void testHitAfterMiss() {
+        DecisionCache cache = new DecisionCache(10, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            Decision decision = cache.get(RESOURCE, READ, WEBID, () -> {
+                loads.incrementAndGet();
+                return new Decision(ACL + "#auth", ACL);
+            });
+            assertEquals(ACL + "#auth", decision.getRule());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testUnauthenticatedIsSeparateKey() {
+        DecisionCache cache = new DecisionCache(10, 1, TimeUnit.MINUTES);
+        cache.get(RESOURCE, READ, WEBID, () -> new Decision(ACL + "#auth", ACL));
+        Decision decision = cache.get(RESOURCE, READ, null, () -> new Decision(null, ACL));
+        assertNull(decision.getRule());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateByAcl() {
+        DecisionCache cache = new DecisionCache(10, 1, TimeUnit.MINUTES);
+        cache.get(RESOURCE, READ, WEBID, () -> new Decision(ACL + "#auth", ACL));
+        cache.get(RESOURCE + "2", READ, WEBID, () -> new Decision(null, RESOURCE + "2.acl"));
+        cache.invalidate(ACL);
+        assertEquals(1, cache.size());
+        Decision decision = cache.get(RESOURCE, READ, WEBID, () -> new Decision(null, ACL));
+        assertNull(decision.getRule());
+    }
+
+    @Test
+    public void testExpiry() {
+        DecisionCache cache = new DecisionCache(10, 0, TimeUnit.NANOSECONDS);
+        cache.get(RESOURCE, READ, WEBID, () -> new Decision(ACL + "#auth", ACL));
+        cache.get(RESOURCE, READ, WEBID, () -> new Decision(ACL + "#auth", ACL));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void testEvictionKeepsBound() {
+        DecisionCache cache = new DecisionCache(5, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 50; i++) {
+            cache.get(RESOURCE + i, READ, WEBID, () -> new Decision(null, ACL));
+        }
+        assertEquals(5, cache.size());
+        assertEquals(45, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        DecisionCache cache = new DecisionCache(10, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+        int threads = 8;
+        // the load waits until every caller has arrived
+        CountDownLatch arrived = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = executor.submit(() -> {
+                    arrived.countDown();
+                    return cache.get(RESOURCE, READ, WEBID, () -> {
+                        loads.incrementAndGet();
+                        try {
+                            arrived.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new Decision(ACL + "#auth", ACL);
+                    }).getRule();
+                });
+            }
+            for (Future<?> future : futures) {
+                assertEquals(ACL + "#auth", future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+}
@@ -1,21 +1,54 @@
 package edu.kit.aifb.solid.wac.example;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecException;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.tdb2.TDB2Factory;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import edu.kit.aifb.solid.wac.Namespaces;
 import edu.kit.aifb.solid.wac.WacMapping;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.index.AclSnapshot;
+import edu.kit.aifb.solid.wac.index.AgentFilters;
+import edu.kit.aifb.solid.wac.index.CompactAcls;
+import edu.kit.aifb.solid.wac.index.ContainerTrie;
+import edu.kit.aifb.solid.wac.index.GroupMembershipIndex;
+import edu.kit.aifb.solid.wac.metrics.WacMetrics;
+import edu.kit.aifb.solid.wac.query.AccessRequest;
+import edu.kit.aifb.solid.wac.query.WacBatch;
+import edu.kit.aifb.solid.wac.query.WacAllow;
+import edu.kit.aifb.solid.wac.query.WacEngine;
+import edu.kit.aifb.solid.wac.query.WacQuery;
+import edu.kit.aifb.solid.wac.query.WacQueryBuilder;
+import edu.kit.aifb.solid.wac.query.WacQueryType;
+import edu.kit.aifb.solid.wac.query.WarmUp;
+import edu.kit.aifb.solid.wac.store.MapAclStore;
+import edu.kit.aifb.solid.wac.store.Tdb2AclStore;
 
 /**
  *
@@ -603,4 +636,422 @@ public class AppTest {
         boolean ok = (rule != null) && rule.equals(containerWithAcl + "#auth");
         assertTrue("Expected: rule=<" + containerWithAcl + "#auth>; Result: rule=" + rule, ok);
     }
+
+    /*
+         * COMPILED ACL INDEX
+     */
+    private static String[] allResources() {
+        String[] resources = {
+            publicReadAcl.split(".acl")[0],
+            authenticatedWriteAcl.split(".acl")[0],
+            groupAppendAcl.split(".acl")[0],
+            agentControlAcl,
+            agentControlAcl.split(".acl")[0],
+            noAclFound,
+            containerWithAcl.split(".acl")[0] + "someContainer/someFile"
+        };
+        return resources;
+    }
+
+    private static String bodyFor(String method, boolean deleting) {
+        if (!PATCH.equals(method)) {
+            return "";
+        }
+        return deleting ? patchInsertDelete : patchInsert;
+    }
+
+    private static String evaluate(WacQueryBuilder queryBuilder) {
+        for (WacQuery query : queryBuilder.build()) {
+            String ruleMatch = query.exec();
+            if (ruleMatch != null) {
+                return ruleMatch;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testEvaluationModesMatchSparql() throws IOException {
+        AclIndexCache indexCache = new AclIndexCache();
+        Path snapshotFile = Files.createTempFile("acl", ".snapshot");
+        AclSnapshot.write(new MapAclStore(envResourceMap), snapshotFile);
+        AclSnapshot snapshot = AclSnapshot.open(snapshotFile);
+        CompactAcls compact = CompactAcls.compile(new MapAclStore(envResourceMap));
+        AgentFilters agentFilters = new AgentFilters();
+        WacEngine compactEngine = WacEngine.newBuilder(compact, envResourceAclMap).build();
+        Tdb2AclStore tdb2 = new Tdb2AclStore(TDB2Factory.createDataset());
+        tdb2.putAll(new MapAclStore(envResourceMap));
+        ContainerTrie containerTrie = new ContainerTrie(envResourceMap, envResourceAclMap);
+        GroupMembershipIndex groupIndex = new GroupMembershipIndex(envResourceMap);
+        String[] methods = {GET, POST, PATCH, PUT, DELETE};
+        String[] agents = {null, webid, address + "someoneElse"};
+        for (String resource : allResources()) {
+            for (String method : methods) {
+                for (boolean deleting : new boolean[]{true, false}) {
+                    for (String agent : agents) {
+                        String body = bodyFor(method, deleting);
+                        String expected;
+                        try {
+                            expected = App.checkAccessControl(resource, method, body, agent, envResourceMap, envResourceAclMap);
+                        } catch (QueryExecException e) {
+                            continue; // SPARQL cannot query an unknown agent group document
+                        }
+                        String[] rules = {
+                            App.checkAccessControl(resource, method, body, agent, envResourceMap, envResourceAclMap, indexCache),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingSinglePass()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingIndex(indexCache)
+                            .usingSinglePass()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingContainerTrie(containerTrie)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingGroupIndex(groupIndex)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingPrecompiledQueries()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingAgentFilters(agentFilters)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingIndex(indexCache)
+                            .usingAgentFilters(agentFilters)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                            .usingPrecompiledQueries()
+                            .usingSinglePass()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(snapshot, envResourceAclMap)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(snapshot, envResourceAclMap)
+                            .usingSinglePass()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(compact, envResourceAclMap)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            evaluate(WacQueryBuilder.newBuilder(compact, envResourceAclMap)
+                            .usingSinglePass()
+                            .forRequest(resource, method, body)
+                            .byAgent(agent)),
+                            tdb2.read(() -> evaluate(WacQueryBuilder.newBuilder(tdb2, envResourceAclMap)
+                            .forRequest(resource, method, body)
+                            .byAgent(agent))),
+                            WacEngine.newBuilder(tdb2, envResourceAclMap).usingPrecompiledQueries().build()
+                            .check(new AccessRequest(resource, method, body), agent),
+                            compactEngine.check(compactEngine.prepare(new AccessRequest(resource, method, body), agent))
+                        };
+                        for (String rule : rules) {
+                            boolean ok = (expected == null) ? rule == null : expected.equals(rule);
+                            assertTrue(method + " <" + resource + "> by " + agent + " Expected: rule=" + expected + "; Result: rule=" + rule, ok);
+                        }
+                    }
+                }
+            }
+        }
+        Files.delete(snapshotFile);
+        assertTrue(agentFilters.toString(), agentFilters.getAgentSkips() > 0);
+    }
+
+    @Test
+    public void testWacAllowMatchesChecks() {
+        WacEngine[] engines = {
+            WacEngine.newBuilder(envResourceMap, envResourceAclMap).build(),
+            WacEngine.newBuilder(envResourceMap, envResourceAclMap).usingIndex(new AclIndexCache()).build(),
+            WacEngine.newBuilder(CompactAcls.compile(new MapAclStore(envResourceMap)), envResourceAclMap).build()
+        };
+        String[] agents = {null, webid, address + "someoneElse"};
+        for (String resource : allResources()) {
+            String acl = envResourceAclMap.getAcl(resource);
+            // Read, Write, Append, Control
+            AccessRequest[] requests = {
+                new AccessRequest(resource, GET, ""),
+                new AccessRequest(resource, PUT, ""),
+                new AccessRequest(resource, POST, ""),
+                new AccessRequest(acl, GET, "")
+            };
+            for (String agent : agents) {
+                for (WacEngine engine : engines) {
+                    WacAllow allow;
+                    try {
+                        allow = engine.checkModes(resource, agent);
+                    } catch (QueryExecException e) {
+                        continue; // SPARQL cannot query an unknown agent group document
+                    }
+                    WacAllow anonymous = engine.checkModes(resource, null);
+                    assertEquals(anonymous.getPublicModes(), allow.getPublicModes());
+                    for (int i = 0; i < requests.length; i++) {
+                        int mode = 1 << i;
+                        boolean isAllowed = engine.check(requests[i], agent) != null;
+                        assertEquals(resource + " by " + agent + ": " + allow, isAllowed, allow.isUserAllowed(mode));
+                        assertEquals(resource + ": " + allow, engine.check(requests[i], null) != null, allow.isPublicAllowed(mode));
+                    }
+                    if (allow.isUserAllowed(WacAllow.WRITE)) {
+                        assertTrue(allow.isUserAllowed(WacAllow.APPEND));
+                    }
+                }
+            }
+        }
+        assertEquals("user=\"read write append\",public=\"read\"", new WacAllow(WacAllow.WRITE, WacAllow.READ).toHeader());
+        assertEquals(WacAllow.CONTROL, WacAllow.bitOf(Namespaces.ACL + "Control"));
+    }
+
+    @Test
+    public void testWarmUpPreparesAllDocuments() {
+        GroupMembershipIndex groupIndex = new GroupMembershipIndex(envResourceMap);
+        WacEngine engine = WacEngine.newBuilder(envResourceMap, envResourceAclMap)
+                .usingIndex(new AclIndexCache())
+                .usingAgentFilters(new AgentFilters())
+                .usingGroupIndex(groupIndex)
+                .usingContainerTrie(new ContainerTrie(envResourceMap, envResourceAclMap))
+                .build();
+        Set<String> warmed = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        WarmUp warmUp = WarmUp.newBuilder(engine)
+                .usingPool(pool)
+                .usingListener((document, done, total) -> warmed.add(document))
+                .start()
+                .await();
+        pool.shutdown();
+        assertTrue(warmUp.toString(), warmUp.isReady());
+        assertEquals(envResourceMap.size(), warmUp.getTotal());
+        assertEquals(warmUp.getTotal(), warmUp.getDone());
+        assertEquals(0, warmUp.getMissing());
+        assertTrue(warmUp.getFailures().isEmpty());
+        assertTrue(warmUp.getDuration() >= 0);
+        assertEquals(envResourceMap.keySet(), warmed);
+        // indexed by the warm-up, not by a check
+        assertTrue(groupIndex.getGroups(webid).contains(group + "#1"));
+        for (String resource : allResources()) {
+            for (String agent : new String[]{null, webid}) {
+                String expected = App.checkAccessControl(resource, GET, "", agent, envResourceMap, envResourceAclMap);
+                assertEquals(resource + " by " + agent, expected, engine.check(new AccessRequest(resource, GET, ""), agent));
+            }
+        }
+
+        WacEngine compactEngine = WacEngine.newBuilder(CompactAcls.compile(new MapAclStore(envResourceMap)), envResourceAclMap).build();
+        WarmUp missing = WarmUp.newBuilder(compactEngine)
+                .usingDocuments(List.of(publicReadAcl, address + "missing.acl"))
+                .start()
+                .await();
+        assertEquals(2, missing.getDone());
+        assertEquals(1, missing.getMissing());
+    }
+
+    @Test
+    public void testSinglePassBuildsOneQuery() {
+        WacQuery[] queries = WacQueryBuilder.newBuilder(envResourceMap, envResourceAclMap)
+                .usingSinglePass()
+                .forRequest(groupAppendAcl.split(".acl")[0], POST, "")
+                .byAgent(webid)
+                .build();
+        boolean ok = queries.length == 1 && (groupAppendAcl + "#auth").equals(queries[0].exec());
+        assertTrue("Expected: one query matching rule=<" + groupAppendAcl + "#auth>", ok);
+    }
+
+    @Test
+    public void testSharedEngineMatchesSparql() throws Exception {
+        WacEngine[] engines = {
+            WacEngine.newBuilder(envResourceMap, envResourceAclMap).build(),
+            WacEngine.newBuilder(envResourceMap, envResourceAclMap)
+            .usingIndex(new AclIndexCache())
+            .usingContainerTrie(new ContainerTrie(envResourceMap, envResourceAclMap))
+            .usingGroupIndex(new GroupMembershipIndex(envResourceMap))
+            .usingSinglePass()
+            .build()
+        };
+        String[] methods = {GET, POST, PATCH, PUT, DELETE};
+        String[] agents = {null, webid, address + "someoneElse"};
+        List<AccessRequest> requests = new ArrayList<>();
+        List<String> requestAgents = new ArrayList<>();
+        List<String> expectedRules = new ArrayList<>();
+        for (String resource : allResources()) {
+            for (String method : methods) {
+                for (boolean deleting : new boolean[]{true, false}) {
+                    for (String agent : agents) {
+                        String body = bodyFor(method, deleting);
+                        try {
+                            expectedRules.add(App.checkAccessControl(resource, method, body, agent, envResourceMap, envResourceAclMap));
+                        } catch (QueryExecException e) {
+                            continue; // SPARQL cannot query an unknown agent group document
+                        }
+                        requests.add(new AccessRequest(resource, method, body));
+                        requestAgents.add(agent);
+                    }
+                }
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (WacEngine engine : engines) {
+                List<Future<String>> rules = new ArrayList<>();
+                for (int round = 0; round < 20; round++) {
+                    for (int i = 0; i < requests.size(); i++) {
+                        AccessRequest request = requests.get(i);
+                        String agent = requestAgents.get(i);
+                        rules.add(executor.submit(() -> engine.check(request, agent)));
+                    }
+                }
+                for (int i = 0; i < rules.size(); i++) {
+                    String expected = expectedRules.get(i % requests.size());
+                    String rule = rules.get(i).get();
+                    boolean ok = (expected == null) ? rule == null : expected.equals(rule);
+                    assertTrue(requests.get(i % requests.size()) + " by " + requestAgents.get(i % requests.size()) + " Expected: rule=" + expected + "; Result: rule=" + rule, ok);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMetricsForStages() {
+        WacMetrics metrics = new WacMetrics();
+        WacEngine engine = WacEngine.newBuilder(envResourceMap, envResourceAclMap)
+                .usingMetrics(metrics)
+                .build();
+        // only the group rule grants access
+        String rule = engine.check(new AccessRequest(groupAppendAcl.split(".acl")[0], PATCH, patchInsert), webid);
+        boolean ok = (groupAppendAcl + "#auth").equals(rule)
+                && metrics.getAllowedCount() == 1
+                && metrics.getClassification().getCount() == 1
+                && metrics.getResolution().getCount() == 1
+                && metrics.getInheritanceDepth().getMax() == 0
+                && metrics.getQuery(WacQueryType.AGENT_GROUP).getCount() == 1
+                && metrics.getGroupDocuments().getMax() >= 1;
+        assertTrue("Expected: all stages measured; Result:\n" + metrics, ok);
+        // inherited from two levels up, nothing matches
+        String inheriting = containerWithAcl.split(".acl")[0] + "someContainer/someFile";
+        rule = engine.check(new AccessRequest(inheriting, PUT, ""), webid);
+        ok = rule == null
+                && metrics.getDeniedCount() == 1
+                && metrics.getInheritanceDepth().getMax() == 2
+                && metrics.getQuery(WacQueryType.PUBLIC).getCount() == 2;
+        assertTrue("Expected: denied after inheritance; Result:\n" + metrics, ok);
+    }
+
+    @Test
+    public void testAsyncMatchesSparql() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WacEngine[] engines = {
+                WacEngine.newBuilder(envResourceMap, envResourceAclMap).build(),
+                WacEngine.newBuilder(envResourceMap, envResourceAclMap).usingExecutor(executor).build(),
+                WacEngine.newBuilder(envResourceMap, envResourceAclMap).usingIndex(new AclIndexCache()).build()
+            };
+            String[] methods = {GET, POST, PATCH, PUT, DELETE};
+            String[] agents = {null, webid, address + "someoneElse"};
+            for (String resource : allResources()) {
+                for (String method : methods) {
+                    for (boolean deleting : new boolean[]{true, false}) {
+                        for (String agent : agents) {
+                            String body = bodyFor(method, deleting);
+                            String expected;
+                            try {
+                                expected = App.checkAccessControl(resource, method, body, agent, envResourceMap, envResourceAclMap);
+                            } catch (QueryExecException e) {
+                                continue; // SPARQL cannot query an unknown agent group document
+                            }
+                            for (WacEngine engine : engines) {
+                                String rule = engine.checkAsync(new AccessRequest(resource, method, body), agent).get();
+                                boolean ok = (expected == null) ? rule == null : expected.equals(rule);
+                                assertTrue(method + " <" + resource + "> by " + agent + " Expected: rule=" + expected + "; Result: rule=" + rule, ok);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncCancelledBeforeEvaluation() {
+        List<Runnable> tasks = new ArrayList<>();
+        WacEngine engine = WacEngine.newBuilder(envResourceMap, envResourceAclMap)
+                .usingExecutor(tasks::add)
+                .build();
+        CompletableFuture<String> rule = engine.checkAsync(new AccessRequest(groupAppendAcl.split(".acl")[0], POST, ""), webid);
+        rule.cancel(true);
+        int executed = 0;
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+            executed++;
+        }
+        assertTrue("Expected: only building the queries after cancellation; Result: tasks=" + executed, rule.isCancelled() && executed == 1);
+    }
+
+    @Test
+    public void testBatchMatchesSingleChecks() {
+        AclIndexCache indexCache = new AclIndexCache();
+        String[] methods = {GET, POST, PATCH, PUT, DELETE};
+        String[] agents = {null, webid, address + "someoneElse"};
+        for (String agent : agents) {
+            List<AccessRequest> requests = new ArrayList<>();
+            for (String resource : allResources()) {
+                for (String method : methods) {
+                    for (boolean deleting : new boolean[]{true, false}) {
+                        requests.add(new AccessRequest(resource, method, bodyFor(method, deleting)));
+                    }
+                }
+            }
+            List<String> rules = WacBatch.newBatch(envResourceMap, envResourceAclMap)
+                    .byAgent(agent)
+                    .check(requests);
+            assertTrue("Expected: one decision per request", rules.size() == requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                AccessRequest request = requests.get(i);
+                String expected = App.checkAccessControl(request.getResource(), request.getMethod(), request.getBody(), agent, envResourceMap, envResourceAclMap, indexCache);
+                String rule = rules.get(i);
+                boolean ok = (expected == null) ? rule == null : expected.equals(rule);
+                assertTrue(request + " by " + agent + " Expected: rule=" + expected + "; Result: rule=" + rule, ok);
+            }
+        }
+    }
+
+    @Test
+    public void testFilterReadableMatchesSingleChecks() {
+        String inheritingContainer = containerWithAcl.split(".acl")[0];
+        String[] containers = {address, inheritingContainer};
+        String[] agents = {null, webid};
+        for (String container : containers) {
+            List<String> children = new ArrayList<>();
+            for (String resource : allResources()) {
+                children.add(resource);
+            }
+            for (int i = 0; i < 1000; i++) {
+                children.add(container + "child" + i);
+            }
+            children.add(container + "childContainer/");
+            for (String agent : agents) {
+                List<String> readable = WacBatch.newBatch(envResourceMap, envResourceAclMap)
+                        .byAgent(agent)
+                        .filterReadable(container, children);
+                List<String> expected = new ArrayList<>();
+                for (String child : children) {
+                    if (App.checkAccessControl(child, GET, "", agent, envResourceMap, envResourceAclMap, new AclIndexCache()) != null) {
+                        expected.add(child);
+                    }
+                }
+                assertTrue("<" + container + "> by " + agent + " Expected: " + expected.size() + " readable; Result: " + readable.size(), expected.equals(readable));
+            }
+        }
+        List<String> readable = WacBatch.newBatch(envResourceMap, envResourceAclMap)
+                .filterReadable(inheritingContainer, List.of(inheritingContainer + "child"));
+        assertTrue("Expected: publicly readable child of <" + inheritingContainer + ">", readable.size() == 1);
+    }
 }
@@ -0,0 +1,159 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.vocabulary.RDF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+
+public class AclDeltaTest {
+
+    private static final String DOCUMENT = "http://example.org/acl";
+    private static final String[] TARGETS = {"http://example.org/", "http://example.org/a", "http://example.org/b/"};
+    private static final String[] MODES = {Namespaces.ACL + "Read", Namespaces.ACL + "Write", Namespaces.ACL + "Append", Namespaces.ACL + "Control"};
+    private static final String[] AGENTS = {"http://example.org/alice", "http://example.org/bob", "http://example.org/carol"};
+    private static final String[] CLASSES = {AclIndex.PUBLIC_AGENT, AclIndex.AUTHENTICATED_AGENT};
+    private static final String[] PREDICATES = {RDF.type.getURI(), AclIndex.ACCESS_TO, AclIndex.DEFAULT, AclIndex.MODE, AclIndex.AGENT, AclIndex.AGENT_CLASS, AclIndex.AGENT_GROUP, AclIndex.HAS_MEMBER};
+
+    private final Random random = new Random(42);
+
+    private static Node uri(String uri) {
+        return NodeFactory.createURI(uri);
+    }
+
+    private String pick(String[] values) {
+        return values[this.random.nextInt(values.length)];
+    }
+
+    private String group() {
+        return DOCUMENT + "#group" + this.random.nextInt(3);
+    }
+
+    private Triple randomTriple() {
+        String predicate = this.pick(PREDICATES);
+        Node subject = uri(DOCUMENT + "#rule" + this.random.nextInt(6));
+        String object;
+        if (predicate.equals(RDF.type.getURI())) {
+            object = AclIndex.AUTHORIZATION;
+        } else if (predicate.equals(AclIndex.ACCESS_TO) || predicate.equals(AclIndex.DEFAULT)) {
+            object = this.pick(TARGETS);
+        } else if (predicate.equals(AclIndex.MODE)) {
+            object = this.pick(MODES);
+        } else if (predicate.equals(AclIndex.AGENT)) {
+            object = this.pick(AGENTS);
+        } else if (predicate.equals(AclIndex.AGENT_CLASS)) {
+            object = this.pick(CLASSES);
+        } else if (predicate.equals(AclIndex.AGENT_GROUP)) {
+            object = this.group();
+        } else {
+            subject = uri(this.group());
+            object = this.pick(AGENTS);
+        }
+        return Triple.create(subject, uri(predicate), uri(object));
+    }
+
+    private AclDelta randomDelta(Graph graph) {
+        List<Triple> existing = graph.find().toList();
+        List<Triple> deletions = new ArrayList<>();
+        for (int i = this.random.nextInt(4); i > 0 && !existing.isEmpty(); i--) {
+            deletions.add(existing.get(this.random.nextInt(existing.size())));
+        }
+        List<Triple> insertions = new ArrayList<>();
+        for (int i = this.random.nextInt(4); i > 0; i--) {
+            insertions.add(this.randomTriple());
+        }
+        return new AclDelta(DOCUMENT, deletions, insertions);
+    }
+
+    private static void assertSameRules(AclIndex expected, AclIndex actual) {
+        for (String target : TARGETS) {
+            for (boolean inherited : new boolean[]{true, false}) {
+                for (String mode : MODES) {
+                    assertEquals(expected.findPublicRule(target, inherited, mode), actual.findPublicRule(target, inherited, mode));
+                    assertEquals(expected.findAuthenticatedRule(target, inherited, mode), actual.findAuthenticatedRule(target, inherited, mode));
+                    for (String agent : AGENTS) {
+                        assertEquals(expected.findAgentRule(target, inherited, mode, agent), actual.findAgentRule(target, inherited, mode, agent));
+                        assertEquals(expected.findGroupRule(target, inherited, mode, group -> expected.hasMember(group, agent)),
+                                actual.findGroupRule(target, inherited, mode, group -> actual.hasMember(group, agent)));
+                        assertEquals(expected.findRule(target, inherited, mode, agent, group -> expected.hasMember(group, agent)),
+                                actual.findRule(target, inherited, mode, agent, group -> actual.hasMember(group, agent)));
+                    }
+                }
+            }
+        }
+        for (int g = 0; g < 3; g++) {
+            for (String agent : AGENTS) {
+                assertEquals(expected.hasMember(DOCUMENT + "#group" + g, agent), actual.hasMember(DOCUMENT + "#group" + g, agent));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalMatchesRebuild() {
+        Dataset dataset = DatasetFactory.create();
+        Graph graph = dataset.asDatasetGraph().getDefaultGraph();
+        for (int i = 0; i < 30; i++) {
+            graph.add(this.randomTriple());
+        }
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        resourceMap.put(DOCUMENT, dataset);
+        AclIndexCache cache = new AclIndexCache();
+        AclIndex incremental = cache.get(DOCUMENT, dataset);
+        GroupMembershipIndex groupIndex = new GroupMembershipIndex(resourceMap);
+        groupIndex.indexAll();
+
+        for (int step = 0; step < 300; step++) {
+            AclDelta delta = this.randomDelta(graph);
+            delta.applyTo(dataset);
+            cache.apply(delta);
+            groupIndex.apply(delta);
+
+            // still the same, updated index
+            assertSame(incremental, cache.get(DOCUMENT, dataset));
+            assertSameRules(AclIndex.compile(dataset), incremental);
+            GroupMembershipIndex rebuilt = new GroupMembershipIndex(resourceMap);
+            rebuilt.indexAll();
+            for (String agent : AGENTS) {
+                assertEquals("step " + step + ": " + delta, rebuilt.getGroups(agent), groupIndex.getGroups(agent));
+            }
+        }
+    }
+
+    @Test
+    public void testDiff() {
+        Dataset before = DatasetFactory.create();
+        Dataset after = DatasetFactory.create();
+        Triple kept = Triple.create(uri(DOCUMENT + "#rule"), RDF.type.asNode(), uri(AclIndex.AUTHORIZATION));
+        Triple removed = Triple.create(uri(DOCUMENT + "#rule"), uri(AclIndex.MODE), uri(MODES[0]));
+        Triple added = Triple.create(uri(DOCUMENT + "#rule"), uri(AclIndex.MODE), uri(MODES[1]));
+        before.asDatasetGraph().getDefaultGraph().add(kept);
+        before.asDatasetGraph().getDefaultGraph().add(removed);
+        after.asDatasetGraph().getDefaultGraph().add(kept);
+        after.asDatasetGraph().getDefaultGraph().add(added);
+        AclDelta delta = AclDelta.diff(DOCUMENT, before, after);
+        assertEquals(List.of(removed), delta.getDeletions());
+        assertEquals(List.of(added), delta.getInsertions());
+
+        AclIndex index = AclIndex.compile(before);
+        index.apply(delta);
+        Triple target = Triple.create(uri(DOCUMENT + "#rule"), uri(AclIndex.ACCESS_TO), uri(TARGETS[0]));
+        Triple agent = Triple.create(uri(DOCUMENT + "#rule"), uri(AclIndex.AGENT), uri(AGENTS[0]));
+        index.apply(new AclDelta(DOCUMENT, null, List.of(target, agent)));
+        assertNull(index.findAgentRule(TARGETS[0], false, MODES[0], AGENTS[0]));
+        assertEquals(DOCUMENT + "#rule", index.findAgentRule(TARGETS[0], false, MODES[1], AGENTS[0]));
+    }
+}
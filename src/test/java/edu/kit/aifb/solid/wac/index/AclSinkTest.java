@@ -0,0 +1,95 @@
+package edu.kit.aifb.solid.wac.index;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Test;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+
+public class AclSinkTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ACL = ROOT + ".acl";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+    private static final String READ = Namespaces.ACL + "Read";
+    private static final String WRITE = Namespaces.ACL + "Write";
+    private static final String[] MODES = {READ, Namespaces.ACL + "Append", WRITE, Namespaces.ACL + "Control"};
+
+    private static final String TTL = String.format("""
+            @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+            @prefix foaf: <http://xmlns.com/foaf/0.1/> .
+            @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+            @prefix dc: <http://purl.org/dc/terms/> .
+            <> dc:title "Root" ; dc:creator <%1$s> .
+            <#public> a acl:Authorization;
+                acl:agentClass foaf:Agent;
+                acl:accessTo <./>;
+                acl:mode acl:Read;
+                dc:description "everyone may read".
+            <#alice> a acl:Authorization;
+                acl:agent <%1$s>;
+                acl:accessTo <./>;
+                acl:default <./>;
+                acl:mode acl:Write, acl:Control.
+            <#friends> a acl:Authorization;
+                acl:agentGroup <#group>;
+                acl:default <./>;
+                acl:mode acl:Append.
+            <#group> vcard:hasMember <%2$s>, [ foaf:name "anonymous" ] .
+            [] a acl:Authorization; acl:agentClass foaf:Agent; acl:accessTo <./>; acl:mode acl:Write .
+            """, ALICE, BOB);
+
+    private static AclSink stream(String ttl, Lang lang) {
+        AclSink sink = new AclSink();
+        RDFParser.fromString(ttl).lang(lang).base(ACL).parse(sink);
+        return sink;
+    }
+
+    @Test
+    public void testSameRulesAsCompiledModel() {
+        AclIndex expected = AclIndex.compile(parse(ACL, TTL));
+        AclIndex actual = stream(TTL, Lang.TTL).build();
+        for (String mode : MODES) {
+            for (boolean isInherited : new boolean[]{false, true}) {
+                for (String agent : new String[]{null, ALICE, BOB}) {
+                    assertEquals(mode + " " + isInherited + " " + agent,
+                            expected.findRule(ROOT, isInherited, mode, agent, group -> expected.hasMember(group, BOB) && BOB.equals(agent)),
+                            actual.findRule(ROOT, isInherited, mode, agent, group -> actual.hasMember(group, BOB) && BOB.equals(agent)));
+                }
+            }
+        }
+        assertEquals(ACL + "#alice", actual.findAgentRule(ROOT, true, WRITE, ALICE));
+        assertTrue(actual.hasMember(ACL + "#group", BOB));
+        // the blank node authorization cannot be retrieved
+        assertNull(actual.findPublicRule(ROOT, false, WRITE));
+    }
+
+    @Test
+    public void testKeepsOnlyRuleTriples() {
+        AclSink sink = stream(TTL, Lang.TTL);
+        // 4 + 6 + 4 of the named rules, 1 membership
+        assertEquals(15, sink.getKeptCount());
+        assertTrue(sink.getTripleCount() > sink.getKeptCount());
+    }
+
+    @Test
+    public void testOnlyDefaultGraph() {
+        String trig = String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#read> a acl:Authorization; acl:agent <%1$s>; acl:accessTo <./>; acl:mode acl:Read .
+                <urn:x-graph:other> {
+                    <#write> a acl:Authorization; acl:agent <%1$s>; acl:accessTo <./>; acl:mode acl:Write .
+                }
+                """, ALICE);
+        AclIndex index = stream(trig, Lang.TRIG).build();
+        assertEquals(ACL + "#read", index.findAgentRule(ROOT, false, READ, ALICE));
+        assertNull(index.findAgentRule(ROOT, false, WRITE, ALICE));
+        assertFalse(index.hasMember(ACL + "#group", BOB));
+    }
+}
@@ -0,0 +1,118 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.store.MapAclStore;
+
+public class AclSnapshotTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ACL = ROOT + ".acl";
+    private static final String GROUPS = ROOT + "gruppen/ü";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+    private static final String READ = Namespaces.ACL + "Read";
+    private static final String APPEND = Namespaces.ACL + "Append";
+    private static final String WRITE = Namespaces.ACL + "Write";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Map<String, Dataset> resourceMap;
+    private AclSnapshot snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        this.resourceMap = new HashMap<>();
+        this.resourceMap.put(ACL, parse(ACL, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                @prefix foaf: <http://xmlns.com/foaf/0.1/> .
+                <#public> a acl:Authorization;
+                    acl:agentClass foaf:Agent;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                <#authenticated> a acl:Authorization;
+                    acl:agentClass acl:AuthenticatedAgent;
+                    acl:default <./>;
+                    acl:mode acl:Read.
+                <#alice> a acl:Authorization;
+                    acl:agent <%s>;
+                    acl:accessTo <./>;
+                    acl:default <./>;
+                    acl:mode acl:Write, acl:Control.
+                <#group> a acl:Authorization;
+                    acl:agentGroup <gruppen/ü#friends>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Append.
+                """, ALICE)));
+        this.resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, BOB)));
+        this.resourceMap.put(ROOT + "empty/.acl", DatasetFactory.create());
+        Path file = this.folder.getRoot().toPath().resolve("acl.snapshot");
+        AclSnapshot.write(new MapAclStore(this.resourceMap), file);
+        this.snapshot = AclSnapshot.open(file);
+    }
+
+    @Test
+    public void testMatchesIndex() {
+        AclIndex index = AclIndex.compile(this.resourceMap.get(ACL));
+        AclRules rules = this.snapshot.get(ACL);
+        String[] modes = {READ, APPEND, WRITE, Namespaces.ACL + "Control"};
+        String[] agents = {ALICE, BOB, "http://example.org/carol"};
+        for (boolean inherited : new boolean[]{true, false}) {
+            for (String mode : modes) {
+                assertEquals(index.findPublicRule(ROOT, inherited, mode), rules.findPublicRule(ROOT, inherited, mode));
+                assertEquals(index.findAuthenticatedRule(ROOT, inherited, mode), rules.findAuthenticatedRule(ROOT, inherited, mode));
+                for (String agent : agents) {
+                    assertEquals(index.findAgentRule(ROOT, inherited, mode, agent), rules.findAgentRule(ROOT, inherited, mode, agent));
+                    assertEquals(index.findRule(ROOT, inherited, mode, agent, group -> this.snapshot.hasMember(group, agent)),
+                            rules.findRule(ROOT, inherited, mode, agent, group -> this.snapshot.hasMember(group, agent)));
+                }
+            }
+        }
+        assertEquals(ACL + "#alice", rules.findAgentRule(ROOT, false, APPEND, ALICE));
+        assertEquals(ACL + "#group", rules.findGroupRule(ROOT, false, APPEND, group -> this.snapshot.hasMember(group, BOB)));
+        assertNull(rules.findGroupRule(ROOT, false, APPEND, group -> this.snapshot.hasMember(group, ALICE)));
+    }
+
+    @Test
+    public void testDocumentsAndMemberships() {
+        assertEquals(3, this.snapshot.size());
+        assertTrue(this.snapshot.contains(ACL));
+        assertTrue(this.snapshot.contains(ROOT + "empty/.acl"));
+        assertFalse(this.snapshot.contains(ROOT + "missing/.acl"));
+        assertFalse(this.snapshot.contains(null));
+        assertSame(AclIndex.EMPTY, this.snapshot.get(ROOT + "missing/.acl"));
+        assertNull(this.snapshot.get(ROOT + "empty/.acl").findPublicRule(ROOT + "empty/", false, READ));
+        assertTrue(this.snapshot.hasMember(GROUPS + "#friends", BOB));
+        assertFalse(this.snapshot.hasMember(GROUPS + "#friends", ALICE));
+        assertFalse(this.snapshot.hasMember(ROOT + "other#friends", BOB));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.writeString(file, "@prefix acl: <http://www.w3.org/ns/auth/acl#> .");
+        AclSnapshot.open(file);
+    }
+}
@@ -0,0 +1,91 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Test;
+
+public class AgentFiltersTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ACL = ROOT + ".acl";
+    private static final String GROUPS = ROOT + "groups";
+    private static final String ALICE = ROOT + "alice";
+    private static final String BOB = ROOT + "bob";
+    private static final String CAROL = ROOT + "carol";
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.put(ROOT + "agent" + i + "#me");
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(ROOT + "agent" + i + "#me"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(ROOT + "other" + i + "#me")) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void testSkipsAgentsNotMentioned() {
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        Dataset acl = parse(ACL, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#alice> a acl:Authorization;
+                    acl:agent <%s>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                <#group> a acl:Authorization;
+                    acl:agentGroup <groups#friends>, <elsewhere#team>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                """, ALICE));
+        resourceMap.put(ACL, acl);
+        resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, BOB)));
+        AgentFilters filters = new AgentFilters(0.001);
+        assertTrue(filters.mightGrantAgent(ACL, acl, ALICE));
+        assertFalse(filters.mightGrantAgent(ACL, acl, BOB));
+        assertEquals(2, filters.getAgentChecks());
+        assertEquals(1, filters.getAgentSkips());
+        // the group document elsewhere is unknown, so anyone might be member
+        assertTrue(filters.mightGrantGroup(ACL, acl, CAROL, resourceMap::get));
+        resourceMap.put(ROOT + "elsewhere", DatasetFactory.create());
+        assertTrue(filters.mightGrantGroup(ACL, acl, BOB, resourceMap::get));
+        assertFalse(filters.mightGrantGroup(ACL, acl, CAROL, resourceMap::get));
+        assertEquals(3, filters.getGroupChecks());
+        assertEquals(1, filters.getGroupSkips());
+        filters.resetStatistics();
+        assertEquals(0, filters.getAgentChecks());
+
+        // a replaced dataset is filtered anew
+        Dataset changed = parse(ACL, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#bob> a acl:Authorization;
+                    acl:agent <%s>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                """, BOB));
+        assertTrue(filters.mightGrantAgent(ACL, changed, BOB));
+        assertFalse(filters.mightGrantGroup(ACL, changed, BOB, resourceMap::get));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidRate() {
+        new AgentFilters(1);
+    }
+}
@@ -0,0 +1,180 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.store.MapAclStore;
+
+public class CompactAclsTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ACL = ROOT + ".acl";
+    private static final String GROUPS = ROOT + "groups";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+    private static final String CAROL = "http://example.org/carol";
+    private static final String READ = Namespaces.ACL + "Read";
+    private static final String APPEND = Namespaces.ACL + "Append";
+    private static final String WRITE = Namespaces.ACL + "Write";
+    private static final String CONTROL = Namespaces.ACL + "Control";
+
+    private Map<String, Dataset> resourceMap;
+    private CompactAcls compact;
+
+    @Before
+    public void setUp() {
+        this.resourceMap = new HashMap<>();
+        this.resourceMap.put(ACL, parse(ACL, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                @prefix foaf: <http://xmlns.com/foaf/0.1/> .
+                <#public> a acl:Authorization;
+                    acl:agentClass foaf:Agent;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                <#authenticated> a acl:Authorization;
+                    acl:agentClass acl:AuthenticatedAgent;
+                    acl:default <./>;
+                    acl:mode acl:Read.
+                <#alice> a acl:Authorization;
+                    acl:agent <%s>;
+                    acl:accessTo <./>;
+                    acl:default <./>;
+                    acl:mode acl:Write, acl:Control.
+                <#group> a acl:Authorization;
+                    acl:agentGroup <groups#friends>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Append.
+                """, ALICE)));
+        this.resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, BOB)));
+        this.resourceMap.put(ROOT + "empty/.acl", DatasetFactory.create());
+        this.compact = CompactAcls.compile(new MapAclStore(this.resourceMap));
+    }
+
+    @Test
+    public void testMatchesIndex() {
+        AclIndex index = AclIndex.compile(this.resourceMap.get(ACL));
+        AclRules rules = this.compact.get(ACL);
+        IriDictionary dictionary = this.compact.getDictionary();
+        int acl = dictionary.idOf(ACL);
+        int root = dictionary.idOf(ROOT);
+        for (boolean inherited : new boolean[]{true, false}) {
+            for (String mode : new String[]{READ, APPEND, WRITE, CONTROL}) {
+                assertEquals(index.findPublicRule(ROOT, inherited, mode), rules.findPublicRule(ROOT, inherited, mode));
+                assertEquals(index.findPublicRule(ROOT, inherited, mode),
+                        dictionary.stringOf(this.compact.findPublicRule(acl, root, inherited, dictionary.idOf(mode))));
+                assertEquals(index.findAuthenticatedRule(ROOT, inherited, mode), rules.findAuthenticatedRule(ROOT, inherited, mode));
+                for (String agent : new String[]{ALICE, BOB, CAROL}) {
+                    assertEquals(index.findAgentRule(ROOT, inherited, mode, agent), rules.findAgentRule(ROOT, inherited, mode, agent));
+                    String expected = index.findRule(ROOT, inherited, mode, agent, group -> this.compact.hasMember(group, agent));
+                    assertEquals(expected, rules.findRule(ROOT, inherited, mode, agent, group -> this.compact.hasMember(group, agent)));
+                    assertEquals(expected, dictionary.stringOf(this.compact.findRule(acl, root, inherited, dictionary.idOf(mode), dictionary.idOf(agent))));
+                }
+            }
+        }
+        assertEquals(ACL + "#alice", rules.findAgentRule(ROOT, false, APPEND, ALICE));
+        assertEquals(ACL + "#group", rules.findGroupRule(ROOT, false, APPEND, group -> this.compact.hasMember(group, BOB)));
+        assertNull(rules.findGroupRule(ROOT, false, APPEND, group -> this.compact.hasMember(group, ALICE)));
+    }
+
+    @Test
+    public void testDocumentsAndMemberships() {
+        assertEquals(3, this.compact.size());
+        assertTrue(this.compact.contains(ACL));
+        assertTrue(this.compact.contains(ROOT + "empty/.acl"));
+        assertFalse(this.compact.contains(ROOT + "missing/.acl"));
+        assertFalse(this.compact.contains(ROOT));
+        assertFalse(this.compact.contains(null));
+        assertSame(AclIndex.EMPTY, this.compact.get(ROOT + "missing/.acl"));
+        assertNull(this.compact.get(ROOT + "empty/.acl").findPublicRule(ROOT + "empty/", false, READ));
+        assertTrue(this.compact.hasMember(GROUPS + "#friends", BOB));
+        assertFalse(this.compact.hasMember(GROUPS + "#friends", ALICE));
+        assertFalse(this.compact.hasMember(ROOT + "other#friends", BOB));
+        assertTrue(this.compact.get(GROUPS).hasMember(GROUPS + "#friends", BOB));
+        assertFalse(this.compact.get(ACL).hasMember(GROUPS + "#friends", BOB));
+    }
+
+    @Test
+    public void testUnknownIrisAreNotFound() {
+        IriDictionary dictionary = this.compact.getDictionary();
+        int acl = dictionary.idOf(ACL);
+        assertEquals(IriDictionary.NONE, dictionary.idOf(CAROL));
+        assertEquals(IriDictionary.NONE, this.compact.findRule(acl, dictionary.idOf(ROOT), false, dictionary.idOf(CONTROL), IriDictionary.NONE));
+        assertEquals(ACL + "#public", dictionary.stringOf(this.compact.findRule(acl, dictionary.idOf(ROOT), false, dictionary.idOf(READ), IriDictionary.NONE)));
+        assertEquals(IriDictionary.NONE, this.compact.findPublicRule(IriDictionary.NONE, dictionary.idOf(ROOT), false, dictionary.idOf(READ)));
+        assertEquals(IriDictionary.NONE, this.compact.findPublicRule(acl, IriDictionary.NONE, false, dictionary.idOf(READ)));
+    }
+
+    @Test
+    public void testCheckDoesNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        PreparedRequest[] requests = {
+            this.compact.prepare(ACL, ROOT, false, READ, null),
+            this.compact.prepare(ACL, ROOT, false, APPEND, BOB), // via the group
+            this.compact.prepare(ACL, ROOT, true, CONTROL, ALICE),
+            this.compact.prepare(ACL, ROOT, false, CONTROL, CAROL) // denied
+        };
+        String[] expected = {ACL + "#public", ACL + "#group", ACL + "#alice", null};
+        for (int i = 0; i < requests.length; i++) {
+            assertEquals(expected[i], this.compact.check(requests[i]));
+        }
+        int iterations = 100_000;
+        // let the JIT compile the path first
+        for (int i = 0; i < iterations; i++) {
+            this.compact.check(requests[i % requests.length]);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int allowed = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (this.compact.check(requests[i % requests.length]) != null) {
+                allowed++;
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertEquals(iterations / 4 * 3, allowed);
+        // budget: nothing per check, some slack for the measurement itself
+        assertTrue("allocated " + allocated + " bytes in " + iterations + " checks", allocated < 1024);
+    }
+
+    @Test
+    public void testDictionary() {
+        IriDictionary dictionary = new IriDictionary();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.intern(ROOT + i));
+        }
+        assertEquals(1000, dictionary.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.intern(ROOT + i));
+            assertEquals(i, dictionary.idOf(ROOT + i));
+            assertEquals(ROOT + i, dictionary.stringOf(i));
+        }
+        assertEquals(IriDictionary.NONE, dictionary.idOf(ROOT));
+        assertEquals(IriDictionary.NONE, dictionary.idOf(null));
+        assertNull(dictionary.stringOf(IriDictionary.NONE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDictionaryRejectsNull() {
+        new IriDictionary().intern(null);
+    }
+}
@@ -0,0 +1,123 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static edu.kit.aifb.solid.wac.TestFixtures.MAPPING;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContainerTrieTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String DEEP = ROOT + "a/b/c/d/e/f/g/h/i/j/k/";
+
+    private Map<String, Dataset> resourceMap;
+    private ContainerTrie trie;
+
+    @Before
+    public void setUp() {
+        this.resourceMap = new HashMap<>();
+        this.trie = new ContainerTrie(this.resourceMap, MAPPING);
+    }
+
+    private String inheritingContainer(String resource) {
+        ContainerTrie.Node container = this.trie.findInheritingContainer(resource);
+        return (container == null) ? null : container.getUri();
+    }
+
+    @Test
+    public void testNoAcl() {
+        assertNull(this.inheritingContainer(DEEP + "file"));
+        assertNull(this.inheritingContainer(ROOT));
+    }
+
+    @Test
+    public void testClosestContainer() {
+        this.resourceMap.put(ROOT + ".acl", DatasetFactory.create());
+        this.resourceMap.put(ROOT + "a/b/.acl", DatasetFactory.create());
+        assertEquals(ROOT + "a/b/", this.inheritingContainer(DEEP + "file"));
+        assertEquals(ROOT + "a/b/", this.inheritingContainer(DEEP));
+        assertEquals(ROOT, this.inheritingContainer(ROOT + "a/b/"));
+        assertEquals(ROOT + "a/b/.acl", this.trie.getAcl(this.trie.findInheritingContainer(DEEP)));
+    }
+
+    @Test
+    public void testAclAppearsAndDisappears() {
+        this.resourceMap.put(ROOT + ".acl", DatasetFactory.create());
+        assertEquals(ROOT, this.inheritingContainer(DEEP + "file"));
+
+        this.resourceMap.put(ROOT + "a/b/c/.acl", DatasetFactory.create());
+        assertEquals(ROOT, this.inheritingContainer(DEEP + "file")); // not yet told
+        this.trie.aclChanged(ROOT + "a/b/c/.acl");
+        assertEquals(ROOT + "a/b/c/", this.inheritingContainer(DEEP + "file"));
+
+        this.resourceMap.remove(ROOT + "a/b/c/.acl");
+        this.trie.aclChanged(ROOT + "a/b/c/.acl");
+        assertEquals(ROOT, this.inheritingContainer(DEEP + "file"));
+
+        this.resourceMap.remove(ROOT + ".acl");
+        this.trie.invalidateAll();
+        assertNull(this.inheritingContainer(DEEP + "file"));
+    }
+
+    @Test
+    public void testAclChangedWhileProbing() throws Exception {
+        String acl = ROOT + "a/b/c/.acl";
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        this.resourceMap = new HashMap<>() {
+            @Override
+            public boolean containsKey(Object key) {
+                boolean contains = super.containsKey(key);
+                if (acl.equals(key) && probing.getCount() > 0) {
+                    // the .acl is created and announced after the probe read the map
+                    probing.countDown();
+                    try {
+                        changed.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return contains;
+            }
+        };
+        this.resourceMap.put(ROOT + ".acl", DatasetFactory.create());
+        this.trie = new ContainerTrie(this.resourceMap, MAPPING);
+        CompletableFuture<String> walk = CompletableFuture.supplyAsync(() -> this.inheritingContainer(DEEP + "file"), r -> new Thread(r).start());
+        probing.await();
+        this.resourceMap.put(acl, DatasetFactory.create());
+        this.trie.aclChanged(acl);
+        changed.countDown();
+        assertEquals(ROOT, walk.get(10, TimeUnit.SECONDS));
+        assertEquals(ROOT + "a/b/c/", this.inheritingContainer(DEEP + "file"));
+    }
+
+    @Test
+    public void testPrimeLooksUpContainers() {
+        this.resourceMap.put(ROOT + "a/b/.acl", DatasetFactory.create());
+        this.trie.prime(ROOT + "a/b/");
+        // looked up while priming, including the container itself
+        this.resourceMap.remove(ROOT + "a/b/.acl");
+        assertEquals(ROOT + "a/b/", this.inheritingContainer(DEEP + "file"));
+        this.trie.aclChanged(ROOT + "a/b/.acl");
+        assertNull(this.inheritingContainer(DEEP + "file"));
+    }
+
+    @Test
+    public void testManySiblings() {
+        for (int i = 0; i < 1000; i++) {
+            this.resourceMap.put(ROOT + "c" + i + "/.acl", DatasetFactory.create());
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ROOT + "c" + i + "/", this.inheritingContainer(ROOT + "c" + i + "/file"));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package edu.kit.aifb.solid.wac.index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Test;
+
+public class GroupMembershipIndexTest {
+
+    private static final String GROUPS = "http://example.org/groups";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+
+    @Test
+    public void testReverseLookup() {
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#a> vcard:hasMember <%s>, <%s> .
+                <#b> vcard:hasMember <%s> .
+                <other#c> vcard:hasMember <%s> .
+                """, ALICE, BOB, ALICE, ALICE)));
+        GroupMembershipIndex index = new GroupMembershipIndex(resourceMap);
+        index.indexAll();
+        assertEquals(Set.of(GROUPS + "#a", GROUPS + "#b"), index.getGroups(ALICE));
+        assertTrue(index.isMember(GROUPS + "#a", BOB));
+        assertFalse(index.isMember(GROUPS + "#b", BOB));
+        // groups are only looked up in their own document
+        assertFalse(index.isMember("http://example.org/other#c", ALICE));
+    }
+
+    @Test
+    public void testDocumentChanged() {
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#a> vcard:hasMember <%s> .
+                """, ALICE)));
+        GroupMembershipIndex index = new GroupMembershipIndex(resourceMap);
+        assertTrue(index.isMember(GROUPS + "#a", ALICE));
+        assertFalse(index.isMember(GROUPS + "#a", BOB));
+
+        resourceMap.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#a> vcard:hasMember <%s> .
+                """, BOB)));
+        index.documentChanged(GROUPS);
+        assertFalse(index.isMember(GROUPS + "#a", ALICE));
+        assertTrue(index.isMember(GROUPS + "#a", BOB));
+        assertTrue(index.getGroups(ALICE).isEmpty());
+    }
+}
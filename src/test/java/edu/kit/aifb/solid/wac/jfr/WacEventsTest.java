@@ -0,0 +1,87 @@
+package edu.kit.aifb.solid.wac.jfr;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.jena.query.Dataset;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.MAPPING;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Test;
+
+import edu.kit.aifb.solid.wac.query.AccessRequest;
+import edu.kit.aifb.solid.wac.query.WacEngine;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class WacEventsTest {
+
+    private static final String CONTAINER = "http://example.org/test/";
+    private static final String ACL = CONTAINER + ".acl";
+    private static final String GROUP = CONTAINER + "group";
+    private static final String WEBID = CONTAINER + "webid";
+
+    private static Map<String, Dataset> resourceMap() {
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        resourceMap.put(ACL, parse(ACL, """
+                    @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                    <#auth> a acl:Authorization;
+                        acl:agentGroup <group#members>;
+                        acl:default <./>;
+                        acl:mode acl:Append.
+                """));
+        resourceMap.put(GROUP, parse(GROUP, String.format("""
+                    @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                    <#members> vcard:hasMember <%s> .
+                """, WEBID)));
+        return resourceMap;
+    }
+
+    @Test
+    public void testEventsOfCheck() throws Exception {
+        WacEngine engine = WacEngine.newBuilder(resourceMap(), MAPPING).build();
+        String patch = """
+                            @prefix solid: <http://www.w3.org/ns/solid/terms#>.
+                            @prefix ex: <http://www.example.org/terms#>.
+                            _:rename a solid:InsertDeletePatch;
+                              solid:inserts { ex:a ex:b ex:c. }.
+                        """;
+        Path file = Files.createTempFile("wac", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : new String[]{"Decision", "AclResolution", "QueryExecution", "PatchClassification", "GroupLookup"}) {
+                recording.enable("edu.kit.aifb.solid.wac." + event).withoutThreshold();
+            }
+            recording.start();
+            String rule = engine.check(new AccessRequest(CONTAINER + "some/resource", "PATCH", patch), WEBID);
+            assertEquals(ACL + "#auth", rule);
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Map<String, List<RecordedEvent>> byName = events.stream()
+                    .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+
+            RecordedEvent decision = byName.get("edu.kit.aifb.solid.wac.Decision").get(0);
+            assertEquals(CONTAINER + "some/resource", decision.getString("resource"));
+            assertTrue(decision.getString("mode").endsWith("Append"));
+            assertTrue(decision.getBoolean("allowed"));
+
+            RecordedEvent resolution = byName.get("edu.kit.aifb.solid.wac.AclResolution").get(0);
+            assertEquals(ACL, resolution.getString("acl"));
+            assertEquals(2, resolution.getInt("inheritanceDepth"));
+
+            assertEquals(4, byName.get("edu.kit.aifb.solid.wac.QueryExecution").size());
+            assertTrue(byName.get("edu.kit.aifb.solid.wac.PatchClassification").get(0).getBoolean("nonDeleting"));
+            RecordedEvent lookup = byName.get("edu.kit.aifb.solid.wac.GroupLookup").get(0);
+            assertEquals(GROUP + "#members", lookup.getString("group"));
+            assertTrue(lookup.getBoolean("member"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.kit.aifb.solid.wac.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(5.5, histogram.getMean(), 0.0);
+        assertEquals(5, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getValueAtPercentile(100));
+        assertEquals(10, histogram.getMax());
+    }
+
+    @Test
+    public void testLargeValuesWithinRelativeError() {
+        Histogram histogram = new Histogram();
+        long[] values = {1_000L, 123_456L, 98_765_432L, Long.MAX_VALUE / 3};
+        for (long value : values) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            long p50 = histogram.getValueAtPercentile(50);
+            assertTrue(value + " recorded as " + p50, p50 >= value && p50 - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1_000_000);
+        assertEquals(1001, histogram.getCount());
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue("p99=" + p99, p99 >= 100 && p99 < 110);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
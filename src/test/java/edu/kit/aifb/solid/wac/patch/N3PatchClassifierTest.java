@@ -0,0 +1,150 @@
+package edu.kit.aifb.solid.wac.patch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class N3PatchClassifierTest {
+
+    private static final String PREFIXES = """
+            @prefix solid: <http://www.w3.org/ns/solid/terms#>.
+            @prefix ex: <http://www.example.org/terms#>.
+            """;
+
+    private static final String[] APPENDING = {
+        "",
+        PREFIXES + """
+            _:rename a solid:InsertDeletePatch;
+              solid:where   { ?person ex:familyName "Garcia". };
+              solid:inserts { ?person ex:givenName "Alex". }.
+            """,
+        // deletes only in a formula, a string and a comment
+        PREFIXES + """
+            # solid:deletes { ?a ?b ?c }
+            _:rename a solid:InsertDeletePatch;
+              solid:where   { ?person ex:says "solid:deletes {". ?person solid:deletes ?x };
+              solid:inserts { ?person ex:givenName \"\"\"Alex
+              solid:deletes\"\"\"@en. }.
+            """,
+        // deletes as object
+        PREFIXES + """
+            _:rename a solid:InsertDeletePatch;
+              ex:mentions solid:deletes, <http://www.w3.org/ns/solid/terms#deletes>;
+              solid:inserts { ?person ex:givenName "Alex"^^<http://www.w3.org/2001/XMLSchema#string>. }.
+            """,
+        // another namespace
+        """
+            @prefix solid: <http://example.org/notsolid#>.
+            _:rename solid:deletes { ?a ?b ?c }.
+            """
+    };
+
+    private static final String[] DELETING = {
+        PREFIXES + """
+            _:rename a solid:InsertDeletePatch;
+              solid:where   { ?person ex:familyName "Garcia". };
+              solid:inserts { ?person ex:givenName "Alex". };
+              solid:deletes { ?person ex:givenName "Claudia". }.
+            """,
+        """
+            _:rename <http://www.w3.org/ns/solid/terms#deletes> { <a> <b> <c> }.
+            """,
+        """
+            PREFIX s: <http://www.w3.org/ns/solid/terms#>
+            [ a s:InsertDeletePatch ; s:deletes { <a> <b> <c> } ] .
+            """,
+        PREFIXES + """
+            _:rename ex:list ( 1 2.5 "three" [ ex:p ex:o ] ) ;
+              solid:deletes { ?person ex:givenName "Claudia". }.
+            """,
+        // escaped
+        """
+            _:rename <http://www.w3.org/ns/solid/terms#\\u0064eletes> { <a> <b> <c> }.
+            """,
+        // prefix relative to the base
+        """
+            @base <http://www.w3.org/ns/solid/terms#>.
+            @prefix s: <#>.
+            _:rename s:deletes { <a> <b> <c> }.
+            """,
+        // relative to the base
+        """
+            @base <http://www.w3.org/ns/solid/terms>.
+            _:rename <#deletes> { <a> <b> <c> }.
+            """,
+        // dot segments
+        """
+            _:rename <http://www.w3.org/ns/solid/x/../terms#deletes> { <a> <b> <c> }.
+            """,
+        // relative to the unknown request URI
+        """
+            _:rename <#deletes> { <a> <b> <c> }.
+            """
+    };
+
+    private static final String[] INVALID = {
+        "hello world",
+        PREFIXES + "_:p solid:inserts { <a> <b> <c> } _:q",
+        PREFIXES + "_:p solid:inserts",
+        PREFIXES + "_:p undeclared:deletes { <a> <b> <c> }.",
+        PREFIXES + "_:p @is solid:deletes @of _:q.",
+        PREFIXES + "_:p \"deletes\" _:q.",
+        "_:p <http://www.w3.org/ns/solid/terms#deletes {> <a> <b> <c> }."
+    };
+
+    @Test
+    public void testAppending() {
+        N3PatchClassifier classifier = new N3PatchClassifier();
+        for (String body : APPENDING) {
+            assertTrue(body, classifier.isNonDeleting(body));
+        }
+    }
+
+    @Test
+    public void testDeleting() {
+        N3PatchClassifier classifier = new N3PatchClassifier();
+        for (String body : DELETING) {
+            assertFalse(body, classifier.isNonDeleting(body));
+        }
+    }
+
+    @Test
+    public void testSameAsParsing() {
+        N3PatchClassifier classifier = new N3PatchClassifier();
+        String[] bodies = {APPENDING[0], APPENDING[1], APPENDING[3], APPENDING[4],
+            DELETING[0], DELETING[1], DELETING[2], DELETING[3], DELETING[4], DELETING[5], DELETING[6], DELETING[7]};
+        for (String body : bodies) {
+            assertEquals(body, N3PatchClassifier.isNonDeletingByParsing(body), classifier.isNonDeleting(body));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        N3PatchClassifier classifier = new N3PatchClassifier();
+        for (String body : INVALID) {
+            try {
+                classifier.isNonDeleting(body);
+                fail(body);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBodySizeLimit() {
+        new N3PatchClassifier(16).isNonDeleting(DELETING[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedFormula() {
+        new N3PatchClassifier().isNonDeleting(PREFIXES + "_:p solid:inserts { <a> <b> <c> .");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedString() {
+        new N3PatchClassifier().isNonDeleting(PREFIXES + "_:p ex:says \"open .");
+    }
+}
@@ -0,0 +1,139 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingAclStoreTest {
+
+    private static final String ROOT = "http://example.org/";
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private Map<String, Dataset> resourceMap;
+    private CachingAclStore cache;
+
+    @Before
+    public void setUp() {
+        this.resourceMap = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            this.resourceMap.put(ROOT + i + "/.acl", DatasetFactory.create());
+        }
+        MapAclStore store = new MapAclStore(this.resourceMap);
+        this.cache = new CachingAclStore(new AclStore() {
+            @Override
+            public Dataset load(String uri) {
+                CachingAclStoreTest.this.loads.incrementAndGet();
+                return store.load(uri);
+            }
+
+            @Override
+            public boolean exists(String uri) {
+                return store.exists(uri);
+            }
+        }, 4);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        String uri = ROOT + "0/.acl";
+        Dataset first = this.cache.load(uri);
+        assertSame(first, this.cache.load(uri));
+        assertEquals(1, this.loads.get());
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(1, this.cache.getMissCount());
+        // absent documents are not cached
+        assertNull(this.cache.load(ROOT + "missing/.acl"));
+        assertFalse(this.cache.isCached(ROOT + "missing/.acl"));
+        // existence is checked without loading
+        assertTrue(this.cache.exists(ROOT + "99/.acl"));
+        assertEquals(2, this.loads.get());
+        this.cache.invalidate(uri);
+        this.cache.load(uri);
+        assertEquals(3, this.loads.get());
+    }
+
+    @Test
+    public void testScanDoesNotFlushFrequentDocuments() {
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 4; i++) {
+                this.cache.load(ROOT + i + "/.acl");
+            }
+        }
+        // each seen once, within the sample of the sketch
+        for (int i = 4; i < 40; i++) {
+            this.cache.load(ROOT + i + "/.acl");
+        }
+        assertEquals(4, this.cache.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(this.cache.isCached(ROOT + i + "/.acl"));
+        }
+        assertTrue(this.cache.getRejectionCount() > 0);
+    }
+
+    @Test
+    public void testFrequentDocumentIsAdmitted() {
+        for (int i = 0; i < 4; i++) {
+            this.cache.load(ROOT + i + "/.acl");
+        }
+        String hot = ROOT + "50/.acl";
+        for (int round = 0; round < 3; round++) {
+            this.cache.load(hot);
+        }
+        assertTrue(this.cache.isCached(hot));
+        assertEquals(4, this.cache.size());
+        assertEquals(1, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLoadRacingInvalidationIsNotCached() throws Exception {
+        String uri = ROOT + "0/.acl";
+        Dataset old = this.resourceMap.get(uri);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        CachingAclStore cache = new CachingAclStore(new AclStore() {
+            @Override
+            public Dataset load(String u) {
+                Dataset dataset = CachingAclStoreTest.this.resourceMap.get(u);
+                loading.countDown();
+                try {
+                    invalidated.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return dataset;
+            }
+
+            @Override
+            public boolean exists(String u) {
+                return CachingAclStoreTest.this.resourceMap.containsKey(u);
+            }
+        }, 4);
+        CompletableFuture<Dataset> load = CompletableFuture.supplyAsync(() -> cache.load(uri));
+        loading.await();
+        Dataset changed = DatasetFactory.create();
+        this.resourceMap.put(uri, changed);
+        cache.invalidate(uri);
+        invalidated.countDown();
+        assertSame(old, load.get());
+        assertFalse(cache.isCached(uri));
+        assertSame(changed, cache.load(uri));
+        assertSame(changed, cache.load(uri));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaximumSizeMustBePositive() {
+        new CachingAclStore(new MapAclStore(this.resourceMap), 0);
+    }
+}
@@ -0,0 +1,131 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.riot.system.StreamRDF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.MAPPING;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.kit.aifb.solid.wac.Namespaces;
+import edu.kit.aifb.solid.wac.index.AclSink;
+import edu.kit.aifb.solid.wac.index.CompactAcls;
+import edu.kit.aifb.solid.wac.query.AccessRequest;
+import edu.kit.aifb.solid.wac.query.WacEngine;
+
+public class FileSystemAclStoreTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+    private static final String READ = Namespaces.ACL + "Read";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemAclStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        Path directory = this.folder.getRoot().toPath();
+        Files.writeString(directory.resolve(".acl"), """
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#friends> a acl:Authorization;
+                    acl:agentGroup <groups#friends>;
+                    acl:accessTo <./>;
+                    acl:default <./>;
+                    acl:mode acl:Read.
+                """);
+        Files.writeString(directory.resolve("groups"), String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, ALICE));
+        Files.createDirectories(directory.resolve("a/b/c"));
+        this.store = new FileSystemAclStore(directory, ROOT);
+    }
+
+    @Test
+    public void testLoadAndExists() {
+        assertTrue(this.store.exists(ROOT + ".acl"));
+        assertTrue(this.store.exists(ROOT + "groups#friends"));
+        assertFalse(this.store.exists(ROOT + "a/.acl"));
+        assertFalse(this.store.exists(ROOT + "a/b/"));
+        assertFalse(this.store.exists(ROOT + "../etc/passwd"));
+        assertFalse(this.store.exists("http://example.com/.acl"));
+        assertNull(this.store.load(ROOT + "a/.acl"));
+        Dataset acl = this.store.load(ROOT + ".acl");
+        assertNotNull(acl);
+        // relative IRIs are resolved against the document URI
+        assertTrue(acl.getDefaultModel().containsResource(acl.getDefaultModel().createResource(ROOT + ".acl#friends")));
+        assertEquals(Set.of(ROOT + ".acl", ROOT + "groups"), this.store.uris());
+    }
+
+    @Test
+    public void testStreamCompilesWithoutDataset() {
+        AclSink sink = new AclSink();
+        assertTrue(this.store.stream(ROOT + ".acl", sink));
+        assertEquals(ROOT + ".acl#friends", sink.build().findGroupRule(ROOT, true, READ, group -> group.equals(ROOT + "groups#friends")));
+        assertFalse(this.store.stream(ROOT + "a/.acl", new AclSink()));
+        // the engine on compact ACLs compiled from the streamed files
+        AclStore neverLoading = new AclStore() {
+            @Override
+            public Dataset load(String uri) {
+                throw new AssertionError("Loaded " + uri);
+            }
+
+            @Override
+            public boolean exists(String uri) {
+                return FileSystemAclStoreTest.this.store.exists(uri);
+            }
+
+            @Override
+            public boolean stream(String uri, StreamRDF sink) {
+                return FileSystemAclStoreTest.this.store.stream(uri, sink);
+            }
+
+            @Override
+            public Set<String> uris() {
+                return FileSystemAclStoreTest.this.store.uris();
+            }
+        };
+        WacEngine engine = WacEngine.newBuilder(CompactAcls.compile(neverLoading), MAPPING).build();
+        AccessRequest request = new AccessRequest(ROOT + "a/b/c/d", "GET", null);
+        assertEquals(ROOT + ".acl#friends", engine.check(request, ALICE));
+        assertNull(engine.check(request, BOB));
+    }
+
+    @Test
+    public void testEngineLoadsOnlyTheAuthoritativeAcl() {
+        List<String> loaded = new ArrayList<>();
+        AclStore recording = new AclStore() {
+            @Override
+            public Dataset load(String uri) {
+                loaded.add(uri);
+                return FileSystemAclStoreTest.this.store.load(uri);
+            }
+
+            @Override
+            public boolean exists(String uri) {
+                return FileSystemAclStoreTest.this.store.exists(uri);
+            }
+        };
+        WacEngine engine = WacEngine.newBuilder(recording, MAPPING).build();
+        AccessRequest request = new AccessRequest(ROOT + "a/b/c/d", "GET", null);
+        assertEquals(ROOT + ".acl#friends", engine.check(request, ALICE));
+        assertNull(engine.check(request, BOB));
+        assertTrue(loaded.stream().allMatch(uri -> uri.equals(ROOT + ".acl") || uri.startsWith(ROOT + "groups")));
+    }
+}
@@ -0,0 +1,239 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Dataset;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.MAPPING;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.TimeToLive;
+import org.mockserver.matchers.Times;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+import org.mockserver.verify.VerificationTimes;
+
+import edu.kit.aifb.solid.wac.query.AccessRequest;
+import edu.kit.aifb.solid.wac.query.WacEngine;
+
+public class RemoteGroupResolverTest {
+
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+
+    private ClientAndServer server;
+    private String groups;
+
+    private static String members(String... webids) {
+        StringBuilder sb = new StringBuilder("@prefix vcard: <http://www.w3.org/2006/vcard/ns#>.\n");
+        for (String webid : webids) {
+            sb.append("<#friends> vcard:hasMember <").append(webid).append(">.\n");
+        }
+        return sb.toString();
+    }
+
+    @Before
+    public void setUp() {
+        this.server = ClientAndServer.startClientAndServer(0);
+        this.groups = "http://localhost:" + this.server.getPort() + "/groups";
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop();
+    }
+
+    private void serve(String path, String cacheControl, String body) {
+        this.server.when(request().withMethod("GET").withPath(path))
+                .respond(response().withStatusCode(200)
+                        .withHeader("Content-Type", "text/turtle")
+                        .withHeader("Cache-Control", cacheControl)
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody(body));
+    }
+
+    @Test
+    public void testCachesFreshDocuments() {
+        this.serve("/groups", "max-age=60", members(ALICE));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertFalse(resolver.isMember(this.groups + "#friends", BOB));
+        assertFalse(resolver.isMember(this.groups + "#others", ALICE));
+        this.server.verify(request().withPath("/groups"), VerificationTimes.exactly(1));
+        assertEquals(1, resolver.getFetchCount());
+        assertEquals(2, resolver.getHitCount());
+    }
+
+    @Test
+    public void testRevalidatesWithETag() {
+        this.server.when(request().withMethod("GET").withPath("/groups").withHeader("If-None-Match", "\"v1\""), Times.unlimited(), TimeToLive.unlimited(), 10)
+                .respond(response().withStatusCode(304).withHeader("Cache-Control", "no-cache"));
+        this.serve("/groups", "no-cache", members(ALICE));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        this.server.verify(request().withPath("/groups"), VerificationTimes.exactly(3));
+        this.server.verify(request().withPath("/groups").withHeader("If-None-Match", "\"v1\""), VerificationTimes.exactly(2));
+        assertEquals(2, resolver.getRevalidationCount());
+    }
+
+    @Test
+    public void testDoesNotStore() {
+        this.serve("/groups", "no-store", members(ALICE));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertEquals(0, resolver.size());
+        this.server.verify(request().withPath("/groups").withHeader("If-None-Match"), VerificationTimes.exactly(0));
+        assertEquals(2, resolver.getFetchCount());
+    }
+
+    @Test
+    public void testMergesConcurrentFetches() throws Exception {
+        this.server.when(request().withMethod("GET").withPath("/groups"))
+                .respond(response().withStatusCode(200)
+                        .withHeader("Content-Type", "text/turtle")
+                        .withBody(members(ALICE))
+                        .withDelay(TimeUnit.MILLISECONDS, 500));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            lookups.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return resolver.isMember(this.groups + "#friends", ALICE);
+            }, r -> new Thread(r).start()));
+        }
+        start.countDown();
+        for (CompletableFuture<Boolean> lookup : lookups) {
+            assertTrue(lookup.get(10, TimeUnit.SECONDS));
+        }
+        this.server.verify(request().withPath("/groups"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void testBoundsTheCache() {
+        for (int i = 0; i < 3; i++) {
+            this.serve("/groups" + i, "max-age=60", members(ALICE));
+        }
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().usingCapacity(2).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(resolver.isMember(this.groups + i + "#friends", ALICE));
+        }
+        assertEquals(2, resolver.size());
+        assertTrue(resolver.isMember(this.groups + "0#friends", ALICE));
+        this.server.verify(request().withPath("/groups0"), VerificationTimes.exactly(2));
+    }
+
+    @Test
+    public void testFailures() {
+        this.server.when(request().withPath("/missing")).respond(response().withStatusCode(404));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().usingRetryDelay(Duration.ofMinutes(1)).build();
+        String group = "http://localhost:" + this.server.getPort() + "/missing#friends";
+        assertFalse(resolver.isMember(group, ALICE));
+        assertFalse(resolver.isMember(group, ALICE));
+        assertEquals(1, resolver.getFailureCount());
+        assertNull(resolver.getMembers("http://localhost:" + this.server.getPort() + "/missing").get(group));
+        // not fetched at all
+        assertFalse(resolver.isMember("urn:example:groups#friends", ALICE));
+        assertEquals(1, resolver.getFetchCount());
+    }
+
+    private void serveOnce(String body) {
+        this.server.when(request().withMethod("GET").withPath("/groups"), Times.exactly(1))
+                .respond(response().withStatusCode(200)
+                        .withHeader("Content-Type", "text/turtle")
+                        .withHeader("Cache-Control", "max-age=0")
+                        .withBody(body));
+    }
+
+    @Test
+    public void testGoneDocumentHasNoMembers() {
+        this.serveOnce(members(ALICE));
+        this.server.when(request().withPath("/groups")).respond(response().withStatusCode(404));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().usingRetryDelay(Duration.ZERO).build();
+        assertTrue(resolver.isMember(this.groups + "#friends", ALICE));
+        assertFalse(resolver.isMember(this.groups + "#friends", ALICE));
+        assertFalse(resolver.isMember(this.groups + "#friends", ALICE));
+        assertEquals(3, resolver.getFetchCount());
+    }
+
+    @Test
+    public void testStaleIfError() {
+        this.serveOnce(members(ALICE));
+        this.serveOnce(members(ALICE));
+        this.server.when(request().withPath("/groups")).respond(response().withStatusCode(503));
+        RemoteGroupResolver stale = RemoteGroupResolver.newBuilder().usingRetryDelay(Duration.ZERO).usingStaleIfError(Duration.ofMinutes(1)).build();
+        RemoteGroupResolver strict = RemoteGroupResolver.newBuilder().usingRetryDelay(Duration.ZERO).usingStaleIfError(Duration.ZERO).build();
+        assertTrue(stale.isMember(this.groups + "#friends", ALICE));
+        assertTrue(strict.isMember(this.groups + "#friends", ALICE));
+        // the server fails
+        assertTrue(stale.isMember(this.groups + "#friends", ALICE));
+        assertTrue(stale.isMember(this.groups + "#friends", ALICE));
+        assertFalse(strict.isMember(this.groups + "#friends", ALICE));
+        assertEquals(2, stale.getFailureCount());
+    }
+
+    @Test
+    public void testFetchRacingInvalidationIsNotCached() throws Exception {
+        this.server.when(request().withMethod("GET").withPath("/groups"), Times.exactly(1))
+                .respond(response().withStatusCode(200)
+                        .withHeader("Content-Type", "text/turtle")
+                        .withBody(members(ALICE))
+                        .withDelay(TimeUnit.MILLISECONDS, 500));
+        this.serve("/groups", "max-age=60", members(BOB));
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        CompletableFuture<Boolean> lookup = CompletableFuture.supplyAsync(() -> resolver.isMember(this.groups + "#friends", ALICE), r -> new Thread(r).start());
+        // wait until the first fetch is in flight
+        while (this.server.retrieveRecordedRequests(request().withPath("/groups")).length == 0) {
+            Thread.onSpinWait();
+        }
+        resolver.invalidate(this.groups);
+        assertTrue(lookup.get(10, TimeUnit.SECONDS));
+        assertFalse(resolver.isMember(this.groups + "#friends", ALICE));
+        assertTrue(resolver.isMember(this.groups + "#friends", BOB));
+        assertEquals(2, resolver.getFetchCount());
+    }
+
+    @Test
+    public void testEngineChecksRemoteGroups() {
+        this.serve("/groups", "max-age=60", members(BOB));
+        String root = "http://example.org/";
+        String acl = root + ".acl";
+        Dataset dataset = parse(acl, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#group> a acl:Authorization;
+                    acl:agentGroup <%s#friends>;
+                    acl:accessTo <./>;
+                    acl:mode acl:Read.
+                """, this.groups));
+        Map<String, Dataset> resourceMap = new HashMap<>();
+        resourceMap.put(acl, dataset);
+        RemoteGroupResolver resolver = RemoteGroupResolver.newBuilder().build();
+        for (WacEngine engine : new WacEngine[]{
+            WacEngine.newBuilder(resourceMap, MAPPING).usingRemoteGroups(resolver).build(),
+            WacEngine.newBuilder(resourceMap, MAPPING).usingRemoteGroups(resolver).usingSinglePass().build()}) {
+            assertEquals(acl + "#group", engine.check(new AccessRequest(root, "GET", ""), BOB));
+            assertNull(engine.check(new AccessRequest(root, "GET", ""), ALICE));
+        }
+        this.server.verify(request().withPath("/groups"), VerificationTimes.exactly(1));
+    }
+}
@@ -0,0 +1,114 @@
+package edu.kit.aifb.solid.wac.store;
+
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.system.Txn;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static edu.kit.aifb.solid.wac.TestFixtures.MAPPING;
+import static edu.kit.aifb.solid.wac.TestFixtures.parse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.kit.aifb.solid.wac.index.AclIndex;
+import edu.kit.aifb.solid.wac.index.AclIndexCache;
+import edu.kit.aifb.solid.wac.query.AccessRequest;
+import edu.kit.aifb.solid.wac.query.WacBatch;
+import edu.kit.aifb.solid.wac.query.WacEngine;
+
+public class Tdb2AclStoreTest {
+
+    private static final String ROOT = "http://example.org/";
+    private static final String ACL = ROOT + ".acl";
+    private static final String GROUPS = ROOT + "groups";
+    private static final String ALICE = "http://example.org/alice";
+    private static final String BOB = "http://example.org/bob";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Tdb2AclStore store;
+
+    @Before
+    public void setUp() {
+        this.store = Tdb2AclStore.connect(this.folder.getRoot().toPath());
+        this.store.put(ACL, parse(ACL, String.format("""
+                @prefix acl: <http://www.w3.org/ns/auth/acl#> .
+                <#alice> a acl:Authorization;
+                    acl:agent <%s>;
+                    acl:default <./>;
+                    acl:mode acl:Write.
+                <#friends> a acl:Authorization;
+                    acl:agentGroup <groups#friends>;
+                    acl:default <./>;
+                    acl:mode acl:Read.
+                """, ALICE)));
+        this.store.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, BOB)));
+    }
+
+    @Test
+    public void testDocumentsAreNamedGraphs() {
+        assertEquals(Set.of(ACL, GROUPS), this.store.uris());
+        assertTrue(this.store.exists(ACL));
+        assertFalse(this.store.exists(ROOT + "a/.acl"));
+        assertNull(this.store.load(ROOT + "a/.acl"));
+        Txn.executeRead(this.store.getDataset(), () -> {
+            assertTrue(this.store.getDataset().containsNamedModel(ACL));
+            assertEquals(0, this.store.getDataset().getDefaultModel().size());
+            assertEquals(this.store.getDataset().getNamedModel(GROUPS).size(), this.store.load(GROUPS).getDefaultModel().size());
+        });
+        this.store.remove(GROUPS);
+        assertFalse(this.store.exists(GROUPS));
+    }
+
+    @Test
+    public void testEngineEvaluatesInReadTransaction() throws Exception {
+        WacEngine engine = WacEngine.newBuilder(this.store, MAPPING).build();
+        AccessRequest read = new AccessRequest(ROOT + "a/b", "GET", null);
+        AccessRequest append = new AccessRequest(ROOT + "a/b", "POST", "");
+        assertEquals(ACL + "#friends", engine.check(read, BOB));
+        assertEquals(ACL + "#alice", engine.check(append, ALICE));
+        assertNull(engine.check(append, BOB));
+        assertEquals(ACL + "#friends", engine.checkAsync(read, BOB).get());
+        assertNull(engine.checkAsync(read, ALICE).get());
+        assertEquals(List.of(ROOT + "a"), WacBatch.newBatch(this.store, MAPPING).byAgent(BOB).filterReadable(ROOT, List.of(ROOT + "a")));
+    }
+
+    @Test
+    public void testCompiledOnceUntilWritten() {
+        AclIndexCache cache = new AclIndexCache();
+        AclIndex first = this.store.read(() -> cache.get(ACL, this.store.load(ACL)));
+        // the same view, so a cache hit
+        assertSame(first, this.store.read(() -> cache.get(ACL, this.store.load(ACL))));
+        this.store.put(ACL, this.store.read(() -> {
+            Dataset copy = DatasetFactory.create();
+            copy.getDefaultModel().add(this.store.load(ACL).getDefaultModel());
+            return copy;
+        }));
+        assertNotSame(first, this.store.read(() -> cache.get(ACL, this.store.load(ACL))));
+    }
+
+    @Test
+    public void testPutReplacesDocument() {
+        this.store.put(GROUPS, parse(GROUPS, String.format("""
+                @prefix vcard: <http://www.w3.org/2006/vcard/ns#>.
+                <#friends> vcard:hasMember <%s> .
+                """, ALICE)));
+        WacEngine engine = WacEngine.newBuilder(this.store, MAPPING).build();
+        AccessRequest read = new AccessRequest(ROOT + "a/b", "GET", null);
+        assertNull(engine.check(read, BOB));
+        assertEquals(ACL + "#friends", engine.check(read, ALICE));
+    }
+}